@@ -0,0 +1,116 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measure the blocks of the device benchmarks and write their results in a JSON file, so the results
+ * of two builds can be compared. The file is "benchmarks/results.json" in the external files of the app:
+ * <pre>
+ * adb pull /sdcard/Android/data/com.example.android.newsappstage2/files/benchmarks/results.json
+ * </pre>
+ * Every block is warmed up, then timed for a number of runs: the median and the min time of a run
+ * and the bytes allocated by a run are recorded. The methods must be called from one thread at a time.
+ */
+final class BenchmarkResults {
+
+    private static final String LOG_TAG = BenchmarkResults.class.getSimpleName();
+
+    private static final int WARMUP_RUNS = 10;
+
+    private static final int MEASURED_RUNS = 30;
+
+    private static final List<JSONObject> sResults = new ArrayList<>();
+
+    /**
+     * A block of code measured by the benchmark.
+     */
+    interface Block {
+        void run() throws Exception;
+    }
+
+    private BenchmarkResults() {
+    }
+
+    /**
+     * Measure the block and record its result.
+     *
+     * @param name  is the name of the benchmark, i.e. "extractNews.streaming"
+     * @param param is the size of the input, i.e. the number of results of the payload
+     */
+    static void measure(String name, int param, Block block) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            block.run();
+        }
+
+        long[] times = new long[MEASURED_RUNS];
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            block.run();
+            times[i] = System.nanoTime() - start;
+        }
+        long allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Arrays.sort(times);
+        JSONObject result = new JSONObject();
+        result.put("name", name);
+        result.put("param", param);
+        result.put("runs", MEASURED_RUNS);
+        result.put("medianNs", times[MEASURED_RUNS / 2]);
+        result.put("minNs", times[0]);
+        result.put("allocatedBytes", allocated / MEASURED_RUNS);
+        sResults.add(result);
+        Log.i(LOG_TAG, name + " [" + param + "]: median " + times[MEASURED_RUNS / 2] / 1000 + " us, "
+                + allocated / MEASURED_RUNS + " bytes per run");
+    }
+
+    /**
+     * Write all the results recorded so far, with the device, in the results file.
+     */
+    static void write(Context context) throws IOException, JSONException {
+        File directory = context.getExternalFilesDir("benchmarks");
+        if (directory == null) {
+            // The external storage isn't available
+            directory = new File(context.getFilesDir(), "benchmarks");
+        }
+        directory.mkdirs();
+
+        JSONObject report = new JSONObject();
+        report.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+        report.put("sdk", Build.VERSION.SDK_INT);
+        report.put("fingerprint", Build.FINGERPRINT);
+        report.put("timestamp", System.currentTimeMillis());
+        JSONArray results = new JSONArray();
+        for (JSONObject result : sResults) {
+            results.put(result);
+        }
+        report.put("results", results);
+
+        File file = new File(directory, "results.json");
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(report.toString(2).getBytes(Charset.forName("UTF-8")));
+        } finally {
+            outputStream.close();
+        }
+        Log.i(LOG_TAG, "Results written in " + file);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.widget.FrameLayout;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmarks of the hot paths of the feed on the device, for Guardian responses from 10 to 500 results:
+ * the parse of a response, the read of a response in a string, the parse of the publication dates,
+ * the format of the news and the bind of the list items. The results are written by {@link BenchmarkResults}.
+ * The JVM parts are also measured with JMH by the local tests, see FeedJmhBenchmark.
+ */
+@RunWith(Parameterized.class)
+public class FeedBenchmark {
+
+    @Parameterized.Parameters(name = "{0} results")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{10}, {50}, {100}, {200}, {500}});
+    }
+
+    private final int mSize;
+
+    private final byte[] mResponse;
+
+    private final String[] mDates;
+
+    public FeedBenchmark(int size) {
+        mSize = size;
+        mResponse = QueryUtilsParseBenchmark.guardianResponse(size);
+        // The publication dates of the response
+        mDates = new String[size];
+        for (int i = 0; i < size; i++) {
+            mDates[i] = "2018-06-" + (10 + i % 20) + "T10:" + (10 + i % 50) + ":00Z";
+        }
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        BenchmarkResults.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void extractNews() throws Exception {
+        final String json = new String(mResponse, Charset.forName("UTF-8"));
+        assertEquals(mSize, QueryUtils.extractNews(json).size());
+        BenchmarkResults.measure("extractNews.jsonObject", mSize, new BenchmarkResults.Block() {
+            @Override
+            public void run() {
+                QueryUtils.extractNews(json);
+            }
+        });
+        BenchmarkResults.measure("extractNews.streaming", mSize, new BenchmarkResults.Block() {
+            @Override
+            public void run() {
+                QueryUtils.extractNews(new ByteArrayInputStream(mResponse));
+            }
+        });
+    }
+
+    @Test
+    public void readFromStream() throws Exception {
+        BenchmarkResults.measure("readFromStream", mSize, new BenchmarkResults.Block() {
+            @Override
+            public void run() throws Exception {
+                QueryUtils.readFromStream(new ByteArrayInputStream(mResponse));
+            }
+        });
+    }
+
+    @Test
+    public void parseDates() throws Exception {
+        BenchmarkResults.measure("dates.timestampCodec", mSize, new BenchmarkResults.Block() {
+            @Override
+            public void run() {
+                for (String date : mDates) {
+                    TimestampCodec.parse(date);
+                }
+            }
+        });
+        // The parse of the dates before TimestampCodec, as a reference
+        BenchmarkResults.measure("dates.simpleDateFormat", mSize, new BenchmarkResults.Block() {
+            @Override
+            public void run() throws ParseException {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                for (String date : mDates) {
+                    format.parse(date);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void formatAndBind() throws Throwable {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final List<News> news = withoutImages(QueryUtils.extractNews(new ByteArrayInputStream(mResponse)));
+        final NewsFormatter formatter = new NewsFormatter(context);
+        BenchmarkResults.measure("format", mSize, new BenchmarkResults.Block() {
+            @Override
+            public void run() {
+                new NewsFormatter(context).format(news);
+            }
+        });
+
+        // The views are bound on the main thread
+        final Throwable[] failure = new Throwable[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final NewsAdapter adapter = new NewsAdapter(new NewsAdapter.OnNewsClickListener() {
+                        @Override
+                        public void onNewsClick(News news) {
+                        }
+                    });
+                    final NewsAdapter.NewsViewHolder holder =
+                            adapter.onCreateViewHolder(new FrameLayout(context), 0);
+                    // The first list submitted to the adapter is set without a diff, so it can be bound now
+                    adapter.setNews(formatter.format(news));
+                    BenchmarkResults.measure("bind", mSize, new BenchmarkResults.Block() {
+                        @Override
+                        public void run() {
+                            for (int position = 0; position < mSize; position++) {
+                                adapter.onBindViewHolder(holder, position);
+                            }
+                        }
+                    });
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Returns the news without their images, so the binds don't download the thumbnails.
+     */
+    private static List<News> withoutImages(List<News> news) {
+        List<News> result = new ArrayList<>(news.size());
+        for (News item : news) {
+            result.add(new News(item.getHeadline(), item.getTrailText(), item.getByline(), item.getSectionName(),
+                    item.getPublicationTime(), item.getUrl(), ""));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.Html;
+import android.util.Log;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compare the cost of a bind when the texts were formatted in the adapter
+ * with the bind of the texts already formatted by {@link NewsFormatter}.
+ * The time per bind of each path is written in the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsBindBenchmark {
+
+    private static final String LOG_TAG = NewsBindBenchmark.class.getSimpleName();
+
+    private static final int NEWS_COUNT = 200;
+
+    private static final int ITERATIONS = 20;
+
+    private static List<News> newsList() {
+        List<News> newsList = new ArrayList<>();
+        for (int i = 0; i < NEWS_COUNT; i++) {
+            newsList.add(new News("Headline number " + i,
+                    "<strong>Trail</strong> text of the news " + i + " with <a href=\"#\">a link</a>",
+                    i % 5 == 0 ? "" : "Author " + i,
+                    i % 3 == 0 ? "Australia news and culture and lifestyle" : "World news",
+                    1528624800000L + i * 60000L,
+                    "https://www.theguardian.com/world/" + i,
+                    ""));
+        }
+        return newsList;
+    }
+
+    @Test
+    @UiThreadTest
+    public void compareBind() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        List<News> newsList = newsList();
+
+        NewsAdapter adapter = new NewsAdapter(new NewsAdapter.OnNewsClickListener() {
+            @Override
+            public void onNewsClick(News news) {
+            }
+        });
+        NewsAdapter.NewsViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+        List<NewsItem> items = new NewsFormatter(context).format(newsList);
+        adapter.setNews(items);
+
+        TextView titleView = holder.itemView.findViewById(R.id.headline);
+        TextView trailView = holder.itemView.findViewById(R.id.trailText);
+        TextView sectionNameView = holder.itemView.findViewById(R.id.section_name);
+        TextView authorNameView = holder.itemView.findViewById(R.id.byline);
+        TextView dateView = holder.itemView.findViewById(R.id.date);
+        TextView timeView = holder.itemView.findViewById(R.id.time);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (News news : newsList) {
+                bindLegacy(news, titleView, trailView, sectionNameView, authorNameView, dateView, timeView);
+            }
+        }
+        long legacyTime = System.nanoTime() - start;
+
+        // The first list submitted to the adapter is set without a diff, so it can be bound now.
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int position = 0; position < NEWS_COUNT; position++) {
+                adapter.onBindViewHolder(holder, position);
+            }
+        }
+        long itemTime = System.nanoTime() - start;
+
+        int binds = ITERATIONS * NEWS_COUNT;
+        Log.i(LOG_TAG, "Formatting in bind: " + legacyTime / binds + " ns per bind");
+        Log.i(LOG_TAG, "Formatted items: " + itemTime / binds + " ns per bind");
+    }
+
+    /**
+     * The texts set by getView before the {@link NewsFormatter}, every value was formatted in the bind.
+     */
+    private static void bindLegacy(News news, TextView titleView, TextView trailView, TextView sectionNameView,
+                                   TextView authorNameView, TextView dateView, TextView timeView) {
+        titleView.setText(news.getHeadline());
+        trailView.setText(Html.fromHtml(news.getTrailText()));
+
+        String textSection;
+        if (news.getSectionName().length() > 25) {
+            textSection = news.getSectionName().substring(0, 25).concat(" ...");
+        } else {
+            textSection = news.getSectionName();
+        }
+        sectionNameView.setText(textSection);
+
+        if (!news.getByline().equals("")) {
+            authorNameView.setText("By ".concat(news.getByline()));
+        } else {
+            authorNameView.setText(R.string.no_author);
+        }
+
+        final String pattern = ((SimpleDateFormat) DateFormat.getDateInstance(DateFormat.DEFAULT, Locale.getDefault())).toPattern();
+        dateView.setText(new SimpleDateFormat(pattern, Locale.getDefault()).format(new Date(news.getPublicationTime())));
+        timeView.setText(new SimpleDateFormat("h:mm a", Locale.getDefault()).format(new Date(news.getPublicationTime())));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android.newsappstage2;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compare the JSONObject parsing with the streaming parsing of a Guardian response with page-size=200.
+ * Time and allocated bytes of each path are written in the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryUtilsParseBenchmark {
+
+    private static final String LOG_TAG = QueryUtilsParseBenchmark.class.getSimpleName();
+
+    private static final int PAGE_SIZE = 200;
+
+    private static final int ITERATIONS = 50;
+
+    /**
+     * Returns a response like the one of the Guardian API with the given number of results.
+     */
+    static byte[] guardianResponse(int results) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":").append(results)
+                .append(",\"startIndex\":1,\"pageSize\":").append(results)
+                .append(",\"currentPage\":1,\"pages\":1,\"orderBy\":\"newest\",\"results\":[");
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"world/2018/jun/").append(i).append("/news\",")
+                    .append("\"type\":\"article\",\"sectionId\":\"world\",\"sectionName\":\"World news\",")
+                    .append("\"webPublicationDate\":\"2018-06-").append(10 + i % 20).append("T10:").append(10 + i % 50).append(":00Z\",")
+                    .append("\"webTitle\":\"Headline number ").append(i).append(" about \\\"world\\\" news\",")
+                    .append("\"webUrl\":\"https://www.theguardian.com/world/2018/jun/").append(i).append("/news\",")
+                    .append("\"apiUrl\":\"https://content.guardianapis.com/world/2018/jun/").append(i).append("/news\",")
+                    .append("\"fields\":{\"trailText\":\"<strong>Trail</strong> text of the news ").append(i).append("\",")
+                    .append("\"byline\":").append(i % 5 == 0 ? "null" : "\"Author " + i + "\"").append(',')
+                    .append("\"thumbnail\":\"https://media.guim.co.uk/").append(i).append("/500.jpg\"},")
+                    .append("\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+        }
+        json.append("]}}");
+        return json.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void streamingParserGivesSameNews() throws IOException {
+        byte[] response = guardianResponse(PAGE_SIZE);
+
+        List<News> expected = QueryUtils.extractNews(
+                QueryUtils.readFromStream(new ByteArrayInputStream(response)));
+        List<News> actual = QueryUtils.extractNews(new ByteArrayInputStream(response));
+
+        assertEquals(PAGE_SIZE, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            News first = expected.get(i);
+            News second = actual.get(i);
+            assertEquals(first.getHeadline(), second.getHeadline());
+            assertEquals(first.getTrailText(), second.getTrailText());
+            assertEquals(first.getByline(), second.getByline());
+            assertEquals(first.getSectionName(), second.getSectionName());
+            assertEquals(first.getPublicationTime(), second.getPublicationTime());
+            assertEquals(first.getUrl(), second.getUrl());
+            assertEquals(first.getImage(), second.getImage());
+        }
+    }
+
+    @Test
+    public void compareParsers() throws IOException {
+        byte[] response = guardianResponse(PAGE_SIZE);
+
+        // Warm up both paths before the measure.
+        for (int i = 0; i < 5; i++) {
+            QueryUtils.extractNews(QueryUtils.readFromStream(new ByteArrayInputStream(response)));
+            QueryUtils.extractNews(new ByteArrayInputStream(response));
+        }
+
+        Debug.startAllocCounting();
+
+        Debug.resetThreadAllocSize();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            QueryUtils.extractNews(QueryUtils.readFromStream(new ByteArrayInputStream(response)));
+        }
+        long domTime = System.nanoTime() - start;
+        long domAlloc = Debug.getThreadAllocSize();
+
+        Debug.resetThreadAllocSize();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            QueryUtils.extractNews(new ByteArrayInputStream(response));
+        }
+        long streamingTime = System.nanoTime() - start;
+        long streamingAlloc = Debug.getThreadAllocSize();
+
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, "JSONObject: " + domTime / ITERATIONS / 1000 + " us, "
+                + domAlloc / ITERATIONS + " bytes per parse");
+        Log.i(LOG_TAG, "JsonReader: " + streamingTime / ITERATIONS / 1000 + " us, "
+                + streamingAlloc / ITERATIONS + " bytes per parse");
+    }
+}
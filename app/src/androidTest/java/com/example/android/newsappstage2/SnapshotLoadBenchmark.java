@@ -0,0 +1,74 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compare the load of the news at the launch from the database of {@link NewsStore}
+ * with the load from the {@link NewsSnapshot}, both formatted for the list like before the first frame.
+ * The time per load of each path is written in the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SnapshotLoadBenchmark {
+
+    private static final String LOG_TAG = SnapshotLoadBenchmark.class.getSimpleName();
+
+    private static final String QUERY = "https://content.guardianapis.com/search?benchmark=snapshot";
+
+    private static final int NEWS_COUNT = 200;
+
+    private static final int ITERATIONS = 20;
+
+    private static List<News> newsList() {
+        List<News> newsList = new ArrayList<>();
+        for (int i = 0; i < NEWS_COUNT; i++) {
+            newsList.add(new News("Headline number " + i,
+                    "<strong>Trail</strong> text of the news " + i + " with <a href=\"#\">a link</a>",
+                    i % 5 == 0 ? "" : "Author " + i,
+                    i % 3 == 0 ? "Australia news" : "World news",
+                    1528624800000L + i * 60000L,
+                    "https://www.theguardian.com/world/" + i,
+                    "https://media.guim.co.uk/" + i + "/500.jpg"));
+        }
+        return newsList;
+    }
+
+    @Test
+    public void compareLoad() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        NewsStore store = NewsStore.getInstance(context);
+        NewsSnapshot snapshot = new NewsSnapshot(new File(context.getCacheDir(), "benchmark.snapshot"));
+        NewsFormatter formatter = new NewsFormatter(context);
+
+        // The store keeps one query, the news of the app are replaced and synced again at the next launch
+        store.save(QUERY, newsList());
+        snapshot.write(QUERY, store.getNews(QUERY, "newest"));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(NEWS_COUNT, formatter.format(store.getNews(QUERY, "newest")).size());
+        }
+        long storeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(NEWS_COUNT, formatter.format(snapshot.read(QUERY)).size());
+        }
+        long snapshotTime = System.nanoTime() - start;
+
+        snapshot.clear();
+        Log.i(LOG_TAG, "Store: " + storeTime / ITERATIONS / 1000 + " us per load");
+        Log.i(LOG_TAG, "Snapshot: " + snapshotTime / ITERATIONS / 1000 + " us per load");
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare the peak memory of a fast scroll over 500 news when the thumbnails were decoded
+ * at full resolution with the decode of {@link BitmapDecoder} at the size of the view with a {@link BitmapPool}.
+ * The scroll is simulated: every position decodes its thumbnail into one of the visible views,
+ * the bitmap that leaves the screen is dropped, or put in the pool. The peaks are written in the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ThumbnailMemoryBenchmark {
+
+    private static final String LOG_TAG = ThumbnailMemoryBenchmark.class.getSimpleName();
+
+    private static final int NEWS_COUNT = 500;
+
+    /**
+     * Distinct images, the news reuse them like the thumbnails of a long list
+     */
+    private static final int IMAGE_COUNT = 25;
+
+    /**
+     * Size of the thumbnails of the Guardian API
+     */
+    private static final int IMAGE_WIDTH = 500;
+    private static final int IMAGE_HEIGHT = 300;
+
+    private static final int VISIBLE_VIEWS = 8;
+
+    private File mDirectory;
+
+    private int mViewSize;
+
+    @Before
+    public void createImages() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mViewSize = context.getResources().getDimensionPixelSize(R.dimen.dim_image_news);
+        mDirectory = new File(context.getCacheDir(), "thumbnail_benchmark");
+        mDirectory.mkdirs();
+
+        Paint paint = new Paint();
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            Bitmap bitmap = Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawColor(Color.rgb(i * 10, 255 - i * 10, 128));
+            paint.setColor(Color.rgb(255 - i * 10, i * 10, 64));
+            canvas.drawCircle(IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2, IMAGE_HEIGHT / 3, paint);
+            OutputStream outputStream = new FileOutputStream(imageFile(i));
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 85, outputStream);
+            } finally {
+                outputStream.close();
+            }
+            bitmap.recycle();
+        }
+    }
+
+    @After
+    public void deleteImages() {
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            imageFile(i).delete();
+        }
+        mDirectory.delete();
+    }
+
+    private File imageFile(int index) {
+        return new File(mDirectory, "thumbnail_" + index + ".jpg");
+    }
+
+    @Test
+    public void comparePeakMemory() {
+        long fullPeak = scroll(null, false);
+        BitmapPool pool = new BitmapPool(4 * 1024 * 1024);
+        long sampledPeak = scroll(pool, true);
+
+        Log.i(LOG_TAG, "Full resolution decode: peak " + fullPeak / 1024 + " KB");
+        Log.i(LOG_TAG, "Sampled decode with pool: peak " + sampledPeak / 1024 + " KB, pool hits "
+                + pool.getHitCount() + ", misses " + pool.getMissCount());
+        assertTrue(sampledPeak <= fullPeak);
+    }
+
+    /**
+     * Decode the thumbnails of all the news in the visible views and return the peak of the memory used
+     * above the memory at the start.
+     *
+     * @param pool    receives the bitmaps that leave the screen, null to drop them
+     * @param sampled is true to decode with {@link BitmapDecoder}, false to decode at full resolution
+     */
+    private long scroll(BitmapPool pool, boolean sampled) {
+        Runtime.getRuntime().gc();
+        long base = usedMemory();
+        long peak = 0;
+        Bitmap[] views = new Bitmap[VISIBLE_VIEWS];
+        for (int position = 0; position < NEWS_COUNT; position++) {
+            String path = imageFile(position % IMAGE_COUNT).getPath();
+            Bitmap bitmap = sampled
+                    ? BitmapDecoder.decode(path, mViewSize, mViewSize, pool)
+                    : BitmapFactory.decodeFile(path);
+
+            // The view of the news scrolled off the screen is rebound to this news
+            int view = position % VISIBLE_VIEWS;
+            if (pool != null) {
+                pool.put(views[view]);
+            }
+            views[view] = bitmap;
+            peak = Math.max(peak, usedMemory() - base);
+        }
+        return peak;
+    }
+
+    /**
+     * Returns the bytes of the Java heap and of the native heap in use, the pixels of the bitmaps
+     * are in the Java heap before Oreo and in the native heap after it.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.newsappstage2;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Decode the images at the size of their views instead of their full resolution.
+ * The bounds are read first, then the image is decoded with the largest power of 2 sample size
+ * that keeps it at least as large as the view. The JPEG images, without alpha, are decoded in RGB_565,
+ * half the memory of ARGB_8888, and the pixels are written in a bitmap of a {@link BitmapPool} if possible.
+ */
+public class BitmapDecoder {
+
+    private static final String LOG_TAG = BitmapDecoder.class.getSimpleName();
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Returns the bitmap of the image file sampled to the size of the view, or null if it can't be decoded.
+     *
+     * @param path      is the path of the image file
+     * @param reqWidth  is the width of the view in pixels
+     * @param reqHeight is the height of the view in pixels
+     * @param pool      gives the bitmaps reused by the decode, it can be null
+     */
+    public static Bitmap decode(String path, int reqWidth, int reqHeight, BitmapPool pool) {
+        // Read only the size and the type of the image
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        // A JPEG hasn't alpha, the other types can have transparent pixels
+        options.inPreferredConfig = "image/jpeg".equals(options.outMimeType)
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        // The decoded bitmaps are mutable, so they can be reused when they aren't displayed anymore
+        options.inMutable = true;
+
+        if (pool != null && canUseInBitmap(options.inSampleSize)) {
+            int width = sampledSize(options.outWidth, options.inSampleSize);
+            int height = sampledSize(options.outHeight, options.inSampleSize);
+            options.inBitmap = pool.get(width, height, options.inPreferredConfig);
+        }
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap doesn't fit the image after all, decode it in a new bitmap
+            Log.w(LOG_TAG, "Problem reusing a bitmap for " + path, e);
+            if (pool != null) {
+                pool.put(options.inBitmap);
+            }
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        }
+    }
+
+    /**
+     * Returns the largest power of 2 sample size that keeps both the sides of the image
+     * at least as large as the requested ones, 1 if the image is already smaller.
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Returns the side of the decoded image, rounded up so the reused bitmap is large enough.
+     */
+    static int sampledSize(int size, int inSampleSize) {
+        return (size + inSampleSize - 1) / inSampleSize;
+    }
+
+    /**
+     * Before KitKat a bitmap is reused only by a decode of the same size, without sampling.
+     */
+    private static boolean canUseInBitmap(int inSampleSize) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || inSampleSize == 1;
+    }
+}
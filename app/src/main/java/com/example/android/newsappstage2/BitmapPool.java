@@ -0,0 +1,119 @@
+package com.example.android.newsappstage2;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of the bitmaps no longer displayed nor cached, so a decode writes its pixels into one of them
+ * with {@link android.graphics.BitmapFactory.Options#inBitmap} instead of allocating a new bitmap.
+ * The pool is bounded in bytes, the oldest bitmaps are dropped first. All the methods are thread safe.
+ */
+public class BitmapPool {
+
+    private final long mMaxBytes;
+
+    /**
+     * Bitmaps of the pool, the oldest first
+     */
+    private final List<Bitmap> mBitmaps = new ArrayList<>();
+
+    private long mBytes;
+
+    private int mHits;
+
+    private int mMisses;
+
+    /**
+     * Constructs a new {@link BitmapPool}.
+     *
+     * @param maxBytes is the max size of the bitmaps kept in the pool
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Add a bitmap that isn't used anymore. Only the mutable bitmaps can be reused.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled() || mBitmaps.contains(bitmap)) {
+            return;
+        }
+        mBitmaps.add(bitmap);
+        mBytes += bitmap.getByteCount();
+        while (mBytes > mMaxBytes && !mBitmaps.isEmpty()) {
+            Bitmap oldest = mBitmaps.remove(0);
+            mBytes -= oldest.getByteCount();
+        }
+    }
+
+    /**
+     * Remove and return a bitmap where an image of the given size and config can be decoded,
+     * or null if there isn't any. Before KitKat the bitmap must have the same size of the image,
+     * after it the smallest bitmap large enough is returned.
+     *
+     * @param width  is the width of the decoded image
+     * @param height is the height of the decoded image
+     * @param config is the config of the decoded image
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int best = -1;
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            Bitmap candidate = mBitmaps.get(i);
+            if (!canReuse(candidate, width, height, config)) {
+                continue;
+            }
+            if (best < 0 || candidate.getByteCount() < mBitmaps.get(best).getByteCount()) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        Bitmap bitmap = mBitmaps.remove(best);
+        mBytes -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    private static boolean canReuse(Bitmap candidate, int width, int height, Bitmap.Config config) {
+        if (candidate.getConfig() != config) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return candidate.getWidth() == width && candidate.getHeight() == height;
+        }
+        return (long) width * height * bytesPerPixel(config) <= candidate.getAllocationByteCount();
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888) {
+            return 4;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Returns the number of the decodes that have reused a bitmap of the pool.
+     */
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of the decodes that haven't found a bitmap in the pool.
+     */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.android.newsappstage2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancels a load in flight. The listeners abort the work that is blocked,
+ * i.e. a response whose body is read, and the stages check {@link #isCanceled()} between them.
+ * android.os.CancellationSignal isn't available on API 15. All the methods are thread safe.
+ */
+public class CancelSignal {
+
+    private boolean mCanceled;
+
+    private final List<Runnable> mListeners = new ArrayList<>();
+
+    /**
+     * Cancel the load and run the listeners, only the first call has an effect.
+     */
+    public void cancel() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Returns true if the load has been cancelled.
+     */
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Add a listener run on the thread that cancels, or at once if the load is already cancelled.
+     */
+    public void addOnCancelListener(Runnable listener) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Remove a listener, i.e. when the work it aborts is done.
+     */
+    public synchronized void removeOnCancelListener(Runnable listener) {
+        mListeners.remove(listener);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.android.newsappstage2;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Simple bounded file cache. Every entry is a file named with the MD5 hash of its key,
+ * when the directory grows over the max size the least recently used files are deleted.
+ */
+public class DiskCache {
+
+    /**
+     * Constant for the log messages
+     */
+    private static final String LOG_TAG = DiskCache.class.getSimpleName();
+
+    /**
+     * Size of the buffer used to copy the streams into the cache
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Suffix of the files being written, they aren't entries of the cache yet
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Age of a temporary file left by a write that never ended, i.e. the process was killed.
+     * No write of a body lasts so long, so the file is deleted.
+     */
+    private static final long STALE_TMP_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Directory of the cache
+     */
+    private final File mDirectory;
+
+    /**
+     * Max size in bytes of the directory
+     */
+    private final long mMaxSize;
+
+    /**
+     * Constructs a new {@link DiskCache}.
+     *
+     * @param directory is the directory where the files are stored
+     * @param maxSize   is the max size in bytes of the cache
+     */
+    public DiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Problem creating the cache directory " + mDirectory);
+        }
+        deleteStaleTmpFiles();
+    }
+
+    /**
+     * Returns the max size in bytes of the cache.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the file of the given key or null if it isn't in the cache.
+     */
+    public File get(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        // Touch the file so that the trim keeps the most recently used entries.
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Copy the {@link InputStream} into the cache and return the file of the entry.
+     * The stream is written in a temporary file of its own and then renamed, so a reader never sees
+     * a partial entry and two writers of the same key don't write in the same file.
+     */
+    public File put(String key, InputStream inputStream) throws IOException {
+        return commit(key, write(key, inputStream));
+    }
+
+    /**
+     * Copy the {@link InputStream} into a new temporary file of the cache and return it. The file isn't
+     * an entry until it's committed with {@link #commit(String, File)}, so the copy can run without locks.
+     */
+    public File write(String key, InputStream inputStream) throws IOException {
+        File tmpFile = File.createTempFile(fileFor(key).getName() + ".", TMP_SUFFIX, mDirectory);
+        boolean written = false;
+        OutputStream outputStream = new FileOutputStream(tmpFile);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            written = true;
+        } finally {
+            outputStream.close();
+            if (!written) {
+                tmpFile.delete();
+            }
+        }
+        return tmpFile;
+    }
+
+    /**
+     * Rename the temporary file written by {@link #write(String, InputStream)} to the entry of the key,
+     * replacing the previous one, and return the file of the entry.
+     */
+    public File commit(String key, File tmpFile) throws IOException {
+        File file = fileFor(key);
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Problem renaming the cache file " + tmpFile);
+        }
+        trimToSize();
+        return file;
+    }
+
+    /**
+     * Delete the temporary files left by the writes that never ended. They aren't entries,
+     * so the trim never deletes them and they would fill the directory forever.
+     */
+    private void deleteStaleTmpFiles() {
+        final long staleBefore = System.currentTimeMillis() - STALE_TMP_MILLIS;
+        File[] files = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(TMP_SUFFIX) && file.lastModified() < staleBefore;
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                Log.e(LOG_TAG, "Problem deleting the temporary file " + file);
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used files until the cache fits in the max size.
+     * The temporary files are being written by other threads, so they are never deleted.
+     */
+    private synchronized void trimToSize() {
+        File[] files = mDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().endsWith(TMP_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxSize) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstModified = first.lastModified();
+                long secondModified = second.lastModified();
+                return firstModified < secondModified ? -1 : (firstModified == secondModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > mMaxSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the given key. The name is the MD5 of the key so any URL is a valid file name.
+     */
+    private File fileFor(String key) {
+        return new File(mDirectory, hashKey(key));
+    }
+
+    /**
+     * Returns the MD5 of the key in hex, a valid file name for any key. It's shared with {@link ReplayFeedSource}.
+     */
+    static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is always available on Android, fallback to the hash code anyway.
+            return String.valueOf(key.hashCode());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.android.newsappstage2;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Source of the responses of the requests of the news, the Guardian API or a replay of its responses.
+ * {@link QueryUtils} fetches every request from its source, so the load pipeline runs the same way
+ * with the network, with recorded files or with responses in memory.
+ */
+public interface FeedSource {
+
+    /**
+     * Returns the response of the request, it must be closed. It blocks, so it must be called off the main thread.
+     *
+     * @param url    is the URL of the request, built with {@link GuardianFeedSource#SEARCH_URL}
+     * @param signal aborts the request
+     * @throws IOException if there isn't a response
+     */
+    HttpClient.Response fetch(URL url, CancelSignal signal) throws IOException;
+}
@@ -0,0 +1,47 @@
+package com.example.android.newsappstage2;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The Guardian API fetched with an {@link HttpClient}. The requests can be sent to another server
+ * with the same API, i.e. a local replay server, without changing their URLs in the app.
+ */
+public class GuardianFeedSource implements FeedSource {
+
+    /**
+     * URL of the search of the Guardian API
+     */
+    public static final String SEARCH_URL = "https://content.guardianapis.com/search";
+
+    private final HttpClient mClient;
+
+    private final String mSearchUrl;
+
+    /**
+     * Constructs a new {@link GuardianFeedSource}.
+     *
+     * @param client    sends the requests
+     * @param searchUrl replaces {@link #SEARCH_URL} in the requests
+     */
+    public GuardianFeedSource(HttpClient client, String searchUrl) {
+        mClient = client;
+        mSearchUrl = searchUrl;
+    }
+
+    /**
+     * Constructs a new {@link GuardianFeedSource} of the Guardian API with the shared {@link HttpClient}.
+     */
+    public GuardianFeedSource() {
+        this(HttpClient.getDefault(), SEARCH_URL);
+    }
+
+    @Override
+    public HttpClient.Response fetch(URL url, CancelSignal signal) throws IOException {
+        String requestUrl = url.toString();
+        if (!mSearchUrl.equals(SEARCH_URL) && requestUrl.startsWith(SEARCH_URL)) {
+            url = new URL(mSearchUrl + requestUrl.substring(SEARCH_URL.length()));
+        }
+        return mClient.get(url, true, signal);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.android.newsappstage2;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Cache of the HTTP responses keyed by the request URL.
+ * Every entry has the body, the validators (ETag and Last-Modified) for a conditional GET
+ * and the time until the body can be used without asking the server.
+ */
+public class HttpCache {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String LOG_TAG = HttpCache.class.getSimpleName();
+
+    /**
+     * Suffix of the key of the file with the validators of an entry
+     */
+    private static final String META_SUFFIX = "#meta";
+
+    private final DiskCache mDiskCache;
+
+    /**
+     * Constructs a new {@link HttpCache}.
+     *
+     * @param directory is the directory where the responses are stored
+     * @param maxSize   is the max size in bytes of the cache
+     */
+    public HttpCache(File directory, long maxSize) {
+        mDiskCache = new DiskCache(directory, maxSize);
+    }
+
+    /**
+     * Returns the cached response of the URL or null if it isn't in the cache.
+     */
+    public synchronized Entry get(String url) {
+        File meta = mDiskCache.get(url + META_SUFFIX);
+        File body = mDiskCache.get(url);
+        if (meta == null || body == null) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(meta), UTF_8));
+            try {
+                String eTag = emptyToNull(reader.readLine());
+                String lastModified = emptyToNull(reader.readLine());
+                String expires = reader.readLine();
+                if (expires == null) {
+                    return null;
+                }
+                return new Entry(body, eTag, lastModified, Long.parseLong(expires));
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the max size in bytes of the cache, a larger body isn't stored.
+     */
+    public long getMaxSize() {
+        return mDiskCache.getMaxSize();
+    }
+
+    /**
+     * Store the body read from the stream with its validators and return a new stream of the stored body.
+     * The body is downloaded without the lock of the cache, so the other requests don't wait for it;
+     * only the rename of the body and the update of the validators hold the lock.
+     * The returned stream is opened before the body is an entry, so it reads the whole body also if the
+     * entry is trimmed at once. A body larger than the cache isn't stored, it's read only by the stream.
+     *
+     * @param expires is the time in milliseconds until the body is fresh
+     */
+    public InputStream put(String url, InputStream body, String eTag, String lastModified, long expires)
+            throws IOException {
+        File tmpFile = mDiskCache.write(url, body);
+        // An open file can be read after it's renamed or deleted
+        InputStream stored = new FileInputStream(tmpFile);
+        if (tmpFile.length() > mDiskCache.getMaxSize()) {
+            tmpFile.delete();
+            return stored;
+        }
+        try {
+            synchronized (this) {
+                mDiskCache.commit(url, tmpFile);
+                writeMeta(url, eTag, lastModified, expires);
+            }
+        } catch (IOException e) {
+            // The body is downloaded, only the cache of the next request is lost
+            Log.e(LOG_TAG, "Problem storing the response of " + url, e);
+        }
+        return stored;
+    }
+
+    /**
+     * Update the time until the body of the entry is fresh, i.e. after a response 304 Not Modified.
+     */
+    public synchronized Entry refresh(String url, Entry entry, long expires) throws IOException {
+        writeMeta(url, entry.mETag, entry.mLastModified, expires);
+        return new Entry(entry.mBody, entry.mETag, entry.mLastModified, expires);
+    }
+
+    private void writeMeta(String url, String eTag, String lastModified, long expires) throws IOException {
+        String meta = nullToEmpty(eTag) + "\n" + nullToEmpty(lastModified) + "\n" + expires + "\n";
+        mDiskCache.put(url + META_SUFFIX, new ByteArrayInputStream(meta.getBytes(UTF_8)));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+
+        private final File mBody;
+
+        private final String mETag;
+
+        private final String mLastModified;
+
+        private final long mExpires;
+
+        private Entry(File body, String eTag, String lastModified, long expires) {
+            mBody = body;
+            mETag = eTag;
+            mLastModified = lastModified;
+            mExpires = expires;
+        }
+
+        /**
+         * Returns a new stream of the cached body.
+         *
+         * @throws FileNotFoundException if the body has been trimmed from the cache after the entry was read
+         */
+        public InputStream openBody() throws IOException {
+            return new FileInputStream(mBody);
+        }
+
+        /**
+         * Returns the value of the header ETag or null.
+         */
+        public String getETag() {
+            return mETag;
+        }
+
+        /**
+         * Returns the value of the header Last-Modified or null.
+         */
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /**
+         * Returns true if the body can be used without asking the server.
+         */
+        public boolean isFresh(long now) {
+            return now < mExpires;
+        }
+    }
+}
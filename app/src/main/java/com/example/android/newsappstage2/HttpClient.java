@@ -0,0 +1,601 @@
+package com.example.android.newsappstage2;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Send the GET requests of the app, the feed and the thumbnails share the {@link #getDefault()} client.
+ * The connections are kept alive and reused: the bodies are always read to the end and closed,
+ * and the connections are never disconnected. The requests in flight to the same host are limited.
+ * With a {@link HttpCache} the responses are cached:
+ * a fresh cached response is used without the network, otherwise the request is conditional
+ * (If-None-Match / If-Modified-Since) and a 304 Not Modified uses the cached body.
+ * The responses are requested with gzip and decompressed while they are read.
+ */
+public class HttpClient {
+
+    /**
+     * Size of the buffer of the decompression
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Max number of requests in flight to the same host. It's the default size of the pool of
+     * the keep-alive connections for each host (the "http.maxConnections" property).
+     */
+    static final int MAX_REQUESTS_PER_HOST = 5;
+
+    /**
+     * Time between the checks of the signal while a request waits for the permit of its host
+     */
+    private static final long PERMIT_POLL_MILLIS = 100;
+
+    /**
+     * Max number of bytes left in a body that are read to reuse the connection
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static HttpClient sDefault;
+
+    /**
+     * Metrics of all the clients: the connect, the time to the first byte after it,
+     * and the read of the bodies stored in the cache. The other bodies are read by the callers.
+     */
+    private static final Metrics.Histogram sConnectTime = Metrics.histogram("http.connect");
+    private static final Metrics.Histogram sFirstByteTime = Metrics.histogram("http.first_byte");
+    private static final Metrics.Histogram sBodyReadTime = Metrics.histogram("http.body_read");
+    private static final Metrics.Counter sNetworkRequests = Metrics.counter("http.network_requests");
+    private static final Metrics.Counter sCacheHits = Metrics.counter("http.cache_hits");
+
+    /**
+     * Cache of the responses, null if the responses aren't cached
+     */
+    private volatile HttpCache mCache;
+
+    private final int mMaxRequestsPerHost;
+
+    /**
+     * Permits of the requests in flight by host
+     */
+    private final Map<String, Semaphore> mHostPermits = new HashMap<>();
+
+    /**
+     * Creates the sockets of the HTTPS connections, so the new connections are counted.
+     * The same instance is used for every connection, otherwise the connections aren't pooled.
+     */
+    private final CountingSocketFactory mSocketFactory =
+            new CountingSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+
+    private final AtomicInteger mNetworkRequests = new AtomicInteger();
+
+    private final AtomicInteger mHttpsRequests = new AtomicInteger();
+
+    private final AtomicInteger mCacheHits = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link HttpClient}.
+     *
+     * @param cache              is the cache of the responses, or null to not cache the responses
+     * @param maxRequestsPerHost is the max number of requests in flight to the same host
+     */
+    public HttpClient(HttpCache cache, int maxRequestsPerHost) {
+        mCache = cache;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Constructs a new {@link HttpClient} with the default limit of requests per host.
+     *
+     * @param cache is the cache of the responses, or null to not cache the responses
+     */
+    public HttpClient(HttpCache cache) {
+        this(cache, MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * Returns the client shared by all the requests of the app.
+     */
+    public static synchronized HttpClient getDefault() {
+        if (sDefault == null) {
+            sDefault = new HttpClient(null);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Set the cache of the responses requested with the cache.
+     */
+    public void setCache(HttpCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * Send a GET request to the URL, the response is cached. The {@link Response} must be closed.
+     */
+    public Response get(URL url) throws IOException {
+        return get(url, true);
+    }
+
+    /**
+     * Send a GET request to the URL. The {@link Response} must be closed.
+     *
+     * @param useCache is false if the response has its own cache, i.e. the thumbnails
+     */
+    public Response get(URL url, boolean useCache) throws IOException {
+        return get(url, useCache, null);
+    }
+
+    /**
+     * Send a GET request to the URL. The {@link Response} must be closed.
+     * When the signal is cancelled the connection is closed, so a request waiting for the response
+     * or a read of the body blocked on the socket fails at once. The connection isn't reused.
+     *
+     * @param useCache is false if the response has its own cache, i.e. the thumbnails
+     * @param signal   aborts the request, it can be null
+     */
+    public Response get(URL url, boolean useCache, CancelSignal signal) throws IOException {
+        try {
+            return get(url, useCache, signal, true);
+        } catch (TrimmedBodyException e) {
+            // The body of a 304 Not Modified has been trimmed from the cache, it's downloaded again
+            return get(url, useCache, signal, false);
+        }
+    }
+
+    /**
+     * Send a GET request to the URL.
+     *
+     * @param useCached is false to ignore the cached response, i.e. when its body has been trimmed
+     */
+    private Response get(URL url, boolean useCache, CancelSignal signal, boolean useCached) throws IOException {
+        HttpCache cache = useCache ? mCache : null;
+        String key = url.toString();
+        HttpCache.Entry cached = cache != null && useCached ? cache.get(key) : null;
+
+        // A fresh response is used without asking the server
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            InputStream body = openCachedBody(cached);
+            if (body != null) {
+                mCacheHits.incrementAndGet();
+                sCacheHits.increment();
+                return new Response(HttpURLConnection.HTTP_OK, body, null, null, true);
+            }
+            // The body has been trimmed after the entry was read, it's downloaded again
+            cached = null;
+        }
+
+        Semaphore permits = hostPermits(url.getHost());
+        acquire(permits, signal);
+        mNetworkRequests.incrementAndGet();
+        sNetworkRequests.increment();
+
+        // The permit is released when the body is closed, here if the response has no body
+        boolean released = false;
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        Runnable abort = null;
+        if (signal != null) {
+            abort = new Runnable() {
+                @Override
+                public void run() {
+                    urlConnection.disconnect();
+                }
+            };
+            signal.addOnCancelListener(abort);
+        }
+        try {
+            if (signal != null && signal.isCanceled()) {
+                throw new InterruptedIOException("Request cancelled");
+            }
+            if (urlConnection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) urlConnection).setSSLSocketFactory(mSocketFactory);
+                mHttpsRequests.incrementAndGet();
+            }
+            urlConnection.setReadTimeout(QueryUtils.READ_TIMEOUT /* milliseconds */);
+            urlConnection.setConnectTimeout(QueryUtils.CONNECT_TIMEOUT /* milliseconds */);
+            urlConnection.setRequestMethod("GET");
+            // Set explicitly the header, so the body is decompressed here also when it's cached.
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            if (cached != null) {
+                if (cached.getETag() != null) {
+                    urlConnection.setRequestProperty("If-None-Match", cached.getETag());
+                }
+                if (cached.getLastModified() != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                }
+            }
+            long start = sConnectTime.begin();
+            try {
+                urlConnection.connect();
+            } finally {
+                sConnectTime.end(start);
+            }
+
+            // Time to the first byte of the response, after the connection
+            int responseCode;
+            start = sFirstByteTime.begin();
+            try {
+                responseCode = urlConnection.getResponseCode();
+            } finally {
+                sFirstByteTime.end(start);
+            }
+            long requestTime = System.currentTimeMillis();
+
+            // Not Modified: the cached body is still valid
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                drain(urlConnection.getInputStream());
+                cached = cache.refresh(key, cached, expires(urlConnection, requestTime));
+                InputStream body = openCachedBody(cached);
+                if (body == null) {
+                    throw new TrimmedBodyException();
+                }
+                mCacheHits.incrementAndGet();
+                sCacheHits.increment();
+                return new Response(HttpURLConnection.HTTP_OK, body, null, null, true)
+                        .cancelWith(signal, abort);
+            }
+
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                drain(urlConnection.getErrorStream());
+                return new Response(responseCode, null, urlConnection, null, false).cancelWith(signal, abort);
+            }
+
+            // A body larger than the whole cache would be trimmed at once, so it isn't stored
+            String cacheControl = urlConnection.getHeaderField("Cache-Control");
+            if (cache == null || (cacheControl != null && cacheControl.contains("no-store"))
+                    || urlConnection.getContentLength() > cache.getMaxSize()) {
+                // The body can fail to open, i.e. a timeout or a bad gzip header: then the permit
+                // is released below, it's owned by the response only once the response exists.
+                InputStream body = openBody(urlConnection);
+                Response response = new Response(responseCode, body, urlConnection, permits, false);
+                released = true;
+                return response.cancelWith(signal, abort);
+            }
+
+            // The body is stored decompressed in the cache and then read from there
+            InputStream inputStream = openBody(urlConnection);
+            InputStream stored;
+            start = sBodyReadTime.begin();
+            try {
+                stored = cache.put(key, inputStream,
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"),
+                        expires(urlConnection, requestTime));
+            } finally {
+                drain(inputStream);
+                sBodyReadTime.end(start);
+            }
+            return new Response(responseCode, stored, urlConnection, null, false).cancelWith(signal, abort);
+        } catch (IOException e) {
+            // The connection is broken, so it isn't reused
+            if (signal != null) {
+                signal.removeOnCancelListener(abort);
+            }
+            urlConnection.disconnect();
+            throw e;
+        } finally {
+            if (!released) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Returns a new stream of the cached body, or null if the body has been trimmed from the cache.
+     */
+    private static InputStream openCachedBody(HttpCache.Entry cached) throws IOException {
+        try {
+            return cached.openBody();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of requests sent to the network.
+     */
+    public int getNetworkRequests() {
+        return mNetworkRequests.get();
+    }
+
+    /**
+     * Returns the number of responses from the cache without downloading the body.
+     */
+    public int getCacheHits() {
+        return mCacheHits.get();
+    }
+
+    /**
+     * Returns the number of HTTPS connections opened.
+     */
+    public int getConnectionsOpened() {
+        return mSocketFactory.mSockets.get();
+    }
+
+    /**
+     * Returns the number of HTTPS requests sent on a connection kept alive.
+     */
+    public int getConnectionsReused() {
+        return mHttpsRequests.get() - mSocketFactory.mSockets.get();
+    }
+
+    /**
+     * Wait for a permit of the host. The wait fails when the signal is cancelled or the thread
+     * is interrupted, i.e. a query of the fan-out dropped at its deadline.
+     */
+    private static void acquire(Semaphore permits, CancelSignal signal) throws InterruptedIOException {
+        try {
+            while (!permits.tryAcquire(PERMIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (signal != null && signal.isCanceled()) {
+                    throw new InterruptedIOException("Request cancelled");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted");
+        }
+    }
+
+    private synchronized Semaphore hostPermits(String host) {
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            permits = new Semaphore(mMaxRequestsPerHost, true);
+            mHostPermits.put(host, permits);
+        }
+        return permits;
+    }
+
+    /**
+     * Returns the stream of the body, decompressed if the server has sent it with gzip.
+     */
+    private static InputStream openBody(HttpURLConnection urlConnection) throws IOException {
+        InputStream inputStream = urlConnection.getInputStream();
+        if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+        return new BufferedInputStream(inputStream, BUFFER_SIZE);
+    }
+
+    /**
+     * Read the rest of the stream and close it, so the connection goes back to the pool.
+     */
+    private static void drain(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            int total = 0;
+            int count;
+            while (total < MAX_DRAIN_BYTES && (count = inputStream.read(buffer)) != -1) {
+                total += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Returns the time until the response is fresh with the max-age of Cache-Control.
+     * Without max-age, or with no-cache, the response is validated on every request.
+     */
+    private static long expires(HttpURLConnection urlConnection, long requestTime) {
+        String cacheControl = urlConnection.getHeaderField("Cache-Control");
+        if (cacheControl == null || cacheControl.contains("no-cache")) {
+            return requestTime;
+        }
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim();
+            if (directive.startsWith("max-age=")) {
+                try {
+                    return requestTime + Long.parseLong(directive.substring("max-age=".length())) * 1000L;
+                } catch (NumberFormatException e) {
+                    return requestTime;
+                }
+            }
+        }
+        return requestTime;
+    }
+
+    /**
+     * The body of a cached response has been trimmed from the cache after the server answered
+     * 304 Not Modified, so the response must be requested again without the validators.
+     */
+    private static class TrimmedBodyException extends IOException {
+
+        TrimmedBodyException() {
+            super("Cached body trimmed");
+        }
+    }
+
+    /**
+     * Response of a request, from the network or from the cache.
+     */
+    public static class Response {
+
+        private final int mCode;
+
+        private final InputStream mBody;
+
+        private final HttpURLConnection mConnection;
+
+        /**
+         * Permits of the host to release when the body is closed
+         */
+        private Semaphore mPermits;
+
+        private final boolean mFromCache;
+
+        /**
+         * Headers of a response that doesn't come from a connection, by lowercase name
+         */
+        private final Map<String, String> mHeaders;
+
+        /**
+         * Signal that aborts the connection, null if the request can't be cancelled
+         */
+        private CancelSignal mSignal;
+
+        private Runnable mAbort;
+
+        private Response(int code, InputStream body, HttpURLConnection connection, Semaphore permits,
+                         boolean fromCache) {
+            mCode = code;
+            mBody = body;
+            mConnection = connection;
+            mPermits = permits;
+            mFromCache = fromCache;
+            mHeaders = Collections.emptyMap();
+        }
+
+        /**
+         * Constructs a response that doesn't come from the network, i.e. of a {@link FeedSource} in memory.
+         *
+         * @param body    is the body of a 200 OK response, null for the other codes
+         * @param headers are the headers of the response, by name
+         */
+        public Response(int code, InputStream body, Map<String, String> headers) {
+            mCode = code;
+            mBody = body;
+            mConnection = null;
+            mFromCache = false;
+            mHeaders = new HashMap<>();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                mHeaders.put(header.getKey().toLowerCase(Locale.US), header.getValue());
+            }
+        }
+
+        /**
+         * Returns the response code. A response from the cache is always 200 OK.
+         */
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * Returns the body of a 200 OK response, null for the other codes.
+         */
+        public InputStream getBody() {
+            return mBody;
+        }
+
+        /**
+         * Returns the value of a header of the response, null for a response from the cache.
+         */
+        public String getHeader(String name) {
+            if (mConnection != null) {
+                return mConnection.getHeaderField(name);
+            }
+            return mHeaders.get(name.toLowerCase(Locale.US));
+        }
+
+        /**
+         * Returns true if the body comes from the cache.
+         */
+        public boolean isFromCache() {
+            return mFromCache;
+        }
+
+        private Response cancelWith(CancelSignal signal, Runnable abort) {
+            mSignal = signal;
+            mAbort = abort;
+            return this;
+        }
+
+        /**
+         * Close the body. The rest of a network body is read, so the connection can be reused.
+         */
+        public void close() throws IOException {
+            try {
+                if (mSignal != null) {
+                    mSignal.removeOnCancelListener(mAbort);
+                    if (mSignal.isCanceled()) {
+                        // The connection is already closed, the body can't be read
+                        if (mBody != null) {
+                            mBody.close();
+                        }
+                        return;
+                    }
+                }
+                drain(mBody);
+            } finally {
+                if (mPermits != null) {
+                    mPermits.release();
+                    mPermits = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delegates the creation of the sockets and counts them.
+     */
+    private static class CountingSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        private final AtomicInteger mSockets = new AtomicInteger();
+
+        private CountingSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            mSockets.incrementAndGet();
+            return mDelegate.createSocket(socket, host, port, autoClose);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            mSockets.incrementAndGet();
+            return mDelegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            mSockets.incrementAndGet();
+            return mDelegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            mSockets.incrementAndGet();
+            return mDelegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            mSockets.incrementAndGet();
+            return mDelegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
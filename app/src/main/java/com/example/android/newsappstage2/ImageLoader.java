@@ -0,0 +1,367 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load the thumbnails of the news off the main thread.
+ * The bitmaps are kept in a memory cache sized in bytes and the downloaded files in a {@link DiskCache}.
+ * The images are decoded at the size of their views by {@link BitmapDecoder}, and the bitmaps neither
+ * displayed nor cached anymore go to a {@link BitmapPool}, so the next decodes reuse their memory.
+ * Requests for the same URL share one fetch, and a request is cancelled when all its views are rebound.
+ * All the methods must be called from the main thread.
+ */
+public class ImageLoader {
+
+    /**
+     * Constant for the log messages
+     */
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    /**
+     * Number of threads that fetch the images
+     */
+    private static final int FETCH_THREADS = 3;
+
+    /**
+     * Max size of the disk cache (10MB)
+     */
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Fraction of the available memory for the pool of the reused bitmaps
+     */
+    private static final int POOL_MEMORY_DIVIDER = 32;
+
+    private static ImageLoader sInstance;
+
+    private static final Metrics.Histogram sDownloadTime = Metrics.histogram("image.download");
+    private static final Metrics.Histogram sDecodeTime = Metrics.histogram("image.decode");
+    private static final Metrics.Counter sMemoryHits = Metrics.counter("image.memory_hits");
+    private static final Metrics.Counter sDiskHits = Metrics.counter("image.disk_hits");
+
+    /**
+     * Decoded bitmaps, sized with the bytes of each bitmap
+     */
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    private final DiskCache mDiskCache;
+
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Size in pixels of the images whose views haven't a fixed size
+     */
+    private final int mDefaultSize;
+
+    /**
+     * Bitmaps in the memory cache
+     */
+    private final Set<Bitmap> mCached = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    /**
+     * Bitmap displayed by each view, set by the loader. The views are released by {@link #cancel(ImageView)}
+     * when they are recycled, a weak key dropped by the GC would leave the count of its bitmap forever.
+     */
+    private final Map<ImageView, Bitmap> mDisplayed = new HashMap<>();
+
+    /**
+     * Number of the views displaying each bitmap
+     */
+    private final Map<Bitmap, Integer> mDisplayCounts = new IdentityHashMap<>();
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(FETCH_THREADS);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Requests in flight by URL. Used to share one fetch between the views with the same image.
+     */
+    private final Map<String, Request> mRequests = new HashMap<>();
+
+    /**
+     * Request that each view is waiting for
+     */
+    private final Map<ImageView, Request> mTargets = new WeakHashMap<>();
+
+    private ImageLoader(Context context) {
+        // Use 1/8th of the available memory for the memory cache.
+        int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 8);
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                mCached.remove(oldValue);
+                recycleIfUnused(oldValue);
+            }
+        };
+        mDiskCache = new DiskCache(new File(context.getCacheDir(), "thumbnails"), DISK_CACHE_SIZE);
+        mBitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / POOL_MEMORY_DIVIDER);
+        mDefaultSize = context.getResources().getDimensionPixelSize(R.dimen.dim_image_news);
+    }
+
+    /**
+     * Returns the single instance of the {@link ImageLoader}.
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Display the image of the given URL in the {@link ImageView}.
+     * The placeholder is shown until the image is ready.
+     */
+    public void load(String url, ImageView imageView, int placeholderResId) {
+        Request current = mTargets.get(imageView);
+        if (current != null && current.mUrl.equals(url)) {
+            // The view is already waiting for this image.
+            return;
+        }
+        cancel(imageView);
+
+        Bitmap bitmap = mMemoryCache.get(url);
+        if (bitmap != null) {
+            sMemoryHits.increment();
+            display(imageView, bitmap);
+            return;
+        }
+
+        imageView.setImageResource(placeholderResId);
+
+        Request request = mRequests.get(url);
+        if (request == null) {
+            // The image is decoded at the size of the first view, the thumbnails have all the same size
+            ViewGroup.LayoutParams params = imageView.getLayoutParams();
+            request = new Request(url, targetSize(params == null ? 0 : params.width),
+                    targetSize(params == null ? 0 : params.height));
+            mRequests.put(url, request);
+            request.mFuture = mExecutor.submit(new FetchTask(request));
+        }
+        request.mTargets.add(imageView);
+        mTargets.put(imageView, request);
+    }
+
+    /**
+     * Stop waiting an image for the {@link ImageView}, i.e. when a view is rebound or recycled.
+     * The fetch is cancelled if no other view needs the same image. The bitmap displayed by the view
+     * can go to the pool, so the view must display something else.
+     */
+    public void cancel(ImageView imageView) {
+        release(imageView);
+        Request request = mTargets.remove(imageView);
+        if (request == null) {
+            return;
+        }
+        request.mTargets.remove(imageView);
+        if (request.mTargets.isEmpty()) {
+            mRequests.remove(request.mUrl);
+            if (request.mFuture != null) {
+                request.mFuture.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Called on the main thread when the fetch of a request is done.
+     */
+    private void deliver(Request request, Bitmap bitmap) {
+        if (mRequests.get(request.mUrl) == request) {
+            mRequests.remove(request.mUrl);
+        }
+        if (bitmap == null) {
+            return;
+        }
+        // The views count as users before the bitmap is cached, so if the cache evicts it at once
+        // (i.e. it's larger than the cache) it doesn't go to the pool while it's displayed
+        for (ImageView imageView : request.mTargets) {
+            if (mTargets.get(imageView) == request) {
+                mTargets.remove(imageView);
+                display(imageView, bitmap);
+            }
+        }
+        request.mTargets.clear();
+        // A bitmap evicted at once and without views goes to the pool in entryRemoved
+        mCached.add(bitmap);
+        mMemoryCache.put(request.mUrl, bitmap);
+    }
+
+    /**
+     * Returns the size in pixels of a side of the view, the default size if it isn't fixed
+     * (i.e. match_parent or wrap_content).
+     */
+    private int targetSize(int layoutSize) {
+        return layoutSize > 0 ? layoutSize : mDefaultSize;
+    }
+
+    /**
+     * Display the bitmap in the view and count the view as a user of the bitmap.
+     */
+    private void display(ImageView imageView, Bitmap bitmap) {
+        release(imageView);
+        imageView.setImageBitmap(bitmap);
+        mDisplayed.put(imageView, bitmap);
+        Integer count = mDisplayCounts.get(bitmap);
+        mDisplayCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Stop counting the view as a user of its bitmap, i.e. when it's rebound to another image.
+     */
+    private void release(ImageView imageView) {
+        Bitmap bitmap = mDisplayed.remove(imageView);
+        if (bitmap == null) {
+            return;
+        }
+        Integer count = mDisplayCounts.get(bitmap);
+        if (count == null || count <= 1) {
+            mDisplayCounts.remove(bitmap);
+            recycleIfUnused(bitmap);
+        } else {
+            mDisplayCounts.put(bitmap, count - 1);
+        }
+    }
+
+    /**
+     * Put the bitmap in the pool if no view displays it and it isn't in the memory cache anymore.
+     */
+    private void recycleIfUnused(Bitmap bitmap) {
+        if (!mCached.contains(bitmap) && !mDisplayCounts.containsKey(bitmap)) {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Returns the bitmap from the disk cache, otherwise download the image into the cache first.
+     */
+    private Bitmap fetch(Request request) throws IOException {
+        File file = mDiskCache.get(request.mUrl);
+        if (file == null) {
+            file = download(request.mUrl);
+        } else {
+            sDiskHits.increment();
+        }
+        long start = sDecodeTime.begin();
+        try {
+            return BitmapDecoder.decode(file.getPath(), request.mWidth, request.mHeight, mBitmapPool);
+        } finally {
+            sDecodeTime.end(start);
+        }
+    }
+
+    /**
+     * Download the image into the disk cache without decoding it, i.e. for the background sync,
+     * and return the number of bytes of the file, 0 if the image is already in the cache.
+     * It blocks, so it must be called off the main thread.
+     */
+    public long prefetch(String url) throws IOException {
+        if (mDiskCache.get(url) != null) {
+            return 0;
+        }
+        return download(url).length();
+    }
+
+    /**
+     * Download the image into the disk cache and return its file.
+     */
+    private File download(String url) throws IOException {
+        // The shared client reuses the connections to the image host, the HTTP cache isn't used
+        // because the files are already in the disk cache.
+        long start = sDownloadTime.begin();
+        try {
+            HttpClient.Response response = HttpClient.getDefault().get(new URL(url), false);
+            try {
+                if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Error response code: " + response.getCode());
+                }
+                return mDiskCache.put(url, response.getBody());
+            } finally {
+                response.close();
+            }
+        } finally {
+            sDownloadTime.end(start);
+        }
+    }
+
+    /**
+     * Fetch of one URL with the views that are waiting for it.
+     */
+    private static class Request {
+
+        private final String mUrl;
+
+        /**
+         * Size in pixels of the bitmap, the size of the first view
+         */
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final List<ImageView> mTargets = new ArrayList<>();
+
+        private Future<?> mFuture;
+
+        private Request(String url, int width, int height) {
+            mUrl = url;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    private class FetchTask implements Runnable {
+
+        private final Request mRequest;
+
+        private FetchTask(Request request) {
+            mRequest = request;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            try {
+                if (!Thread.currentThread().isInterrupted()) {
+                    bitmap = fetch(mRequest);
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem fetching the image " + mRequest.mUrl, e);
+            }
+
+            final Bitmap result = bitmap;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(mRequest, result);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.android.newsappstage2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time spent by a load in every stage of the pipeline:
+ * fetch (the request until the response code), parse (the body read and parsed while it's streamed)
+ * and map (the news saved in the store and formatted for the list).
+ * The queries of a load run at the same time, so their times are summed. All the methods are thread safe.
+ */
+public class LoadTimings {
+
+    private final AtomicLong mFetchNanos = new AtomicLong();
+
+    private final AtomicLong mParseNanos = new AtomicLong();
+
+    private final AtomicLong mMapNanos = new AtomicLong();
+
+    public void addFetch(long nanos) {
+        mFetchNanos.addAndGet(nanos);
+    }
+
+    public void addParse(long nanos) {
+        mParseNanos.addAndGet(nanos);
+    }
+
+    public void addMap(long nanos) {
+        mMapNanos.addAndGet(nanos);
+    }
+
+    public long getFetchNanos() {
+        return mFetchNanos.get();
+    }
+
+    public long getParseNanos() {
+        return mParseNanos.get();
+    }
+
+    public long getMapNanos() {
+        return mMapNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "fetch " + mFetchNanos.get() / 1000000L + " ms, parse " + mParseNanos.get() / 1000000L
+                + " ms, map " + mMapNanos.get() / 1000000L + " ms";
+    }
+}
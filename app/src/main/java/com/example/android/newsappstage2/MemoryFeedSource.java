@@ -0,0 +1,83 @@
+package com.example.android.newsappstage2;
+
+import java.io.ByteArrayInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Responses in memory by request URL, i.e. for the tests of the load pipeline without a network.
+ * A request without a response gets the default response, 404 Not Found until it's set.
+ * All the methods are thread safe.
+ */
+public class MemoryFeedSource implements FeedSource {
+
+    private final Map<String, Entry> mResponses = new HashMap<>();
+
+    private Entry mDefault = new Entry(HttpURLConnection.HTTP_NOT_FOUND, null);
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    /**
+     * Set the 200 OK response of the request URL.
+     */
+    public void put(String url, byte[] body) {
+        put(url, HttpURLConnection.HTTP_OK, body);
+    }
+
+    /**
+     * Set the response of the request URL, the body of a response other than 200 OK is ignored.
+     */
+    public synchronized void put(String url, int code, byte[] body) {
+        mResponses.put(url, new Entry(code, body));
+    }
+
+    /**
+     * Set the response of the requests without their own response.
+     */
+    public synchronized void setDefault(int code, byte[] body) {
+        mDefault = new Entry(code, body);
+    }
+
+    /**
+     * Returns the number of the requests fetched.
+     */
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    @Override
+    public HttpClient.Response fetch(URL url, CancelSignal signal) {
+        mRequests.incrementAndGet();
+        Entry entry;
+        synchronized (this) {
+            entry = mResponses.get(url.toString());
+            if (entry == null) {
+                entry = mDefault;
+            }
+        }
+        return entry.toResponse();
+    }
+
+    private static class Entry {
+
+        private final int mCode;
+
+        private final byte[] mBody;
+
+        private Entry(int code, byte[] body) {
+            mCode = code;
+            mBody = body;
+        }
+
+        private HttpClient.Response toResponse() {
+            // Like the network responses, only a 200 OK response has a body
+            boolean ok = mCode == HttpURLConnection.HTTP_OK && mBody != null;
+            return new HttpClient.Response(mCode, ok ? new ByteArrayInputStream(mBody) : null,
+                    Collections.<String, String>emptyMap());
+        }
+    }
+}
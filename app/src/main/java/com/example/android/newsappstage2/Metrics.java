@@ -0,0 +1,329 @@
+package com.example.android.newsappstage2;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and timing histograms of the hot paths of the feed, i.e. the fetch, the parse, the images
+ * and the binds of the list. A timed section is also a section of {@link Trace}, so it's shown by systrace.
+ * The metrics are declared as constants where they are used and are disabled by default:
+ * then a section costs only the read of a volatile flag.
+ * <pre>
+ * private static final Metrics.Histogram sBindTime = Metrics.histogram("list.bind");
+ *
+ * long start = sBindTime.begin();
+ * try {
+ *     ...
+ * } finally {
+ *     sBindTime.end(start);
+ * }
+ * </pre>
+ * All the methods are thread safe.
+ */
+public final class Metrics {
+
+    private static final String LOG_TAG = Metrics.class.getSimpleName();
+
+    /**
+     * Start of a section when the metrics are disabled, System.nanoTime() can be any other value
+     */
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    private static volatile boolean sEnabled;
+
+    private static final List<Counter> sCounters = new ArrayList<>();
+
+    private static final List<Histogram> sHistograms = new ArrayList<>();
+
+    private static Handler sReportHandler;
+
+    private static Runnable sReport;
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns a new counter, it's reported with the name.
+     */
+    public static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        synchronized (sCounters) {
+            sCounters.add(counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns a new histogram of times, it's reported and traced with the name.
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        synchronized (sHistograms) {
+            sHistograms.add(histogram);
+        }
+        return histogram;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Enable or disable the metrics. The values already recorded are kept.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Enable the metrics and write their summary in the log every period, the values are reset
+     * after every summary. It must be called from the main thread.
+     */
+    public static void startReporting(final long periodMillis) {
+        setEnabled(true);
+        if (sReportHandler != null) {
+            return;
+        }
+        sReportHandler = new Handler(Looper.getMainLooper());
+        sReport = new Runnable() {
+            @Override
+            public void run() {
+                String summary = summary(true);
+                if (!summary.isEmpty()) {
+                    Log.i(LOG_TAG, summary);
+                }
+                sReportHandler.postDelayed(this, periodMillis);
+            }
+        };
+        sReportHandler.postDelayed(sReport, periodMillis);
+    }
+
+    /**
+     * Returns the values of the counters and of the histograms with at least one value,
+     * one line for each of them.
+     *
+     * @param reset is true to reset the values, so the next summary has only the values after it
+     */
+    public static String summary(boolean reset) {
+        StringBuilder summary = new StringBuilder();
+        synchronized (sCounters) {
+            for (Counter counter : sCounters) {
+                long value = reset ? counter.mValue.getAndSet(0) : counter.mValue.get();
+                if (value != 0) {
+                    summary.append(counter.mName).append(' ').append(value).append('\n');
+                }
+            }
+        }
+        synchronized (sHistograms) {
+            for (Histogram histogram : sHistograms) {
+                if (histogram.getCount() > 0) {
+                    summary.append(histogram).append('\n');
+                }
+                if (reset) {
+                    histogram.reset();
+                }
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * A number of events, i.e. the cache hits.
+     */
+    public static final class Counter {
+
+        private final String mName;
+
+        private final AtomicLong mValue = new AtomicLong();
+
+        private Counter(String name) {
+            mName = name;
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public void add(long delta) {
+            if (sEnabled) {
+                mValue.addAndGet(delta);
+            }
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * Distribution of the times of a section in nanoseconds. The values are counted in 4 buckets
+     * for every power of 2, so a percentile is within 25% of the real one with a fixed memory.
+     */
+    public static final class Histogram {
+
+        /**
+         * Buckets of every power of 2, the values below it have a bucket each
+         */
+        private static final int SUB_BUCKETS = 4;
+
+        private static final int BUCKET_COUNT = 62 * SUB_BUCKETS;
+
+        private final String mName;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+        private final AtomicLong mCount = new AtomicLong();
+
+        private final AtomicLong mSum = new AtomicLong();
+
+        private final AtomicLong mMax = new AtomicLong();
+
+        private Histogram(String name) {
+            mName = name;
+        }
+
+        /**
+         * Begin a timed section on this thread, it must be ended with {@link #end(long)} on the same thread.
+         * Returns the start of the section.
+         */
+        public long begin() {
+            if (!sEnabled) {
+                return DISABLED;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                beginTrace(mName);
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * End the section begun at the start and record its time.
+         */
+        public void end(long start) {
+            if (start == DISABLED) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                endTrace();
+            }
+            record(nanos);
+        }
+
+        /**
+         * Record a time measured elsewhere, i.e. across more threads.
+         */
+        public void record(long nanos) {
+            if (!sEnabled) {
+                return;
+            }
+            nanos = Math.max(0, nanos);
+            mBuckets.incrementAndGet(bucketIndex(nanos));
+            mCount.incrementAndGet();
+            mSum.addAndGet(nanos);
+            long max = mMax.get();
+            while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+                max = mMax.get();
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMaxNanos() {
+            return mMax.get();
+        }
+
+        public long getMeanNanos() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mSum.get() / count;
+        }
+
+        /**
+         * Returns the upper bound of the bucket of the percentile, i.e. 0.99 for the 99th percentile,
+         * 0 if there isn't any value.
+         */
+        public long getPercentileNanos(double percentile) {
+            long count = 0;
+            long[] buckets = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+
+        /**
+         * Returns the bucket of the value: the values below {@link #SUB_BUCKETS} have their own bucket,
+         * the others the bucket of their power of 2 and of the 2 bits after the highest one.
+         */
+        static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return (exponent - 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * Returns the highest value of the bucket.
+         */
+        static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + 1;
+            int subBucket = index % SUB_BUCKETS;
+            return ((SUB_BUCKETS + subBucket + 1L) << (exponent - 2)) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    mName, getCount(), getMeanNanos() / 1e6, getPercentileNanos(0.5) / 1e6,
+                    getPercentileNanos(0.9) / 1e6, getPercentileNanos(0.99) / 1e6, getMaxNanos() / 1e6);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTrace(String name) {
+        Trace.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTrace() {
+        Trace.endSection();
+    }
+}
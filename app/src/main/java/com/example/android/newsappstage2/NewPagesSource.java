@@ -0,0 +1,84 @@
+package com.example.android.newsappstage2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches a query of the sync page after page, until a page reaches the newest stored news or the
+ * results run out, so the news published since the last sync are all saved even if they are more than
+ * one page. Without a page the store would keep a gap that no later sync fills, because the next
+ * "from-date" is after it. The queries must be ordered by "newest".
+ */
+public class NewPagesSource implements NewsFanOut.Source {
+
+    /**
+     * The API answers 400 Bad Request to a page after the last one
+     */
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    private final NewsFanOut.Source mPageSource;
+
+    private final long mNewestStoredTime;
+
+    private final int mMaxNews;
+
+    /**
+     * Constructs a new {@link NewPagesSource}.
+     *
+     * @param pageSource       fetches every page
+     * @param newestStoredTime is the publication time of the newest stored news, or
+     *                         {@link TimestampCodec#INVALID} to fetch only the first page
+     * @param maxNews          is the max number of news of a query, i.e. the news kept by the store
+     */
+    public NewPagesSource(NewsFanOut.Source pageSource, long newestStoredTime, int maxNews) {
+        mPageSource = pageSource;
+        mNewestStoredTime = newestStoredTime;
+        mMaxNews = maxNews;
+    }
+
+    @Override
+    public NewsResult fetch(String requestUrl, RequestScheduler.Priority priority, CancelSignal signal,
+                            LoadTimings timings) {
+        NewsResult result = mPageSource.fetch(requestUrl, priority, signal, timings);
+        if (!result.isSuccess() || mNewestStoredTime == TimestampCodec.INVALID) {
+            return result;
+        }
+
+        // The first page has the page size, a shorter page is the last one
+        int pageSize = result.getNews().size();
+        List<News> page = result.getNews();
+        List<News> news = new ArrayList<>(page);
+        for (int pageNumber = 2; pageSize > 0 && page.size() == pageSize && !reachesStored(page)
+                && news.size() < mMaxNews; pageNumber++) {
+            NewsResult pageResult = mPageSource.fetch(pageUrl(requestUrl, pageNumber), priority, signal, timings);
+            if (pageResult.getHttpCode() == HTTP_BAD_REQUEST) {
+                // The previous page was the last one
+                break;
+            }
+            if (!pageResult.isSuccess()) {
+                // The news without the missing page would leave a gap, the next sync fetches them again
+                return pageResult;
+            }
+            result = pageResult;
+            page = pageResult.getNews();
+            news.addAll(page);
+        }
+        return result.withNews(news);
+    }
+
+    /**
+     * Returns true if the page has a news published before or at the time of the newest stored news.
+     */
+    private boolean reachesStored(List<News> page) {
+        for (News news : page) {
+            if (news.hasPublicationTime() && news.getPublicationTime() <= mNewestStoredTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String pageUrl(String requestUrl, int page) {
+        return requestUrl + (requestUrl.indexOf('?') < 0 ? '?' : '&') + "page=" + page;
+    }
+}
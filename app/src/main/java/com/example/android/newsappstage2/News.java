@@ -1,8 +1,18 @@
 package com.example.android.newsappstage2;
 
-import java.util.Date;
-
+/**
+ * A news of the Guardian API. The values repeated by many news are shared: the section names and the bylines
+ * come from a {@link StringPool}, and the image URL is kept as the pooled prefix of its host and its path,
+ * so a large feed retains mostly the headlines, the trail texts and the page URLs.
+ */
 public class News {
+
+    private static final StringPool sSectionNames = new StringPool(1024);
+
+    private static final StringPool sBylines = new StringPool(8192);
+
+    private static final StringPool sImageHosts = new StringPool(64);
+
     /**
      * Headline of the news
      */
@@ -24,9 +34,9 @@ public class News {
     private final String mNewsSectionName;
 
     /**
-     * Publication date of the news
+     * Publication date of the news in epoch milliseconds, {@link TimestampCodec#INVALID} if it's missing
      */
-    private final Date mNewsPublicationDate;
+    private final long mNewsPublicationTime;
 
     /**
      * Page URL of the news
@@ -34,9 +44,15 @@ public class News {
     private final String mNewsUrl;
 
     /**
-     * Image for the news
+     * Scheme and host of the image for the news with the "/" after them (i.e. "https://media.guim.co.uk/"),
+     * null if the image URL hasn't a host
+     */
+    private final String mNewsImageHost;
+
+    /**
+     * Rest of the image URL after the host, or all the image URL without a host
      */
-    private final String mNewsImage;
+    private final String mNewsImagePath;
 
 
     /**
@@ -46,18 +62,41 @@ public class News {
      * @param newsTrailText         is the lead of the news
      * @param newsByline            is the name of news author
      * @param newsSectionName       is the section of news
-     * @param newsPublicationDate   is the date with hour publiction of news
+     * @param newsPublicationTime   is the date with hour publiction of news in epoch milliseconds
      * @param newsUrl               is the page URL to find the artcle of news
      * @param newsImage             is the image of news
      */
-    public News(String newsHeadline, String newsTrailText, String newsByline, String newsSectionName, Date newsPublicationDate, String newsUrl, String newsImage) {
+    public News(String newsHeadline, String newsTrailText, String newsByline, String newsSectionName, long newsPublicationTime, String newsUrl, String newsImage) {
         mNewsHeadline = newsHeadline;
         mNewsTrailText = newsTrailText;
-        mNewsByline = newsByline;
-        mNewsSectionName = newsSectionName;
-        mNewsPublicationDate = newsPublicationDate;
+        mNewsByline = sBylines.intern(newsByline);
+        mNewsSectionName = sSectionNames.intern(newsSectionName);
+        mNewsPublicationTime = newsPublicationTime;
         mNewsUrl = newsUrl;
-        mNewsImage= newsImage;
+
+        int hostEnd = hostEnd(newsImage);
+        if (hostEnd < 0) {
+            mNewsImageHost = null;
+            mNewsImagePath = newsImage;
+        } else {
+            mNewsImageHost = sImageHosts.intern(newsImage.substring(0, hostEnd));
+            mNewsImagePath = newsImage.substring(hostEnd);
+        }
+    }
+
+    /**
+     * Returns the index after the "/" that ends the host of the URL, or -1 if it hasn't a host.
+     */
+    private static int hostEnd(String url) {
+        if (url == null) {
+            return -1;
+        }
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return -1;
+        }
+        int slash = url.indexOf('/', schemeEnd + 3);
+        return slash < 0 ? -1 : slash + 1;
     }
 
     /**
@@ -91,10 +130,17 @@ public class News {
 
 
     /**
-     * Returns the publication date of the news.
+     * Returns the publication date of the news in epoch milliseconds.
+     */
+    public long getPublicationTime() {
+        return mNewsPublicationTime;
+    }
+
+    /**
+     * Returns true if the news has a publication date.
      */
-    public Date getPublicationDate() {
-        return mNewsPublicationDate;
+    public boolean hasPublicationTime() {
+        return mNewsPublicationTime != TimestampCodec.INVALID;
     }
 
     /**
@@ -105,10 +151,21 @@ public class News {
     }
 
     /**
-     * Returns the image for the news.
+     * Returns the image for the news. The URL is built on every call, so it's called once per bind.
      */
     public String getImage() {
-        return mNewsImage;
+        return mNewsImageHost == null ? mNewsImagePath : mNewsImageHost.concat(mNewsImagePath);
+    }
+
+    /**
+     * Returns true if the news has the same image of the other news, without building their URLs.
+     */
+    public boolean hasSameImage(News other) {
+        return equal(mNewsImageHost, other.mNewsImageHost) && equal(mNewsImagePath, other.mNewsImagePath);
+    }
+
+    private static boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
     }
 
 }
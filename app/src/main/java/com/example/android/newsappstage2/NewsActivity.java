@@ -1,40 +1,34 @@
 package com.example.android.newsappstage2;
 
-import android.app.LoaderManager;
-import android.content.AsyncTaskLoader;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
-import android.content.SharedPreferences;
+import android.graphics.Rect;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
 import android.widget.TextView;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class NewsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<News>> {
+public class NewsActivity extends AppCompatActivity implements NewsRepository.Listener {
 
-    /**
-     * Constant for id loader.
-     * It could come to play if there will going to use multiple loaders
-     */
-    private static final int NEWSAPI_LOADER_ID = 1;
-    /**
-     * URL of Guardian API
-     */
+    private static final String LOG_TAG = NewsActivity.class.getSimpleName();
 
-    private static final String USGS_REQUEST_URL =
-            "http://content.guardianapis.com/search";
     /**
      * Adapter for the list of news
      */
@@ -45,32 +39,88 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
      */
     private TextView mEmptyStateTextView;
 
+    /**
+     * True if the news are fetched from the API, false if only the stored news are displayed
+     */
+    private boolean mSyncing;
+
+    /**
+     * True when the news fetched from the API are displayed
+     */
+    private boolean mSynced;
+
+    /**
+     * Pager that appends the next pages of news to the adapter
+     */
+    private NewsPager mPager;
+
+    /**
+     * Reloads the news when the search term or the order change in the settings
+     */
+    private RefreshController mRefreshController;
+
+    /**
+     * Filters the news with the text of the search box
+     */
+    private NewsSearch mSearch;
+
+    /**
+     * Loads the stored and the synced news, it's kept across the configuration changes
+     */
+    private NewsRepository mRepository;
+
+    /**
+     * Builds the request URLs of the preferences
+     */
+    private NewsQuery mQuery;
+
+    /**
+     * Time of the creation of the activity, for the time to the first frame with news
+     */
+    private long mCreateTime;
+
+    private boolean mFirstFrameLogged;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreateTime = SystemClock.uptimeMillis();
+
+        // The times of the hot paths are traced and written in the log only in the debug builds
+        if (BuildConfig.DEBUG) {
+            Metrics.startReporting(getResources().getInteger(R.integer.metrics_report_period_ms));
+        }
         setContentView(R.layout.activity_news);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView newsListView = findViewById(R.id.list);
+        // The API responses are cached, so a new activity doesn't download again the same news
+        QueryUtils.init(this);
+        mQuery = new NewsQuery(this);
 
-        //find id of empty view
-        mEmptyStateTextView = findViewById(R.id.empty_view);
-        newsListView.setEmptyView(mEmptyStateTextView);
+        // The stored news are kept fresh in background, so the next launch displays them at once
+        NewsSync.schedule(this);
 
-        // This create a new adapter that takes an empty list of news as input
-        mAdapter = new NewsAdapter(this, new ArrayList<News>());
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView newsListView = findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        newsListView.setLayoutManager(layoutManager);
 
-        // Set the adapter on the {@link ListView}so the list can be populated in the UI
-        newsListView.setAdapter(mAdapter);
+        // Space the cards like the divider of the former ListView
+        final int cardSpacing = getResources().getDimensionPixelSize(R.dimen.default_distance);
+        newsListView.addItemDecoration(new RecyclerView.ItemDecoration() {
+            @Override
+            public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+                outRect.bottom = cardSpacing;
+            }
+        });
 
+        //find id of empty view
+        mEmptyStateTextView = findViewById(R.id.empty_view);
 
+        // This create a new adapter that takes an empty list of news as input.
         // Set the item click to open url web page of news
-        newsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mAdapter = new NewsAdapter(new NewsAdapter.OnNewsClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // Find the current news that was clicked on
-                News currentNews = (News) adapterView.getItemAtPosition(position);
-
+            public void onNewsClick(News currentNews) {
                 // Convert the String URL into a URI object (to pass into the Intent constructor)
                 Uri newsUri = Uri.parse(currentNews.getUrl());
 
@@ -82,6 +132,118 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
             }
         });
 
+        // The empty view is displayed only when the list is empty
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        // Set the adapter on the {@link RecyclerView}so the list can be populated in the UI
+        newsListView.setAdapter(mAdapter);
+
+        // The search displays in the adapter the loaded and the archived news that match the search box
+        mSearch = new NewsSearch(getResources().getInteger(R.integer.search_debounce_ms),
+                NewsArchive.getInstance(this),
+                new NewsFormatter(this),
+                new NewsSearch.Callback() {
+                    @Override
+                    public String buildSearchUrl(String query) {
+                        return mQuery.buildRequestUrl(query);
+                    }
+
+                    @Override
+                    public void onResults(List<NewsItem> items) {
+                        mAdapter.setNews(items);
+                    }
+                });
+
+        EditText searchBox = findViewById(R.id.search_box);
+        searchBox.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mSearch.setQuery(s.toString());
+            }
+        });
+
+        // Load the next pages while the list is scrolled, the news are added to the search
+        mPager = new NewsPager(mQuery.buildRequestUrl(),
+                getResources().getInteger(R.integer.page_size),
+                getResources().getInteger(R.integer.prefetch_distance),
+                new NewsFormatter(this),
+                new NewsPager.Callback() {
+                    @Override
+                    public void onPageLoaded(List<NewsItem> items) {
+                        mSearch.addNews(items);
+                    }
+                });
+
+        newsListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // The filtered list is short, it would request all the pages
+                if (mSearch.isFiltering()) {
+                    return;
+                }
+                mPager.onScroll(layoutManager.findLastVisibleItemPosition() + 1, layoutManager.getItemCount());
+            }
+        });
+
+        // The repository of the previous activity has already loaded the news, or it's loading them
+        mRepository = (NewsRepository) getLastCustomNonConfigurationInstance();
+        if (mRepository == null) {
+            mRepository = new NewsRepository(this);
+        }
+
+        // The stored news are displayed while the news are fetched, if there is a network connection.
+        mSyncing = isConnected();
+        mRepository.attach(this);
+        mRepository.load(mQuery.buildRequestUrl(), mQuery.buildQueryUrls(), mQuery.getOrderBy(), mSyncing);
+
+        // The activity stays alive while the settings are edited, so it reloads the news by itself
+        mRefreshController = new RefreshController(PreferenceManager.getDefaultSharedPreferences(this),
+                getResources().getInteger(R.integer.refresh_debounce_ms),
+                mQuery.buildRequestUrl(),
+                new RefreshController.Callback() {
+                    @Override
+                    public String buildRequestUrl() {
+                        return mQuery.buildRequestUrl();
+                    }
+
+                    @Override
+                    public void onRefresh(String requestUrl) {
+                        refresh(requestUrl);
+                    }
+                },
+                getString(R.string.settings_search_term_key),
+                getString(R.string.settings_order_by_key),
+                getString(R.string.settings_sections_key));
+        mRefreshController.start();
+    }
+
+    /**
+     * Returns true if there is a network connection.
+     */
+    private boolean isConnected() {
         // Get a reference to the ConnectivityManager to check state of network connectivity
         ConnectivityManager connMgr = (ConnectivityManager)
                 getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -92,120 +254,144 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
             // Get details on the currently active default data network
             networkInfo = connMgr.getActiveNetworkInfo();
         }
+        return networkInfo != null && networkInfo.isConnected();
+    }
 
-
-        // If there is a network connection, we can fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-
-            LoaderManager loaderManager = getLoaderManager();
-
-            // Initialize the loader. Pass in the int ID constant of istance.
-            loaderManager.initLoader(NEWSAPI_LOADER_ID, null, this);
-        } else {
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
-            // Set empty state text to display "Sorry! There isn\'t news ad the moment."
-            mEmptyStateTextView.setText(R.string.no_internet_connection);
+    /**
+     * Load the news of the new request URL. The fetch in flight of the previous URL is cancelled
+     * and its result is dropped.
+     */
+    private void refresh(String requestUrl) {
+        mSynced = false;
+        mPager.setRequestUrl(requestUrl);
+        mEmptyStateTextView.setText("");
+
+        mSyncing = isConnected();
+        mRepository.load(requestUrl, mQuery.buildQueryUrls(), mQuery.getOrderBy(), mSyncing);
+
+        // The cached news of the query have already replaced the list, only the rows that changed.
+        // Otherwise the list is cleared while the news are loaded.
+        if (!mRepository.hasNews()) {
+            mSearch.setNews(new ArrayList<NewsItem>(), mQuery.isOldestFirst());
+            findViewById(R.id.loading_indicator).setVisibility(View.VISIBLE);
         }
-
     }
 
     @Override
-    public Loader<List<News>> onCreateLoader(int i, Bundle bundle) {
-
-
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-
-        // getString retrieves a String value from the preferences.
-        String searchTerm = sharedPrefs.getString(getString(R.string.settings_search_term_key), "");
-
-        // getString retrieves a String value from de list preferences Orderby
-        String orderBy = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default)
-        );
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mRepository;
+    }
 
-        // parse breaks apart the URI string that's passed into its parameter
-        Uri baseUri = Uri.parse(USGS_REQUEST_URL);
+    @Override
+    public void onStoredNews(List<NewsItem> news) {
 
-        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+        View loadingIndicator = findViewById(R.id.loading_indicator);
 
-        // Append query parameter and its value. For example, the `format=geojson`
-        if(!searchTerm.equals("")) {
-            uriBuilder.appendQueryParameter("q", searchTerm);
+        // The synced news are newer than the stored ones
+        if (mSynced) {
+            return;
+        }
+        if (!news.isEmpty()) {
+            loadingIndicator.setVisibility(View.GONE);
+            mSearch.setNews(news, mQuery.isOldestFirst());
+            // The stored news aren't pages of the query, the pager starts from the first page
+            mPager.reset(news, 0);
+            logFirstFrame("stored");
+        } else if (!mSyncing) {
+            loadingIndicator.setVisibility(View.GONE);
+            // Set empty state text to display "Sorry! No internet connection."
+            mEmptyStateTextView.setText(R.string.no_internet_connection);
         }
-        uriBuilder.appendQueryParameter("page-size", "10");
-        uriBuilder.appendQueryParameter("show-fields", "trailText,byline,thumbnail");
-        uriBuilder.appendQueryParameter("order-by", orderBy);
-        // Used api-key "test" for only purpose this project
-        uriBuilder.appendQueryParameter("api-key", "test");
-
-
-        // Create a new loader for the given URL
-        return new NewsLoader(this, uriBuilder.toString());
     }
 
     @Override
-    public void onLoadFinished(Loader<List<News>> loader, List<News> news) {
+    public void onSyncedNews(List<NewsItem> news) {
+        mSynced = true;
 
         // Hide loading indicator when the data has been loaded
-        View loadingIndicator = findViewById(R.id.loading_indicator);
-        loadingIndicator.setVisibility(View.GONE);
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
 
         // Set empty state text to display message when there isn't news
         mEmptyStateTextView.setText(R.string.no_news);
-        // Clear the adapter of previous news data
-        mAdapter.clear();
 
-        //Check if an error occurs in the API. Example for 429 "Too many request".
-        //The request has api-key test that's why it happens often.
-        String checkError = news.get(0).getHeadline();
-        if (checkError.equals("429")){
-            mEmptyStateTextView.setText(R.string.no_request);
-
-            return;
-        }
-
-
-        // This will trigger the ListView to update.
-        if (news != null && !news.isEmpty()) {
-            mAdapter.addAll(news);
+        // This will trigger the RecyclerView to update only the rows of the news that changed,
+        // the news are filtered first if there is a search.
+        mSearch.setNews(news, mQuery.isOldestFirst());
 
+        // The next pages follow the pages fetched by the sync
+        mPager.reset(news, mRepository.getSyncedPage());
+        if (!news.isEmpty()) {
+            logFirstFrame("synced");
         }
 
     }
 
     @Override
-    public void onLoaderReset(Loader<List<News>> loader) {
-
-        // Clear out our existing data.
-        mAdapter.clear();
-
-    }
-
-    //Inner static AsyncTaskLoader Class. Useful in handling configuration changes (screen orientation)
-    public static class NewsLoader extends AsyncTaskLoader<List<News>> {
-
-        private String mUrl;
+    public void onSyncFailed(NewsResult result) {
+        mSynced = true;
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
 
-        private NewsLoader(Context context, String url) {
-            super(context);
-            mUrl = url;
+        // The stored news, if any, are still displayed.
+        if (!mAdapter.isEmpty()) {
+            return;
         }
+        switch (result.getStatus()) {
+            case RATE_LIMITED:
+                // The request has api-key test that's why it happens often.
+                mEmptyStateTextView.setText(R.string.no_request);
+                break;
+            case NETWORK_ERROR:
+                mEmptyStateTextView.setText(R.string.no_internet_connection);
+                break;
+            default:
+                mEmptyStateTextView.setText(R.string.no_news_error);
+                break;
+        }
+    }
 
-        @Override
-        protected void onStartLoading() {
-
-            forceLoad();
+    /**
+     * Log the time from the creation of the activity to the first frame drawn with news.
+     *
+     * @param source is the source of the news, stored or synced
+     */
+    private void logFirstFrame(final String source) {
+        if (mFirstFrameLogged) {
+            return;
         }
+        mFirstFrameLogged = true;
+        final View listView = findViewById(R.id.list);
+        listView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                listView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(LOG_TAG, "First frame with the " + source + " news in "
+                        + (SystemClock.uptimeMillis() - mCreateTime) + " ms");
+                return true;
+            }
+        });
+    }
 
-        @Override
-        public List<News> loadInBackground() {
-            //return QueryUtils.extractFeatureFromJson(mUrl);
-            return QueryUtils.fetchNewsData(mUrl);
+    /**
+     * Display the empty view only if there isn't any news in the list.
+     */
+    private void updateEmptyView() {
+        mEmptyStateTextView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The repository goes on loading for the next activity only if this one is recreated
+        mRepository.detach();
+        if (!isChangingConfigurations()) {
+            mRepository.shutdown();
         }
+        mRefreshController.stop();
+        mSearch.shutdown();
+        mPager.shutdown();
+        // The views are recycled, so the image loader releases them and their bitmaps
+        RecyclerView newsListView = findViewById(R.id.list);
+        newsListView.setAdapter(null);
     }
 
     @Override
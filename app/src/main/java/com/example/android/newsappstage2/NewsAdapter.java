@@ -1,161 +1,179 @@
 package com.example.android.newsappstage2;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.os.StrictMode;
-import android.text.Html;
-import android.util.Log;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.io.IOException;
-import java.net.URL;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 
-public class NewsAdapter extends ArrayAdapter<News> {
+public class NewsAdapter extends ListAdapter<NewsItem, NewsAdapter.NewsViewHolder> {
 
     /**
-     * Constructs a new {@link NewsAdapter}.
-     *
-     * @param context of the app
-     * @param news    is the list of the news, which is the data source of the adapter
+     * Receives the news clicked in the list.
      */
-    public NewsAdapter(Context context, List<News> news) {
-        super(context, 0, news);
+    public interface OnNewsClickListener {
+        void onNewsClick(News news);
     }
 
-    /**
-     * Returns a list item view that displays the news at the given position
-     * in the list of news.
-     */
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
+    private static final Metrics.Histogram sCreateTime = Metrics.histogram("list.create_view");
 
-        // Check if there is an existing list item view (called convertView) that we can reuse,
-        // otherwise, if convertView is null, then inflate a new list item layout.
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.news_list_item, parent, false);
-        }
-
-        // Find the news at the given position in the list of news
-        News currentNews = getItem(position);
+    private static final Metrics.Histogram sBindTime = Metrics.histogram("list.bind");
 
-        // Find the TextView with view ID headline
-        TextView titleView = listItemView.findViewById(R.id.headline);
-        // Display the headline of the current news in that TextView
-
-           titleView.setText(currentNews.getHeadline());
+    private final OnNewsClickListener mClickListener;
 
-        // Find the TextView with view ID lead
-        TextView trailView = listItemView.findViewById(R.id.trailText);
-        // Display the healine of the current news in that TextView
-        // Note: some headline could have html text.
-        trailView.setText(Html.fromHtml(currentNews.getTrailText()));
+    /**
+     * Last list of news submitted to the adapter.
+     * The displayed list is updated when the diff computed in background is done.
+     */
+    private List<NewsItem> mItems = Collections.emptyList();
 
-        // Find the TextView with view ID section_name
-        TextView sectionNameView = listItemView.findViewById(R.id.section_name);
+    /**
+     * Constructs a new {@link NewsAdapter}.
+     *
+     * @param clickListener receives the news clicked in the list
+     */
+    public NewsAdapter(OnNewsClickListener clickListener) {
+        super(new NewsDiffCallback());
+        mClickListener = clickListener;
+    }
 
-        //It's better prevents layout problem when the string is too long.
-        String textSection;
-        if (currentNews.getSectionName().length() > 25) {
-            textSection = currentNews.getSectionName().substring(0, 25).concat(" ...");
-        } else {
-            textSection = currentNews.getSectionName();
-        }
-        // Display the section name of the current news in that TextView
-        sectionNameView.setText(textSection);
-
-        // Find the TextView with view ID byline (News Author)
-        TextView authorNameView = listItemView.findViewById(R.id.byline);
-        // If the field byline has content display else not display the author name of the current news in that TextView
-        if (!currentNews.getByline().equals("")) {
-            String byAuthor = "By ".concat(currentNews.getByline());
-            authorNameView.setText(byAuthor);
-        } else {
-            //Set byline with text "No author"
-            authorNameView.setText(R.string.no_author);
-        }
+    /**
+     * Replace the news of the list. Only the rows of the news added, removed or changed are updated.
+     */
+    public void setNews(List<NewsItem> items) {
+        mItems = new ArrayList<>(items);
+        submitList(mItems);
+    }
 
-        // Find the ImageView with view ID image
-        ImageView imageView = listItemView.findViewById(R.id.image);
+    /**
+     * Add the news at the end of the list.
+     */
+    public void addNews(List<NewsItem> items) {
+        List<NewsItem> newList = new ArrayList<>(mItems.size() + items.size());
+        newList.addAll(mItems);
+        newList.addAll(items);
+        mItems = newList;
+        submitList(mItems);
+    }
 
-        // Display the image for the current news in that ImageView
-        if (!currentNews.getImage().equals("")) {
+    /**
+     * Returns true if there isn't any news in the list.
+     */
+    public boolean isEmpty() {
+        return mItems.isEmpty();
+    }
 
-            //Avoids android.os.NetworkOnMainThreadException.
-            StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-            StrictMode.setThreadPolicy(policy);
+    @Override
+    public NewsViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        long start = sCreateTime.begin();
+        try {
+            View listItemView = LayoutInflater.from(parent.getContext()).inflate(
+                    R.layout.news_list_item, parent, false);
+            return new NewsViewHolder(listItemView);
+        } finally {
+            sCreateTime.end(start);
+        }
+    }
 
-            Bitmap image = null;
-            try {
-                URL url = new URL(currentNews.getImage());
-                image = BitmapFactory.decodeStream(url.openConnection().getInputStream());
-            } catch (IOException e) {
+    /**
+     * Display the news at the given position in the list of news.
+     * All the texts are already formatted by {@link NewsFormatter}.
+     */
+    @Override
+    public void onBindViewHolder(NewsViewHolder holder, int position) {
+        long start = sBindTime.begin();
+        try {
+            bind(holder, position);
+        } finally {
+            sBindTime.end(start);
+        }
+    }
 
-                Log.e(QueryUtils.class.getSimpleName(), "Problem decodeStream.", e);
-            }
+    private void bind(NewsViewHolder holder, int position) {
 
-            imageView.setImageBitmap(image);
+        // Find the news at the given position in the list of news
+        NewsItem currentItem = getItem(position);
+        News currentNews = currentItem.getNews();
+        holder.mNews = currentNews;
 
+        // Display the headline of the current news in that TextView
+        holder.mTitleView.setText(currentNews.getHeadline());
+
+        // Display the trail, the section name and the author of the current news
+        holder.mTrailView.setText(currentItem.getTrailText());
+        holder.mSectionNameView.setText(currentItem.getSectionLabel());
+        holder.mAuthorNameView.setText(currentItem.getBylineLabel());
+
+        // Display the image for the current news in that ImageView.
+        // The image is loaded off the main thread, a recycled view drops the image of its previous news.
+        ImageLoader imageLoader = ImageLoader.getInstance(holder.itemView.getContext());
+        String image = currentNews.getImage();
+        if (!image.equals("")) {
+            imageLoader.load(image, holder.mImageView, R.drawable.ic_no_image);
         } else {
             //Otherwise dysplay no image thumbnail
-            imageView.setImageResource(R.drawable.ic_no_image);
-        }
-
-
-        // Find the TextView with view ID date
-        TextView dateView = listItemView.findViewById(R.id.date);
-        // Find the TextView with view ID time
-        TextView timeView = listItemView.findViewById(R.id.time);
-
-        if (currentNews.getPublicationDate() != null) {
-            // Format the date string (i.e. "Mar 3, 1984")
-            String formattedDate = formatDate(currentNews.getPublicationDate());
-            // Display the date of the news in that TextView
-            dateView.setText(formattedDate);
-            // Format the time string (i.e. "4:30PM")
-            String formattedTime = formatTime(currentNews.getPublicationDate());
-            // Display the time of the news in that TextView
-            timeView.setText(formattedTime);
-        } else {
-            // Display symbol for no date and no time
-            dateView.setText(R.string.no_date);
-            timeView.setText(R.string.no_time);
+            imageLoader.cancel(holder.mImageView);
+            holder.mImageView.setImageResource(R.drawable.ic_no_image);
         }
 
-
-        // Return the list item view that is now showing the appropriate data
-        return listItemView;
+        // Display the date and the time of the news
+        holder.mDateView.setText(currentItem.getDate());
+        holder.mTimeView.setText(currentItem.getTime());
     }
 
     /**
-     * Return the formatted date string (i.e. "4:30 PM") from a Date object.
+     * Release the image of a recycled view, so its bitmap can be reused by the next decodes.
      */
-    private String formatTime(Date dateObject) {
-        SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a", Locale.getDefault());
-        return timeFormat.format(dateObject);
+    @Override
+    public void onViewRecycled(NewsViewHolder holder) {
+        ImageLoader.getInstance(holder.itemView.getContext()).cancel(holder.mImageView);
+        holder.mImageView.setImageDrawable(null);
     }
 
     /**
-     * Return the formatted date string from a Date object with the right local pattern (i.e. "jul 3, 2018" or  for italian setting "3 giu 2018").
+     * Keeps the views of a list item, so they are found only when the item is created.
      */
-    private String formatDate(Date dateObject) {
-
-        final String pattern = ((SimpleDateFormat) DateFormat.getDateInstance(DateFormat.DEFAULT, Locale.getDefault())).toPattern();
-        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern, Locale.getDefault());
-        return dateFormat.format(dateObject);
+    class NewsViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView mTitleView;
+        private final TextView mTrailView;
+        private final TextView mSectionNameView;
+        private final TextView mAuthorNameView;
+        private final ImageView mImageView;
+        private final TextView mDateView;
+        private final TextView mTimeView;
+
+        /**
+         * News displayed by the item
+         */
+        private News mNews;
+
+        NewsViewHolder(View itemView) {
+            super(itemView);
+            mTitleView = itemView.findViewById(R.id.headline);
+            mTrailView = itemView.findViewById(R.id.trailText);
+            mSectionNameView = itemView.findViewById(R.id.section_name);
+            mAuthorNameView = itemView.findViewById(R.id.byline);
+            mImageView = itemView.findViewById(R.id.image);
+            mDateView = itemView.findViewById(R.id.date);
+            mTimeView = itemView.findViewById(R.id.time);
+
+            // Set the item click to open url web page of news
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    if (mNews != null) {
+                        mClickListener.onNewsClick(mNews);
+                    }
+                }
+            });
+        }
     }
 
 }
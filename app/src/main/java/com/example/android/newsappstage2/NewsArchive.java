@@ -0,0 +1,138 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Archive of all the news fetched from the API, with a {@link NewsTextIndex} of their texts,
+ * so a search finds also the news of other queries and works offline.
+ * The archived news are kept in the {@link NewsStore}; the index is built from them in background
+ * at the first search, then every news fetched is added to both. The index keeps only
+ * the URLs of the news, the news of a search are read from the store.
+ */
+public class NewsArchive {
+
+    private static final String LOG_TAG = NewsArchive.class.getSimpleName();
+
+    /**
+     * Max number of news kept in the archive, the news archived first are removed first
+     */
+    static final int MAX_ARCHIVED_NEWS = 50000;
+
+    /**
+     * Number of archived news read at a time to build the index
+     */
+    private static final int INDEX_BATCH_SIZE = 500;
+
+    private static NewsArchive sInstance;
+
+    private final NewsStore mStore;
+
+    private final NewsTextIndex mIndex = new NewsTextIndex();
+
+    /**
+     * Builds the index and then adds the news in the order they are fetched
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+
+    /**
+     * True once the build of the index is requested, it's guarded by the lock of the archive
+     */
+    private boolean mIndexRequested;
+
+    /**
+     * True once the index is built, it's read and written only on the thread of the executor
+     */
+    private boolean mIndexBuilt;
+
+    private NewsArchive(Context context) {
+        mStore = NewsStore.getInstance(context);
+    }
+
+    /**
+     * Returns the single instance of the {@link NewsArchive}.
+     */
+    public static synchronized NewsArchive getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NewsArchive(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Add the news in background to the archive, and to its index if it's built.
+     * Before the index is built they are only stored, the build reads them from the store.
+     */
+    public void add(List<News> news) {
+        final List<News> added = new ArrayList<>(news);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mStore.archive(added, MAX_ARCHIVED_NEWS);
+                if (mIndexBuilt) {
+                    // The index evicts the news archived first, like the store
+                    mIndex.add(added);
+                    while (mIndex.size() > MAX_ARCHIVED_NEWS) {
+                        mIndex.removeOldest();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the archived news that match the query, from the highest rank. The syntax of the query
+     * is the one of {@link NewsTextIndex}. The first search builds the index and waits for it,
+     * so it must be called off the main thread.
+     *
+     * @param limit is the max number of news returned
+     */
+    public List<News> search(String query, int limit) {
+        requestIndex();
+        try {
+            mLoaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+        return mStore.getArchivedNews(mIndex.search(query, limit));
+    }
+
+    /**
+     * Build the index in background from the stored news, only the first time.
+     */
+    private synchronized void requestIndex() {
+        if (mIndexRequested) {
+            return;
+        }
+        mIndexRequested = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    mStore.readArchivedTexts(INDEX_BATCH_SIZE, new NewsStore.ArchiveReader() {
+                        @Override
+                        public void onBatch(List<News> batch) {
+                            mIndex.add(batch);
+                        }
+                    });
+                    Log.v(LOG_TAG, "Indexed " + mIndex.size() + " archived news in "
+                            + (System.nanoTime() - start) / 1000000L + " ms, " + mIndex.getWordCount()
+                            + " words, " + mIndex.getSizeBytes() / 1024 + " KB");
+                } finally {
+                    mIndexBuilt = true;
+                    mLoaded.countDown();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.newsappstage2;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cache in memory of the news displayed for a query, shared by all the activities of the process,
+ * so a query loaded again (i.e. after a configuration change or back from the settings) is displayed
+ * at once, while a fresh copy is fetched if the cached one is older than the time to live.
+ * The entries are keyed by the normalized query: the search term, the order, the sections, the page size
+ * and the page, so the same query built in another way, i.e. with another API key, has the same entry.
+ * A page of a query and the feed of a query, all the news displayed for it, have separate keys.
+ * The least recently used entries are removed first. All the methods are thread safe.
+ */
+public class NewsCache {
+
+    /**
+     * Max number of queries in the default cache
+     */
+    private static final int MAX_ENTRIES = 20;
+
+    /**
+     * Time of the default cache before an entry must be fetched again, 5 minutes
+     */
+    private static final long TTL_MILLIS = 5 * 60 * 1000L;
+
+    /**
+     * Parameters of the request URL that identify the news of the query, with their default value
+     */
+    private static final String[][] KEY_PARAMETERS = {
+            {"q", ""}, {"section", ""}, {"order-by", ""}, {"page-size", ""}, {"page", "1"}};
+
+    /**
+     * Prefix of the keys of the feeds, the keys of the pages start with the first parameter
+     */
+    private static final String FEED_KEY_PREFIX = "feed|";
+
+    private static final Metrics.Counter sHits = Metrics.counter("news_cache.hits");
+
+    private static final Metrics.Counter sStaleHits = Metrics.counter("news_cache.stale_hits");
+
+    private static final Metrics.Counter sMisses = Metrics.counter("news_cache.misses");
+
+    private static NewsCache sDefault;
+
+    private final long mTtlMillis;
+
+    /**
+     * Entries by key, from the least recently used
+     */
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    /**
+     * Constructs a new {@link NewsCache}.
+     *
+     * @param maxEntries is the max number of queries cached
+     * @param ttlMillis  is the time an entry is fresh after it's put
+     */
+    public NewsCache(final int maxEntries, long ttlMillis) {
+        mTtlMillis = ttlMillis;
+        mEntries = new LinkedHashMap<String, Entry>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by the process.
+     */
+    public static synchronized NewsCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new NewsCache(MAX_ENTRIES, TTL_MILLIS);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the cached news of the page of the request URL, fresh or stale, or null if they aren't
+     * in the cache.
+     */
+    public Entry get(String requestUrl) {
+        return getEntry(key(requestUrl));
+    }
+
+    /**
+     * Cache the news of the page of the request URL, they are fresh for the time to live.
+     */
+    public void put(String requestUrl, List<NewsItem> items) {
+        putEntry(key(requestUrl), items);
+    }
+
+    /**
+     * Returns the cached feed of the query of the request URL, fresh or stale, or null if it isn't
+     * in the cache. The feed isn't the first page of the query, it can have the news of more pages
+     * and of more queries.
+     */
+    public Entry getFeed(String requestUrl) {
+        return getEntry(FEED_KEY_PREFIX + key(requestUrl));
+    }
+
+    /**
+     * Cache all the news displayed for the query of the request URL, they are fresh for the time to live.
+     */
+    public void putFeed(String requestUrl, List<NewsItem> items) {
+        putEntry(FEED_KEY_PREFIX + key(requestUrl), items);
+    }
+
+    private synchronized Entry getEntry(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            sMisses.increment();
+        } else if (entry.isFresh(System.currentTimeMillis())) {
+            sHits.increment();
+        } else {
+            sStaleHits.increment();
+        }
+        return entry;
+    }
+
+    private synchronized void putEntry(String key, List<NewsItem> items) {
+        mEntries.put(key, new Entry(items, System.currentTimeMillis() + mTtlMillis));
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the normalized query of the request URL: the parameters that identify its news,
+     * decoded, in a fixed order and with the search term trimmed and in lower case. The first page
+     * is the page 1, i.e. "q=brexit|section=|order-by=newest|page-size=10|page=1".
+     */
+    static String key(String requestUrl) {
+        Map<String, String> parameters = new TreeMap<>();
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart >= 0) {
+            for (String parameter : requestUrl.substring(queryStart + 1).split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(decode(parameter.substring(0, separator)),
+                            decode(parameter.substring(separator + 1)));
+                }
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (String[] keyParameter : KEY_PARAMETERS) {
+            String value = parameters.get(keyParameter[0]);
+            if (value == null || value.isEmpty()) {
+                value = keyParameter[1];
+            }
+            if (keyParameter[0].equals("q")) {
+                value = value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            }
+            if (key.length() > 0) {
+                key.append('|');
+            }
+            key.append(keyParameter[0]).append('=').append(value);
+        }
+        return key.toString();
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            // A malformed value is kept as it is
+            return value;
+        }
+    }
+
+    /**
+     * News of a query in the cache, with the time until they can be displayed without fetching them again.
+     */
+    public static class Entry {
+
+        private final List<NewsItem> mItems;
+
+        private final long mExpires;
+
+        private Entry(List<NewsItem> items, long expires) {
+            mItems = Collections.unmodifiableList(new ArrayList<>(items));
+            mExpires = expires;
+        }
+
+        public List<NewsItem> getItems() {
+            return mItems;
+        }
+
+        /**
+         * Returns true if the news don't need to be fetched again.
+         */
+        public boolean isFresh(long now) {
+            return now < mExpires;
+        }
+    }
+}
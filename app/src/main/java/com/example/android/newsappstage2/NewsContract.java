@@ -0,0 +1,85 @@
+package com.example.android.newsappstage2;
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the local store of the news.
+ */
+public final class NewsContract {
+
+    private NewsContract() {
+    }
+
+    /**
+     * Inner class that defines constant values for the news database table.
+     * Each entry in the table represents a single {@link News}.
+     */
+    public static final class NewsEntry implements BaseColumns {
+
+        /**
+         * Name of database table for news
+         */
+        public static final String TABLE_NAME = "news";
+
+        /**
+         * Unique ID number for the news (only for use in the database table).
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * Headline of the news.
+         * Type: TEXT
+         */
+        public static final String COLUMN_HEADLINE = "headline";
+
+        /**
+         * Trail text of the news.
+         * Type: TEXT
+         */
+        public static final String COLUMN_TRAIL_TEXT = "trail_text";
+
+        /**
+         * Author of the news.
+         * Type: TEXT
+         */
+        public static final String COLUMN_BYLINE = "byline";
+
+        /**
+         * Section name of the news.
+         * Type: TEXT
+         */
+        public static final String COLUMN_SECTION_NAME = "section_name";
+
+        /**
+         * Publication date of the news in milliseconds, null if the news hasn't a date.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PUBLICATION_DATE = "publication_date";
+
+        /**
+         * Page URL of the news. It's unique, a news fetched again replaces the stored one.
+         * Type: TEXT
+         */
+        public static final String COLUMN_URL = "url";
+
+        /**
+         * Image URL of the news.
+         * Type: TEXT
+         */
+        public static final String COLUMN_IMAGE = "image";
+    }
+
+    /**
+     * Inner class that defines constant values for the archive table.
+     * Each entry in the table represents a single {@link News} fetched for any query, it has the columns
+     * of {@link NewsEntry}. The ids grow in the order the news are archived.
+     */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        /**
+         * Name of database table for the archived news
+         */
+        public static final String TABLE_NAME = "archive";
+    }
+}
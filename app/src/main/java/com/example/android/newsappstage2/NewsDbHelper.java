@@ -0,0 +1,78 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.newsappstage2.NewsContract.ArchiveEntry;
+import com.example.android.newsappstage2.NewsContract.NewsEntry;
+
+/**
+ * Database helper for the local store of the news. Manages database creation and version management.
+ */
+public class NewsDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * Name of the database file
+     */
+    private static final String DATABASE_NAME = "news.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version.
+     */
+    private static final int DATABASE_VERSION = 2;
+
+    /**
+     * Constructs a new instance of {@link NewsDbHelper}.
+     *
+     * @param context of the app
+     */
+    public NewsDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createNewsTable(db, NewsEntry.TABLE_NAME);
+        // The archive has the same columns, it's read in the order of the ids
+        createNewsTable(db, ArchiveEntry.TABLE_NAME);
+    }
+
+    /**
+     * Create a table with the columns of {@link NewsEntry} and its index of the dates.
+     */
+    private static void createNewsTable(SQLiteDatabase db, String tableName) {
+        // Create a String that contains the SQL statement to create the news table
+        String SQL_CREATE_NEWS_TABLE = "CREATE TABLE " + tableName + " ("
+                + NewsEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + NewsEntry.COLUMN_HEADLINE + " TEXT NOT NULL, "
+                + NewsEntry.COLUMN_TRAIL_TEXT + " TEXT, "
+                + NewsEntry.COLUMN_BYLINE + " TEXT, "
+                + NewsEntry.COLUMN_SECTION_NAME + " TEXT, "
+                + NewsEntry.COLUMN_PUBLICATION_DATE + " INTEGER, "
+                + NewsEntry.COLUMN_URL + " TEXT NOT NULL UNIQUE, "
+                + NewsEntry.COLUMN_IMAGE + " TEXT);";
+
+        // The unique constraint already indexes the URL, the news are also read ordered by date.
+        String SQL_CREATE_DATE_INDEX = "CREATE INDEX " + tableName + "_date_index ON "
+                + tableName + " (" + NewsEntry.COLUMN_PUBLICATION_DATE + ");";
+
+        // Execute the SQL statements
+        db.execSQL(SQL_CREATE_NEWS_TABLE);
+        db.execSQL(SQL_CREATE_DATE_INDEX);
+    }
+
+    /**
+     * This is called when the database needs to be upgraded.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The database is only a cache of the API, so it's rebuilt.
+        db.execSQL("DROP TABLE IF EXISTS " + NewsEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ArchiveEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
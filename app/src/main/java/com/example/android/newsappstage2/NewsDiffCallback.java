@@ -0,0 +1,31 @@
+package com.example.android.newsappstage2;
+
+import android.support.v7.util.DiffUtil;
+
+/**
+ * Compare the news of two lists for {@link NewsAdapter}.
+ * A news is identified by its URL, it has changed if any other field is different.
+ */
+public class NewsDiffCallback extends DiffUtil.ItemCallback<NewsItem> {
+
+    @Override
+    public boolean areItemsTheSame(NewsItem oldItem, NewsItem newItem) {
+        return equal(oldItem.getNews().getUrl(), newItem.getNews().getUrl());
+    }
+
+    @Override
+    public boolean areContentsTheSame(NewsItem oldItem, NewsItem newItem) {
+        News oldNews = oldItem.getNews();
+        News newNews = newItem.getNews();
+        return equal(oldNews.getHeadline(), newNews.getHeadline())
+                && equal(oldNews.getTrailText(), newNews.getTrailText())
+                && equal(oldNews.getByline(), newNews.getByline())
+                && equal(oldNews.getSectionName(), newNews.getSectionName())
+                && oldNews.getPublicationTime() == newNews.getPublicationTime()
+                && oldNews.hasSameImage(newNews);
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.android.newsappstage2;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetch several queries of the API at the same time, i.e. one for every followed section,
+ * and merge their news in one list in the order of the "order-by" parameter without duplicates.
+ * The queries run on a bounded executor, and a query that doesn't complete within the timeout
+ * from its start is dropped, while the other queries keep running.
+ */
+public class NewsFanOut {
+
+    private static final String LOG_TAG = NewsFanOut.class.getSimpleName();
+
+    /**
+     * Max number of queries fetched at the same time, the same of the requests per host of {@link HttpClient}
+     */
+    private static final int MAX_CONCURRENT_QUERIES = HttpClient.MAX_REQUESTS_PER_HOST;
+
+    /**
+     * Max time of a query from its start
+     */
+    private static final long QUERY_TIMEOUT_MILLIS = 20000;
+
+    /**
+     * Fetches the news of a request URL.
+     */
+    public interface Source {
+        NewsResult fetch(String requestUrl, RequestScheduler.Priority priority, CancelSignal signal,
+                         LoadTimings timings);
+    }
+
+    /**
+     * Receives the merged news every time a query completes, on the thread of {@link #fetch}.
+     */
+    public interface Listener {
+        void onQueryCompleted(List<News> merged, int completed, int total);
+    }
+
+    private static NewsFanOut sDefault;
+
+    private final ExecutorService mExecutor;
+
+    private final Source mSource;
+
+    private final long mTimeoutMillis;
+
+    /**
+     * Constructs a new {@link NewsFanOut}.
+     *
+     * @param executor      runs the queries
+     * @param source        fetches the news of every query
+     * @param timeoutMillis is the max time of a query from its start, a query waiting for a thread
+     *                      of the executor isn't started
+     */
+    public NewsFanOut(ExecutorService executor, Source source, long timeoutMillis) {
+        mExecutor = executor;
+        mSource = source;
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the fan-out of the app, the news are fetched with {@link QueryUtils#fetchNewsData}.
+     */
+    public static synchronized NewsFanOut getDefault() {
+        if (sDefault == null) {
+            // The idle threads are stopped, the queries run only when the news are synced
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_QUERIES, MAX_CONCURRENT_QUERIES,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+            executor.allowCoreThreadTimeOut(true);
+            sDefault = new NewsFanOut(executor, new Source() {
+                @Override
+                public NewsResult fetch(String requestUrl, RequestScheduler.Priority priority, CancelSignal signal,
+                                        LoadTimings timings) {
+                    return QueryUtils.fetchNewsData(requestUrl, priority, signal, timings);
+                }
+            }, QUERY_TIMEOUT_MILLIS);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the source of the news of every query.
+     */
+    public Source getSource() {
+        return mSource;
+    }
+
+    /**
+     * Returns a fan-out with the same executor and timeout that fetches the queries with the source,
+     * i.e. a source that fetches more pages of every query.
+     */
+    public NewsFanOut withSource(Source source) {
+        return new NewsFanOut(mExecutor, source, mTimeoutMillis);
+    }
+
+    /**
+     * Fetch the queries at the same time with the foreground priority and return their news merged.
+     *
+     * @see #fetch(List, String, RequestScheduler.Priority, CancelSignal, LoadTimings, Listener)
+     */
+    public NewsResult fetch(List<String> requestUrls, String orderBy, CancelSignal signal,
+                            LoadTimings timings, Listener listener) {
+        return fetch(requestUrls, orderBy, RequestScheduler.Priority.FOREGROUND, signal, timings, listener);
+    }
+
+    /**
+     * Fetch the queries at the same time and return their news merged.
+     * The result is successful if any query is successful, otherwise it's the failure of the first query
+     * completed. The rate limit of the result is the one of the last query completed.
+     *
+     * @param requestUrls are the URLs of the queries
+     * @param orderBy     is the "order-by" parameter of the queries
+     * @param priority    is the priority of the queries in the {@link RequestScheduler}
+     * @param signal      cancels all the queries, the news merged so far are returned
+     * @param timings     receives the time of the fetch and of the parse of the queries
+     * @param listener    receives the news merged so far when a query completes, it can be null
+     */
+    public NewsResult fetch(List<String> requestUrls, String orderBy, RequestScheduler.Priority priority,
+                            CancelSignal signal, LoadTimings timings, Listener listener) {
+        CompletionService<QueryResult> completionService = new ExecutorCompletionService<>(mExecutor);
+        final List<Query> queries = new ArrayList<>();
+        final List<Future<QueryResult>> futures = new ArrayList<>();
+        for (int i = 0; i < requestUrls.size(); i++) {
+            Query query = new Query(i, requestUrls.get(i), priority, timings);
+            queries.add(query);
+            futures.add(completionService.submit(query));
+        }
+
+        // Cancelling a query adds it to the completion service, so the wait below returns at once
+        Runnable cancelQueries = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < futures.size(); i++) {
+                    queries.get(i).mSignal.cancel();
+                    futures.get(i).cancel(true);
+                }
+            }
+        };
+        signal.addOnCancelListener(cancelQueries);
+
+        List<List<News>> results = new ArrayList<>();
+        for (int i = 0; i < requestUrls.size(); i++) {
+            results.add(null);
+        }
+        NewsResult failure = null;
+        NewsResult last = null;
+        List<News> merged = new ArrayList<>();
+        try {
+            int completed = 0;
+            while (completed < requestUrls.size()) {
+                Future<QueryResult> future = completionService.poll(cancelLateQueries(queries, futures),
+                        TimeUnit.NANOSECONDS);
+                if (signal.isCanceled()) {
+                    break;
+                }
+                if (future == null) {
+                    // A deadline is passed, the late queries are cancelled and added to the completion service
+                    continue;
+                }
+                completed++;
+                QueryResult result;
+                try {
+                    result = future.get();
+                } catch (CancellationException e) {
+                    continue;
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem fetching a query.", e.getCause());
+                    continue;
+                }
+
+                if (!result.mResult.isSuccess()) {
+                    if (failure == null) {
+                        failure = result.mResult;
+                    }
+                    continue;
+                }
+                results.set(result.mIndex, result.mResult.getNews());
+                last = result.mResult;
+                merged = merge(results, orderBy);
+                if (listener != null) {
+                    listener.onQueryCompleted(merged, completed, requestUrls.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            signal.removeOnCancelListener(cancelQueries);
+            // The queries still in flight are dropped
+            for (int i = 0; i < futures.size(); i++) {
+                if (!futures.get(i).isDone()) {
+                    queries.get(i).mSignal.cancel();
+                    futures.get(i).cancel(true);
+                }
+            }
+        }
+
+        if (last != null) {
+            return last.withNews(merged);
+        }
+        if (failure != null) {
+            return failure;
+        }
+        // Every query has been cancelled or it's late
+        return NewsResult.failure(signal.isCanceled() ? NewsResult.Status.CANCELLED : NewsResult.Status.NETWORK_ERROR);
+    }
+
+    /**
+     * Cancel the queries still running after their deadline and return the time until the next deadline,
+     * in nanoseconds. The time is the timeout if no query is running, i.e. they wait for a thread.
+     */
+    private long cancelLateQueries(List<Query> queries, List<Future<QueryResult>> futures) {
+        long now = System.nanoTime();
+        long wait = TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis);
+        for (int i = 0; i < queries.size(); i++) {
+            Query query = queries.get(i);
+            Future<QueryResult> future = futures.get(i);
+            if (!query.mStarted || future.isDone()) {
+                continue;
+            }
+            long left = query.mDeadline - now;
+            if (left <= 0) {
+                Log.e(LOG_TAG, "Timeout of the query " + query.mRequestUrl);
+                // The signal aborts a response whose body is read, the interrupt only a thread that waits
+                query.mSignal.cancel();
+                future.cancel(true);
+            } else {
+                wait = Math.min(wait, left);
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Returns the news of the queries in one list without duplicates (the same web URL).
+     * The news are ordered by publication time for "newest" and "oldest", otherwise the ranks
+     * of the queries are interleaved: the first news of every query, then the second ones, and so on.
+     *
+     * @param results are the news of every query, null for a query not completed
+     */
+    static List<News> merge(List<List<News>> results, String orderBy) {
+        List<RankedNews> ranked = new ArrayList<>();
+        for (int query = 0; query < results.size(); query++) {
+            List<News> news = results.get(query);
+            if (news == null) {
+                continue;
+            }
+            for (int rank = 0; rank < news.size(); rank++) {
+                ranked.add(new RankedNews(news.get(rank), rank, query));
+            }
+        }
+
+        final boolean byTime = "newest".equals(orderBy) || "oldest".equals(orderBy);
+        final boolean oldestFirst = "oldest".equals(orderBy);
+        Collections.sort(ranked, new Comparator<RankedNews>() {
+            @Override
+            public int compare(RankedNews first, RankedNews second) {
+                if (byTime) {
+                    long firstTime = first.mNews.getPublicationTime();
+                    long secondTime = second.mNews.getPublicationTime();
+                    if (firstTime != secondTime) {
+                        return (firstTime < secondTime) == oldestFirst ? -1 : 1;
+                    }
+                }
+                if (first.mRank != second.mRank) {
+                    return first.mRank < second.mRank ? -1 : 1;
+                }
+                return first.mQuery < second.mQuery ? -1 : (first.mQuery == second.mQuery ? 0 : 1);
+            }
+        });
+
+        Set<String> urls = new HashSet<>();
+        List<News> merged = new ArrayList<>(ranked.size());
+        for (RankedNews rankedNews : ranked) {
+            if (urls.add(rankedNews.mNews.getUrl())) {
+                merged.add(rankedNews.mNews);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Fetches a query on a thread of the executor, its deadline starts when it runs.
+     * The query has its own signal, cancelled with the one of the fetch or at its deadline.
+     */
+    private class Query implements Callable<QueryResult> {
+
+        private final int mIndex;
+
+        private final String mRequestUrl;
+
+        private final RequestScheduler.Priority mPriority;
+
+        private final CancelSignal mSignal = new CancelSignal();
+
+        private final LoadTimings mTimings;
+
+        private volatile boolean mStarted;
+
+        private volatile long mDeadline;
+
+        private Query(int index, String requestUrl, RequestScheduler.Priority priority, LoadTimings timings) {
+            mIndex = index;
+            mRequestUrl = requestUrl;
+            mPriority = priority;
+            mTimings = timings;
+        }
+
+        @Override
+        public QueryResult call() {
+            mDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis);
+            mStarted = true;
+            return new QueryResult(mIndex, mSource.fetch(mRequestUrl, mPriority, mSignal, mTimings));
+        }
+    }
+
+    /**
+     * News of a completed query.
+     */
+    private static class QueryResult {
+
+        private final int mIndex;
+
+        private final NewsResult mResult;
+
+        private QueryResult(int index, NewsResult result) {
+            mIndex = index;
+            mResult = result;
+        }
+    }
+
+    /**
+     * A news with its position in the result of its query.
+     */
+    private static class RankedNews {
+
+        private final News mNews;
+
+        private final int mRank;
+
+        private final int mQuery;
+
+        private RankedNews(News news, int rank, int query) {
+            mNews = news;
+            mRank = rank;
+            mQuery = query;
+        }
+    }
+}
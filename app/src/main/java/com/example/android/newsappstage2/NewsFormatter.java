@@ -0,0 +1,117 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Build the {@link NewsItem} of the news, with all the texts displayed in the list.
+ * It's used in background by the loaders. An instance isn't thread safe, every thread needs its own.
+ */
+public class NewsFormatter {
+
+    /**
+     * Max length of the section name. It's better prevents layout problem when the string is too long.
+     */
+    private static final int MAX_SECTION_LENGTH = 25;
+
+    private final String mNoAuthor;
+
+    private final String mNoDate;
+
+    private final String mNoTime;
+
+    /**
+     * Format of the date with the right local pattern (i.e. "jul 3, 2018" or for italian setting "3 giu 2018")
+     */
+    private final DateFormat mDateFormat;
+
+    /**
+     * Format of the time (i.e. "4:30 PM")
+     */
+    private final DateFormat mTimeFormat;
+
+    /**
+     * Labels already built, so the items of the same section or author share them
+     */
+    private final Map<String, String> mSectionLabels = new HashMap<>();
+
+    private final Map<String, String> mBylineLabels = new HashMap<>();
+
+    /**
+     * Constructs a new {@link NewsFormatter}.
+     *
+     * @param context of the app, used for the texts of the missing values
+     */
+    public NewsFormatter(Context context) {
+        mNoAuthor = context.getString(R.string.no_author);
+        mNoDate = context.getString(R.string.no_date);
+        mNoTime = context.getString(R.string.no_time);
+
+        final String pattern = ((SimpleDateFormat) DateFormat.getDateInstance(DateFormat.DEFAULT, Locale.getDefault())).toPattern();
+        mDateFormat = new SimpleDateFormat(pattern, Locale.getDefault());
+        mTimeFormat = new SimpleDateFormat("h:mm a", Locale.getDefault());
+    }
+
+    /**
+     * Returns the {@link NewsItem} of every news of the list.
+     */
+    public List<NewsItem> format(List<News> newsList) {
+        List<NewsItem> items = new ArrayList<>(newsList.size());
+        for (News news : newsList) {
+            items.add(format(news));
+        }
+        return items;
+    }
+
+    /**
+     * Returns the {@link NewsItem} of the news.
+     */
+    public NewsItem format(News news) {
+        // The trail text is parsed when it's displayed
+        String sectionName = news.getSectionName() != null ? news.getSectionName() : "";
+        String sectionLabel = mSectionLabels.get(sectionName);
+        if (sectionLabel == null) {
+            if (sectionName.length() > MAX_SECTION_LENGTH) {
+                sectionLabel = sectionName.substring(0, MAX_SECTION_LENGTH).concat(" ...");
+            } else {
+                sectionLabel = sectionName;
+            }
+            mSectionLabels.put(sectionName, sectionLabel);
+        }
+
+        // If the field byline has content display the author name else "No author"
+        String bylineLabel;
+        if (news.getByline() != null && !news.getByline().equals("")) {
+            bylineLabel = mBylineLabels.get(news.getByline());
+            if (bylineLabel == null) {
+                bylineLabel = "By ".concat(news.getByline());
+                mBylineLabels.put(news.getByline(), bylineLabel);
+            }
+        } else {
+            bylineLabel = mNoAuthor;
+        }
+
+        String date;
+        String time;
+        if (news.hasPublicationTime()) {
+            // The date and the time are displayed in the time zone of the device
+            Date publicationDate = new Date(news.getPublicationTime());
+            date = mDateFormat.format(publicationDate);
+            time = mTimeFormat.format(publicationDate);
+        } else {
+            // Display symbol for no date and no time
+            date = mNoDate;
+            time = mNoTime;
+        }
+
+        return new NewsItem(news, sectionLabel, bylineLabel, date, time);
+    }
+}
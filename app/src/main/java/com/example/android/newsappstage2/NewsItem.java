@@ -0,0 +1,121 @@
+package com.example.android.newsappstage2;
+
+import android.text.Html;
+
+/**
+ * A {@link News} with the texts displayed in its list item.
+ * The texts are built by {@link NewsFormatter} in background, so the adapter only sets them,
+ * except the trail text: its html is parsed the first time it's displayed, because most of the news
+ * of a large feed are never displayed and the parsed text is many times larger than its html.
+ */
+public class NewsItem {
+
+    /**
+     * News of the item
+     */
+    private final News mNews;
+
+    /**
+     * Trail text of the news with the html parsed, null until it's displayed
+     */
+    private volatile CharSequence mTrailText;
+
+    /**
+     * Section name of the news truncated to fit the layout
+     */
+    private final String mSectionLabel;
+
+    /**
+     * "By" with the author of the news, or the text for no author
+     */
+    private final String mBylineLabel;
+
+    /**
+     * Formatted publication date (i.e. "Mar 3, 1984")
+     */
+    private final String mDate;
+
+    /**
+     * Formatted publication time (i.e. "4:30 PM")
+     */
+    private final String mTime;
+
+    /**
+     * Constructs a new {@link NewsItem} object.
+     *
+     * @param news         is the news of the item
+     * @param sectionLabel is the section name truncated to fit the layout
+     * @param bylineLabel  is the text of the author
+     * @param date         is the formatted publication date
+     * @param time         is the formatted publication time
+     */
+    public NewsItem(News news, String sectionLabel, String bylineLabel, String date, String time) {
+        mNews = news;
+        mSectionLabel = sectionLabel;
+        mBylineLabel = bylineLabel;
+        mDate = date;
+        mTime = time;
+    }
+
+    /**
+     * Returns the news of the item.
+     */
+    public News getNews() {
+        return mNews;
+    }
+
+    /**
+     * Returns the trail text with the html parsed, it's parsed at the first call.
+     */
+    public CharSequence getTrailText() {
+        CharSequence trailText = mTrailText;
+        if (trailText == null) {
+            // Two threads can parse the same text, the results are equal
+            trailText = parseHtml(mNews.getTrailText());
+            mTrailText = trailText;
+        }
+        return trailText;
+    }
+
+    /**
+     * Returns the text of the html. A text without tags and entities is returned as it is.
+     */
+    static CharSequence parseHtml(String html) {
+        // Note: some trail text could have html text.
+        if (html == null) {
+            return "";
+        }
+        if (html.indexOf('<') < 0 && html.indexOf('&') < 0) {
+            return html;
+        }
+        return Html.fromHtml(html);
+    }
+
+    /**
+     * Returns the section name truncated to fit the layout.
+     */
+    public String getSectionLabel() {
+        return mSectionLabel;
+    }
+
+    /**
+     * Returns the text of the author.
+     */
+    public String getBylineLabel() {
+        return mBylineLabel;
+    }
+
+    /**
+     * Returns the formatted publication date.
+     */
+    public String getDate() {
+        return mDate;
+    }
+
+    /**
+     * Returns the formatted publication time.
+     */
+    public String getTime() {
+        return mTime;
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.android.newsappstage2;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load the next pages of a query with the "page" parameter of the API while the list is scrolled.
+ * A page is requested when the last visible news is near the end of the list.
+ * Pages already loaded or in flight are not requested again, and news already in the list are dropped.
+ * The pages are cached in the {@link NewsCache}, so a page loaded again in a short time isn't fetched.
+ * All the methods must be called from the main thread.
+ */
+public class NewsPager {
+
+    /**
+     * Receives the news of the pages on the main thread.
+     */
+    public interface Callback {
+        void onPageLoaded(List<NewsItem> items);
+    }
+
+    /**
+     * The API answers 400 Bad Request to a page after the last one
+     */
+    private static final int HTTP_BAD_REQUEST = 400;
+
+    private String mRequestUrl;
+
+    private final int mPageSize;
+
+    private final int mPrefetchDistance;
+
+    private final Callback mCallback;
+
+    /**
+     * Formats the news of the pages, it's used only by the thread of the pager
+     */
+    private final NewsFormatter mFormatter;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Pages loaded or in flight
+     */
+    private final Set<Integer> mRequestedPages = new HashSet<>();
+
+    /**
+     * URL of the news in the list
+     */
+    private final Set<String> mNewsUrls = new HashSet<>();
+
+    private int mNextPage = 1;
+
+    /**
+     * True if a page had less news than the page size, so there aren't other pages
+     */
+    private boolean mLastPage;
+
+    /**
+     * Incremented on every reset, so the pages of the previous list are dropped
+     */
+    private int mGeneration;
+
+    /**
+     * Constructs a new {@link NewsPager}.
+     *
+     * @param requestUrl       is the URL of the query without the page parameter
+     * @param pageSize         is the number of news of each page, the same of the "page-size" parameter
+     * @param prefetchDistance is the number of news left to scroll when the next page is requested
+     * @param formatter        formats the news of the pages in background
+     * @param callback         receives the news of every page
+     */
+    public NewsPager(String requestUrl, int pageSize, int prefetchDistance, NewsFormatter formatter, Callback callback) {
+        mRequestUrl = requestUrl;
+        mPageSize = pageSize;
+        mPrefetchDistance = prefetchDistance;
+        mFormatter = formatter;
+        mCallback = callback;
+    }
+
+    /**
+     * Start again from the given news, i.e. the stored or the synced news.
+     * The loaded news don't tell the pages of the request URL, i.e. they are the stored news of
+     * past syncs or the news of more sections, so the pages follow only the pages actually fetched;
+     * the news of a page already in the list are dropped.
+     *
+     * @param loadedNews   are the news in the list
+     * @param fetchedPages is the number of the first pages of the request URL already fetched, 0 for none
+     */
+    public void reset(List<NewsItem> loadedNews, int fetchedPages) {
+        mGeneration++;
+        mRequestedPages.clear();
+        mNewsUrls.clear();
+        for (NewsItem item : loadedNews) {
+            mNewsUrls.add(item.getNews().getUrl());
+        }
+        mNextPage = fetchedPages + 1;
+        for (int page = 1; page < mNextPage; page++) {
+            mRequestedPages.add(page);
+        }
+        mLastPage = false;
+    }
+
+    /**
+     * Start again with the pages of another query, no page is requested until the next reset.
+     */
+    public void setRequestUrl(String requestUrl) {
+        mRequestUrl = requestUrl;
+        reset(new ArrayList<NewsItem>(), 0);
+    }
+
+    /**
+     * Request the next page if the last visible news is near the end of the list.
+     *
+     * @param lastVisiblePosition is the position after the last visible news
+     * @param totalCount          is the number of news in the list
+     */
+    public void onScroll(int lastVisiblePosition, int totalCount) {
+        if (mLastPage || totalCount == 0 || totalCount - lastVisiblePosition > mPrefetchDistance) {
+            return;
+        }
+        requestPage(mNextPage);
+    }
+
+    /**
+     * Stop the thread of the pager. The pager can't be used anymore.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private void requestPage(final int page) {
+        if (!mRequestedPages.add(page)) {
+            // The page is already loaded or in flight.
+            return;
+        }
+        final int generation = mGeneration;
+        final String pageUrl = Uri.parse(mRequestUrl).buildUpon()
+                .appendQueryParameter("page", String.valueOf(page))
+                .toString();
+
+        // A page loaded a short time ago isn't fetched again
+        NewsCache.Entry cached = NewsCache.getDefault().get(pageUrl);
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            onPageFetched(generation, page, NewsResult.ok(new ArrayList<News>()), cached.getItems());
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The next page waits behind the requests of the displayed news
+                final NewsResult result = QueryUtils.fetchNewsData(pageUrl, RequestScheduler.Priority.PREFETCH,
+                        new CancelSignal(), new LoadTimings());
+                final List<NewsItem> items = mFormatter.format(result.getNews());
+                if (result.isSuccess()) {
+                    NewsCache.getDefault().put(pageUrl, items);
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageFetched(generation, page, result, items);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageFetched(int generation, int page, NewsResult result, List<NewsItem> items) {
+        if (generation != mGeneration) {
+            return;
+        }
+        NewsResult.Status status = result.getStatus();
+
+        // Without network: stop until the next reset.
+        if (status == NewsResult.Status.NETWORK_ERROR) {
+            mLastPage = true;
+            return;
+        }
+
+        // The API answers 400 to a page after the last one: stop until the next reset.
+        if (result.getHttpCode() == HTTP_BAD_REQUEST) {
+            mLastPage = true;
+            return;
+        }
+
+        // An error of the API, the page can be requested again on the next scroll.
+        if (status != NewsResult.Status.OK) {
+            mRequestedPages.remove(page);
+            return;
+        }
+
+        // No news after the last page: stop until the next reset.
+        if (items.isEmpty()) {
+            mLastPage = true;
+            return;
+        }
+
+        mNextPage = Math.max(mNextPage, page + 1);
+        if (items.size() < mPageSize) {
+            mLastPage = true;
+        }
+
+        List<NewsItem> newItems = new ArrayList<>();
+        for (NewsItem item : items) {
+            if (mNewsUrls.add(item.getNews().getUrl())) {
+                newItems.add(item);
+            }
+        }
+        if (!newItems.isEmpty()) {
+            mCallback.onPageLoaded(newItems);
+        } else if (!mLastPage) {
+            // All the news of the page are already in the list, so the list doesn't grow
+            // and the next scroll may not come: the next page is requested now.
+            requestPage(mNextPage);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Build the request URLs of the Guardian API with the search term, the order and the sections
+ * of the preferences. It's used by the activity and by the background sync, so both load the same news.
+ */
+public class NewsQuery {
+
+    private static final Metrics.Histogram sBuildUrlTime = Metrics.histogram("query.build_url");
+
+    private final Context mContext;
+
+    private final SharedPreferences mSharedPrefs;
+
+    public NewsQuery(Context context) {
+        mContext = context.getApplicationContext();
+        mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    /**
+     * Returns the order-by value of the preferences.
+     */
+    public String getOrderBy() {
+        // getString retrieves a String value from de list preferences Orderby
+        return mSharedPrefs.getString(
+                mContext.getString(R.string.settings_order_by_key),
+                mContext.getString(R.string.settings_order_by_default)
+        );
+    }
+
+    /**
+     * Returns true if the news are ordered from the oldest.
+     */
+    public boolean isOldestFirst() {
+        return getOrderBy().equals(mContext.getString(R.string.settings_order_by_oldest_value));
+    }
+
+    /**
+     * Returns the URL of the first page of the query with the search term and the order of the preferences.
+     */
+    public String buildRequestUrl() {
+        // getString retrieves a String value from the preferences.
+        return buildRequestUrl(getSearchTerm());
+    }
+
+    /**
+     * Returns the URLs of the first page of every followed section, or only the URL of the query
+     * if there is at most one section. The news of the query are the news of all these URLs.
+     */
+    public List<String> buildQueryUrls() {
+        List<String> sections = getSections();
+        if (sections.size() <= 1) {
+            return Collections.singletonList(buildRequestUrl());
+        }
+        String searchTerm = getSearchTerm();
+        List<String> urls = new ArrayList<>();
+        for (String section : sections) {
+            urls.add(buildRequestUrl(searchTerm, section));
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the URL of the first page of the search term with the order and the sections of the preferences.
+     * The sections are joined with "|", so the API returns the news of any of them, i.e. for the next pages.
+     */
+    public String buildRequestUrl(String searchTerm) {
+        return buildRequestUrl(searchTerm, TextUtils.join("|", getSections()));
+    }
+
+    private String getSearchTerm() {
+        return mSharedPrefs.getString(mContext.getString(R.string.settings_search_term_key), "");
+    }
+
+    /**
+     * Returns the sections followed in the preferences, sorted so the URLs don't change with the order.
+     */
+    private List<String> getSections() {
+        Set<String> sections = mSharedPrefs.getStringSet(mContext.getString(R.string.settings_sections_key),
+                Collections.<String>emptySet());
+        return new ArrayList<>(new TreeSet<>(sections));
+    }
+
+    /**
+     * Returns the URL of the first page of the search term in the section with the order of the preferences.
+     */
+    private String buildRequestUrl(String searchTerm, String section) {
+        long start = sBuildUrlTime.begin();
+        try {
+            return createRequestUrl(searchTerm, section);
+        } finally {
+            sBuildUrlTime.end(start);
+        }
+    }
+
+    private String createRequestUrl(String searchTerm, String section) {
+
+        // parse breaks apart the URI string that's passed into its parameter
+        Uri baseUri = Uri.parse(GuardianFeedSource.SEARCH_URL);
+
+        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
+        Uri.Builder uriBuilder = baseUri.buildUpon();
+
+        // Append query parameter and its value. For example, the `format=geojson`
+        if(!searchTerm.equals("")) {
+            uriBuilder.appendQueryParameter("q", searchTerm);
+        }
+        if (!section.equals("")) {
+            uriBuilder.appendQueryParameter("section", section);
+        }
+        uriBuilder.appendQueryParameter("page-size", String.valueOf(mContext.getResources().getInteger(R.integer.page_size)));
+        uriBuilder.appendQueryParameter("show-fields", "trailText,byline,thumbnail");
+        uriBuilder.appendQueryParameter("order-by", getOrderBy());
+        // Used api-key "test" for only purpose this project
+        uriBuilder.appendQueryParameter("api-key", "test");
+
+        return uriBuilder.toString();
+    }
+}
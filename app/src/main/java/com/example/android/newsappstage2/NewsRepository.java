@@ -0,0 +1,386 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Load the news of a query on its own threads: the stored news first, then the news synced with the API.
+ * The sync runs in stages (fetch, parse and map) that are timed, and it's cancelled, also in the middle
+ * of a response, when another query is loaded. The last results are kept, so the activity recreated after
+ * a configuration change gets them without fetching again, and the synced news are cached in the
+ * {@link NewsCache}, so a query loaded again is displayed at once and is fetched only if its news are stale.
+ * All the methods must be called from the main thread.
+ */
+public class NewsRepository {
+
+    private static final String LOG_TAG = NewsRepository.class.getSimpleName();
+
+    /**
+     * Receives the news of the query on the main thread.
+     */
+    public interface Listener {
+        void onStoredNews(List<NewsItem> items);
+
+        /**
+         * Called every time a query of the sync completes, the last call has all the news.
+         */
+        void onSyncedNews(List<NewsItem> items);
+
+        /**
+         * Called when the news couldn't be synced, the stored news are still valid.
+         */
+        void onSyncFailed(NewsResult result);
+    }
+
+    private final Context mContext;
+
+    /**
+     * The stored news are read while the news are synced
+     */
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private Listener mListener;
+
+    /**
+     * URL of the query loaded, it identifies the stored news
+     */
+    private String mUrl;
+
+    private boolean mSyncStarted;
+
+    private List<NewsItem> mStoredNews;
+
+    private List<NewsItem> mSyncedNews;
+
+    /**
+     * Last page of the URL of the query fetched by the sync of the synced news, 0 if the sync didn't fetch
+     * the pages of that URL, i.e. with more sections or only the news after the stored ones
+     */
+    private int mSyncedPage;
+
+    private NewsResult mSyncFailure;
+
+    private CancelSignal mSignal;
+
+    /**
+     * Incremented on every load, so the results of the previous query are dropped
+     */
+    private int mGeneration;
+
+    /**
+     * Constructs a new {@link NewsRepository}.
+     *
+     * @param context of the app
+     */
+    public NewsRepository(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Set the listener of the news, the results already loaded are delivered at once.
+     */
+    public void attach(Listener listener) {
+        mListener = listener;
+        if (mStoredNews != null) {
+            listener.onStoredNews(mStoredNews);
+        }
+        if (mSyncedNews != null) {
+            listener.onSyncedNews(mSyncedNews);
+        }
+        if (mSyncFailure != null) {
+            listener.onSyncFailed(mSyncFailure);
+        }
+    }
+
+    /**
+     * Remove the listener, i.e. when the activity is destroyed. The loads in flight go on.
+     */
+    public void detach() {
+        mListener = null;
+    }
+
+    /**
+     * Load the news of the query. If the query is already loaded or in flight, nothing is fetched again.
+     *
+     * @param url       is the URL of the query, it identifies the stored news
+     * @param queryUrls are the URLs fetched for the query, one for every followed section
+     * @param orderBy   is the order of the news
+     * @param sync      is true to fetch the news of the API, false to load only the stored news
+     */
+    public void load(String url, List<String> queryUrls, String orderBy, boolean sync) {
+        if (!url.equals(mUrl)) {
+            cancel();
+            mUrl = url;
+            mSyncStarted = false;
+            mStoredNews = null;
+            mSyncedNews = null;
+            mSyncedPage = 0;
+            mSyncFailure = null;
+            mSignal = new CancelSignal();
+
+            // The cached news are displayed at once: fresh ones aren't fetched again,
+            // stale ones are displayed while the sync revalidates them.
+            NewsCache.Entry cached = NewsCache.getDefault().getFeed(url);
+            if (cached == null) {
+                loadStored(mGeneration, url, orderBy);
+            } else if (cached.isFresh(System.currentTimeMillis())) {
+                mSyncStarted = true;
+                deliverNow(true, cached.getItems(), 0);
+            } else {
+                deliverNow(false, cached.getItems(), 0);
+            }
+        }
+        if (sync && !mSyncStarted) {
+            mSyncStarted = true;
+            sync(mGeneration, mSignal, url, queryUrls, orderBy);
+        }
+    }
+
+    /**
+     * Returns the last page of the URL of the query fetched by the sync of the synced news,
+     * so the next pages follow it; 0 if the sync didn't fetch the pages of that URL.
+     */
+    public int getSyncedPage() {
+        return mSyncedPage;
+    }
+
+    /**
+     * Returns true if news of the current query have been delivered, i.e. from the cache.
+     */
+    public boolean hasNews() {
+        return mStoredNews != null || mSyncedNews != null;
+    }
+
+    /**
+     * Cancel the loads in flight, a response being read is aborted.
+     */
+    public void cancel() {
+        mGeneration++;
+        mUrl = null;
+        if (mSignal != null) {
+            mSignal.cancel();
+        }
+    }
+
+    /**
+     * Cancel the loads and stop the threads. The repository can't be used anymore.
+     */
+    public void shutdown() {
+        cancel();
+        mListener = null;
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Load the news of the snapshot of the last news displayed, or the news of the store
+     * if the snapshot is of another query.
+     */
+    private void loadStored(final int generation, final String url, final String orderBy) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                List<News> news = NewsSnapshot.getDefault(mContext).read(url);
+                String source = "snapshot";
+                if (news == null) {
+                    news = NewsStore.getInstance(mContext).getNews(url, orderBy);
+                    source = "store";
+                }
+                List<NewsItem> items = new NewsFormatter(mContext).format(news);
+                Log.v(LOG_TAG, "Loaded " + items.size() + " news from the " + source + " in "
+                        + (System.nanoTime() - start) / 1000000L + " ms");
+                deliver(generation, false, items, 0);
+            }
+        });
+    }
+
+    /**
+     * Fetch only the news published from the date of the newest stored news,
+     * save them in the store and deliver all the stored news formatted for the list.
+     * With more URLs, the stored news are delivered every time a URL is fetched.
+     */
+    private void sync(final int generation, final CancelSignal signal, final String url,
+                      final List<String> queryUrls, final String orderBy) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final NewsStore store = NewsStore.getInstance(mContext);
+                final NewsSnapshot snapshot = NewsSnapshot.getDefault(mContext);
+                final NewsFormatter formatter = new NewsFormatter(mContext);
+                final LoadTimings timings = new LoadTimings();
+
+                // Only the first sync of a query of one URL fetches the first page of that URL,
+                // the next syncs fetch the news after the stored ones.
+                long newestTime = store.getNewestPublicationTime(url);
+                final int syncedPage = newestTime == TimestampCodec.INVALID
+                        && queryUrls.size() == 1 && queryUrls.get(0).equals(url) ? 1 : 0;
+
+                // Fetch and parse stages
+                NewsResult result = fetchNewNews(newestTime, queryUrls, orderBy,
+                        RequestScheduler.Priority.FOREGROUND, signal, timings,
+                        new NewsFanOut.Listener() {
+                            @Override
+                            public void onQueryCompleted(List<News> merged, int completed, int total) {
+                                // The last query is delivered at the end of the sync
+                                if (completed < total) {
+                                    deliver(generation, true,
+                                            map(store, snapshot, formatter, timings, signal, url, orderBy, merged),
+                                            syncedPage);
+                                }
+                            }
+                        });
+
+                // The query has changed while the news were fetched, nothing is saved.
+                if (signal.isCanceled()) {
+                    Log.v(LOG_TAG, "Sync cancelled: " + url + " (" + timings + ")");
+                    return;
+                }
+
+                if (!result.isSuccess()) {
+                    Log.e(LOG_TAG, "Sync failed: " + result);
+                    deliverFailure(generation, result);
+                    return;
+                }
+
+                List<NewsItem> items = map(store, snapshot, formatter, timings, signal, url, orderBy, result.getNews());
+                if (items != null) {
+                    NewsCache.getDefault().putFeed(url, items);
+                }
+                deliver(generation, true, items, syncedPage);
+                Log.i(LOG_TAG, "Synced " + result.getNews().size() + " news in " + queryUrls.size()
+                        + " queries: " + timings + ", requests " + RequestScheduler.getDefault());
+            }
+        });
+    }
+
+    /**
+     * Fetch the news of the queries published since the newest stored news of the query. The queries
+     * are fetched page after page until they reach the stored news, so the store has no gap between
+     * the stored news and the new ones. Without stored news only the first page of every query is fetched.
+     * It blocks, so it must be called off the main thread.
+     *
+     * @param newestTime is the time of the newest stored news of the query, see
+     *                   {@link NewsStore#getNewestPublicationTime(String)}
+     * @param queryUrls  are the URLs fetched for the query, one for every followed section
+     * @see NewsFanOut#fetch(List, String, RequestScheduler.Priority, CancelSignal, LoadTimings, NewsFanOut.Listener)
+     */
+    static NewsResult fetchNewNews(long newestTime, List<String> queryUrls, String orderBy,
+                                   RequestScheduler.Priority priority, CancelSignal signal, LoadTimings timings,
+                                   NewsFanOut.Listener listener) {
+        NewsFanOut fanOut = NewsFanOut.getDefault();
+        fanOut = fanOut.withSource(new NewPagesSource(fanOut.getSource(), newestTime, NewsStore.MAX_STORED_NEWS));
+        return fanOut.fetch(buildSyncUrls(newestTime, queryUrls), orderBy, priority, signal, timings, listener);
+    }
+
+    /**
+     * Returns the URLs of the queries with the date of the newest stored news as "from-date",
+     * so only the news published from that date are fetched. They are ordered by "newest",
+     * so their pages are fetched until they reach the stored news; the stored news are sorted anyway.
+     *
+     * @param newestTime is the time of the newest stored news, or {@link TimestampCodec#INVALID}
+     *                   to fetch the queries as they are
+     */
+    static List<String> buildSyncUrls(long newestTime, List<String> queryUrls) {
+        List<String> requestUrls = new ArrayList<>();
+        for (String queryUrl : queryUrls) {
+            if (newestTime != TimestampCodec.INVALID) {
+                Uri uri = Uri.parse(queryUrl);
+                Uri.Builder builder = uri.buildUpon().clearQuery();
+                for (String name : uri.getQueryParameterNames()) {
+                    if (!name.equals("order-by")) {
+                        for (String value : uri.getQueryParameters(name)) {
+                            builder.appendQueryParameter(name, value);
+                        }
+                    }
+                }
+                queryUrl = builder.appendQueryParameter("order-by", "newest")
+                        .appendQueryParameter("from-date", TimestampCodec.formatDate(newestTime))
+                        .toString();
+            }
+            requestUrls.add(queryUrl);
+        }
+        return requestUrls;
+    }
+
+    /**
+     * Map stage: save the news in the store and in the snapshot, and return all the stored news
+     * formatted for the list, or null if the sync is cancelled.
+     */
+    private static List<NewsItem> map(NewsStore store, NewsSnapshot snapshot, NewsFormatter formatter,
+                                      LoadTimings timings, CancelSignal signal, String url, String orderBy,
+                                      List<News> news) {
+        long start = System.nanoTime();
+        List<News> stored;
+        // The store keeps one query: a cancelled sync must not replace the news of the next query
+        // after they are saved. The save holds the same lock of the store.
+        synchronized (store) {
+            if (signal.isCanceled()) {
+                return null;
+            }
+            store.save(url, news);
+            stored = store.getNews(url, orderBy);
+            snapshot.write(url, stored);
+        }
+        List<NewsItem> items = formatter.format(stored);
+        timings.addMap(System.nanoTime() - start);
+        return items;
+    }
+
+    private void deliver(final int generation, final boolean synced, final List<NewsItem> items,
+                         final int syncedPage) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (items == null || generation != mGeneration) {
+                    return;
+                }
+                deliverNow(synced, items, syncedPage);
+            }
+        });
+    }
+
+    /**
+     * Keep the news of the current query and deliver them to the listener, on the main thread.
+     */
+    private void deliverNow(boolean synced, List<NewsItem> items, int syncedPage) {
+        if (synced) {
+            mSyncedNews = items;
+            mSyncedPage = syncedPage;
+        } else {
+            mStoredNews = items;
+        }
+        if (mListener == null) {
+            return;
+        }
+        if (synced) {
+            mListener.onSyncedNews(items);
+        } else {
+            mListener.onStoredNews(items);
+        }
+    }
+
+    private void deliverFailure(final int generation, final NewsResult result) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mSyncFailure = result;
+                if (mListener != null) {
+                    mListener.onSyncFailed(result);
+                }
+            }
+        });
+    }
+}
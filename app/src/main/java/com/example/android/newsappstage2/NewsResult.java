@@ -0,0 +1,191 @@
+package com.example.android.newsappstage2;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Result of a request of news: the status, the news if it's successful,
+ * and the rate limit of the API sent with the response.
+ * It's immutable, so a result can be shared by the callers of the same request.
+ */
+public class NewsResult {
+
+    /**
+     * Class of the result, so the UI can tell why there aren't news.
+     */
+    public enum Status {
+        /**
+         * The news have been read, the list can be empty
+         */
+        OK,
+        /**
+         * The API has refused the request, too many requests (429)
+         */
+        RATE_LIMITED,
+        /**
+         * The API has answered with another error code
+         */
+        HTTP_ERROR,
+        /**
+         * The request has failed without an answer, i.e. no connection or a timeout
+         */
+        NETWORK_ERROR,
+        /**
+         * The body of the response isn't the JSON expected
+         */
+        PARSE_ERROR,
+        /**
+         * The request has been cancelled
+         */
+        CANCELLED
+    }
+
+    /**
+     * Value of the numbers not sent with the response
+     */
+    public static final int UNKNOWN = -1;
+
+    private final Status mStatus;
+
+    private final int mHttpCode;
+
+    private final List<News> mNews;
+
+    private final int mRateLimitRemaining;
+
+    private final long mRetryAfterMillis;
+
+    private NewsResult(Status status, int httpCode, List<News> news, int rateLimitRemaining, long retryAfterMillis) {
+        mStatus = status;
+        mHttpCode = httpCode;
+        mNews = Collections.unmodifiableList(news);
+        mRateLimitRemaining = rateLimitRemaining;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Returns a successful result with the news.
+     */
+    public static NewsResult ok(List<News> news) {
+        return new NewsResult(Status.OK, 200, news, UNKNOWN, UNKNOWN);
+    }
+
+    /**
+     * Returns a result without news.
+     */
+    public static NewsResult failure(Status status) {
+        return new NewsResult(status, UNKNOWN, Collections.<News>emptyList(), UNKNOWN, UNKNOWN);
+    }
+
+    /**
+     * Returns the result of a response, with the rate limit of its headers.
+     *
+     * @param httpCode           is the response code
+     * @param news               are the news of a successful response
+     * @param rateLimitRemaining is the value of the header X-RateLimit-Remaining-minute, or null
+     * @param retryAfter         is the value of the header Retry-After, or null
+     * @param now                is the time of the response, for a Retry-After with a date
+     */
+    public static NewsResult fromResponse(int httpCode, List<News> news, String rateLimitRemaining,
+                                          String retryAfter, long now) {
+        Status status;
+        if (httpCode == 200) {
+            status = Status.OK;
+        } else if (httpCode == 429) {
+            status = Status.RATE_LIMITED;
+        } else {
+            status = Status.HTTP_ERROR;
+        }
+        return new NewsResult(status, httpCode, status == Status.OK ? news : Collections.<News>emptyList(),
+                parseInt(rateLimitRemaining), parseRetryAfter(retryAfter, now));
+    }
+
+    /**
+     * Returns the same result with other news, i.e. the news of more results merged.
+     */
+    public NewsResult withNews(List<News> news) {
+        return new NewsResult(mStatus, mHttpCode, news, mRateLimitRemaining, mRetryAfterMillis);
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * Returns true if the news have been read.
+     */
+    public boolean isSuccess() {
+        return mStatus == Status.OK;
+    }
+
+    /**
+     * Returns the response code, or {@link #UNKNOWN} without a response.
+     */
+    public int getHttpCode() {
+        return mHttpCode;
+    }
+
+    /**
+     * Returns the news of a successful result, an empty list otherwise. The list can't be modified.
+     */
+    public List<News> getNews() {
+        return mNews;
+    }
+
+    /**
+     * Returns the requests left in the current minute of the API key, or {@link #UNKNOWN}.
+     */
+    public int getRateLimitRemaining() {
+        return mRateLimitRemaining;
+    }
+
+    /**
+     * Returns the milliseconds to wait before the next request, or {@link #UNKNOWN}.
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mStatus + " (" + mHttpCode + "), " + mNews.size() + " news";
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Returns the milliseconds of a Retry-After header, the seconds to wait or an HTTP date.
+     */
+    static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null) {
+            return UNKNOWN;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            return seconds >= 0 ? seconds * 1000L : UNKNOWN;
+        } catch (NumberFormatException e) {
+            // Otherwise it's a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0L, format.parse(retryAfter).getTime() - now);
+        } catch (ParseException e) {
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.android.newsappstage2;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Search as you type in the news of the list.
+ * Every change of the query filters at once the loaded news with a {@link NewsSearchIndex},
+ * then, when the query doesn't change for the debounce delay, the query searches the {@link NewsArchive}
+ * of all the fetched news, also offline, and then it's sent to the API. Their news are merged in place
+ * into the filtered ones.
+ * All the methods must be called from the main thread.
+ */
+public class NewsSearch {
+
+    /**
+     * Max number of archived news added to the results, the ones with the highest rank
+     */
+    private static final int ARCHIVE_LIMIT = 50;
+
+    /**
+     * Builds the request of the query and receives the news to display on the main thread.
+     */
+    public interface Callback {
+        String buildSearchUrl(String query);
+
+        void onResults(List<NewsItem> items);
+    }
+
+    private final long mDebounceMillis;
+
+    private final Callback mCallback;
+
+    private final NewsArchive mArchive;
+
+    /**
+     * Formats the news of the archive and of the remote queries, it's used only by the remote thread
+     */
+    private final NewsFormatter mFormatter;
+
+    private final ExecutorService mIndexExecutor = Executors.newSingleThreadExecutor();
+
+    private final ExecutorService mRemoteExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * All the loaded news, without filter
+     */
+    private List<NewsItem> mNews = new ArrayList<>();
+
+    /**
+     * Index of the loaded news, null while it's built
+     */
+    private NewsSearchIndex mIndex;
+
+    /**
+     * News of the archive for the current query
+     */
+    private List<NewsItem> mArchivedNews = new ArrayList<>();
+
+    /**
+     * News of the API for the current query
+     */
+    private List<NewsItem> mRemoteNews = new ArrayList<>();
+
+    private String mQuery = "";
+
+    private boolean mOldestFirst;
+
+    /**
+     * Incremented when the loaded news change, so an index of the previous news is dropped
+     */
+    private int mIndexGeneration;
+
+    /**
+     * Incremented when the query changes, so the remote news of the previous query are dropped
+     */
+    private int mQueryGeneration;
+
+    /**
+     * Cancels the request of the last remote search, null before the first one
+     */
+    private CancelSignal mRemoteSignal;
+
+    private final Runnable mRemoteSearch = new Runnable() {
+        @Override
+        public void run() {
+            searchRemote();
+        }
+    };
+
+    /**
+     * Constructs a new {@link NewsSearch}.
+     *
+     * @param debounceMillis is the time without changes of the query before it's sent to the API
+     * @param archive        has the news fetched for all the queries
+     * @param formatter      formats the news of the archive and of the API in background
+     * @param callback       builds the requests and receives the news to display
+     */
+    public NewsSearch(long debounceMillis, NewsArchive archive, NewsFormatter formatter, Callback callback) {
+        mDebounceMillis = debounceMillis;
+        mArchive = archive;
+        mFormatter = formatter;
+        mCallback = callback;
+    }
+
+    /**
+     * Replace the loaded news, the index is built again in background.
+     *
+     * @param oldestFirst is true if the news are ordered from the oldest
+     */
+    public void setNews(List<NewsItem> items, boolean oldestFirst) {
+        mOldestFirst = oldestFirst;
+        mNews = new ArrayList<>(items);
+        rebuildIndex();
+    }
+
+    /**
+     * Add the news of the next page to the loaded news.
+     */
+    public void addNews(List<NewsItem> items) {
+        List<NewsItem> news = new ArrayList<>(mNews.size() + items.size());
+        news.addAll(mNews);
+        news.addAll(items);
+        mNews = news;
+        rebuildIndex();
+    }
+
+    /**
+     * Filter the news with the query, an empty query displays all the loaded news.
+     */
+    public void setQuery(String query) {
+        query = query.trim();
+        if (query.equals(mQuery)) {
+            return;
+        }
+        mQuery = query;
+        mQueryGeneration++;
+        mArchivedNews = new ArrayList<>();
+        mRemoteNews = new ArrayList<>();
+        mMainHandler.removeCallbacks(mRemoteSearch);
+        cancelRemoteSearch();
+        if (!query.isEmpty()) {
+            mMainHandler.postDelayed(mRemoteSearch, mDebounceMillis);
+        }
+        publish();
+    }
+
+    /**
+     * Returns true if the displayed news are filtered by a query.
+     */
+    public boolean isFiltering() {
+        return !mQuery.isEmpty();
+    }
+
+    /**
+     * Stop the threads of the search. The search can't be used anymore.
+     */
+    public void shutdown() {
+        mMainHandler.removeCallbacks(mRemoteSearch);
+        cancelRemoteSearch();
+        mIndexExecutor.shutdownNow();
+        mRemoteExecutor.shutdownNow();
+    }
+
+    private void rebuildIndex() {
+        final int generation = ++mIndexGeneration;
+        final List<NewsItem> news = mNews;
+        mIndex = null;
+
+        // Without a query the news are displayed without waiting for the index
+        publish();
+
+        mIndexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final NewsSearchIndex index = new NewsSearchIndex(news);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mIndexGeneration) {
+                            mIndex = index;
+                            if (isFiltering()) {
+                                publish();
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void searchRemote() {
+        final int generation = mQueryGeneration;
+        final String searchUrl = mCallback.buildSearchUrl(mQuery);
+        final String archiveQuery = asYouType(mQuery);
+        final CancelSignal signal = new CancelSignal();
+        mRemoteSignal = signal;
+        mRemoteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The archive answers first, also without a network connection
+                final List<NewsItem> archived = mFormatter.format(mArchive.search(archiveQuery, ARCHIVE_LIMIT));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mQueryGeneration) {
+                            mArchivedNews = archived;
+                            publish();
+                        }
+                    }
+                });
+
+                if (signal.isCanceled()) {
+                    // The query changed while the archive was searched
+                    return;
+                }
+                NewsResult result = QueryUtils.fetchNewsData(searchUrl, signal, new LoadTimings());
+
+                // Without the news of the API only the local news are displayed.
+                if (!result.isSuccess()) {
+                    return;
+                }
+                final List<NewsItem> items = mFormatter.format(result.getNews());
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mQueryGeneration) {
+                            mRemoteNews = items;
+                            publish();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel the request of the previous query, so it doesn't keep a connection to the API.
+     */
+    private void cancelRemoteSearch() {
+        if (mRemoteSignal != null) {
+            mRemoteSignal.cancel();
+            mRemoteSignal = null;
+        }
+    }
+
+    /**
+     * Send the news of the query to the callback.
+     */
+    private void publish() {
+        if (!isFiltering()) {
+            mCallback.onResults(mNews);
+            return;
+        }
+        if (mIndex == null) {
+            // The news are filtered when the index is ready
+            return;
+        }
+        List<NewsItem> remote = new ArrayList<>(mArchivedNews.size() + mRemoteNews.size());
+        remote.addAll(mArchivedNews);
+        remote.addAll(mRemoteNews);
+        mCallback.onResults(merge(mIndex.filter(mQuery), remote));
+    }
+
+    /**
+     * Returns the query of the archive with the last word as a prefix, i.e. "world cu" finds "world cup",
+     * since the last word can be still typed.
+     */
+    static String asYouType(String query) {
+        if (!query.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1))) {
+            return query + "*";
+        }
+        return query;
+    }
+
+    /**
+     * Returns the local news with the remote news inserted in the order of publication.
+     * The local news keep their order, the remote news already in the list are dropped.
+     */
+    private List<NewsItem> merge(List<NewsItem> local, List<NewsItem> remote) {
+        if (remote.isEmpty()) {
+            return local;
+        }
+        Set<String> urls = new HashSet<>();
+        for (NewsItem item : local) {
+            urls.add(item.getNews().getUrl());
+        }
+        List<NewsItem> added = new ArrayList<>();
+        for (NewsItem item : remote) {
+            if (urls.add(item.getNews().getUrl())) {
+                added.add(item);
+            }
+        }
+        // The archived news are ranked by relevance, they are displayed in the order of the list
+        Collections.sort(added, new Comparator<NewsItem>() {
+            @Override
+            public int compare(NewsItem first, NewsItem second) {
+                return before(first, second) ? -1 : before(second, first) ? 1 : 0;
+            }
+        });
+
+        List<NewsItem> merged = new ArrayList<>(local.size() + added.size());
+        int l = 0;
+        int r = 0;
+        while (l < local.size() || r < added.size()) {
+            if (r == added.size() || (l < local.size() && !before(added.get(r), local.get(l)))) {
+                merged.add(local.get(l++));
+            } else {
+                merged.add(added.get(r++));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns true if the first news goes before the second one in the order of the list.
+     */
+    private boolean before(NewsItem first, NewsItem second) {
+        long firstTime = first.getNews().getPublicationTime();
+        long secondTime = second.getNews().getPublicationTime();
+        return mOldestFirst ? firstTime < secondTime : firstTime > secondTime;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.newsappstage2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Index of the lowercase tokens of the headline, trail text, byline and section of a list of news.
+ * The tokens are sorted, so every word of a query matches as a prefix with a binary search,
+ * i.e. "foot" matches "football". The index is immutable: it's built in background and
+ * then filtered by one thread at a time.
+ */
+public class NewsSearchIndex {
+
+    private final List<NewsItem> mItems;
+
+    /**
+     * Distinct tokens of all the news in alphabetical order
+     */
+    private final String[] mTokens;
+
+    /**
+     * Positions of the news with the token of the same index, in ascending order
+     */
+    private final int[][] mPostings;
+
+    /**
+     * Number of the query words matched by every news, reused by all the filters
+     */
+    private final int[] mMatches;
+
+    /**
+     * Builds the index of the news.
+     */
+    public NewsSearchIndex(List<NewsItem> items) {
+        mItems = new ArrayList<>(items);
+
+        Map<String, IntList> postings = new HashMap<>();
+        List<String> tokens = new ArrayList<>();
+        for (int position = 0; position < mItems.size(); position++) {
+            NewsItem item = mItems.get(position);
+            News news = item.getNews();
+            tokens.clear();
+            tokenize(news.getHeadline(), tokens);
+            // The html of the trail text isn't parsed, most of the news are never displayed
+            tokenizeHtml(news.getTrailText(), tokens);
+            tokenize(news.getByline(), tokens);
+            tokenize(news.getSectionName(), tokens);
+            for (String token : tokens) {
+                IntList positions = postings.get(token);
+                if (positions == null) {
+                    positions = new IntList();
+                    postings.put(token, positions);
+                }
+                positions.addOnce(position);
+            }
+        }
+
+        mTokens = postings.keySet().toArray(new String[postings.size()]);
+        Arrays.sort(mTokens);
+        mPostings = new int[mTokens.length][];
+        for (int i = 0; i < mTokens.length; i++) {
+            mPostings[i] = postings.get(mTokens[i]).toArray();
+        }
+        mMatches = new int[mItems.size()];
+    }
+
+    /**
+     * Returns the number of the news in the index.
+     */
+    public int size() {
+        return mItems.size();
+    }
+
+    /**
+     * Returns the news with all the words of the query, in the order of the indexed list.
+     * An empty query returns all the news.
+     */
+    public List<NewsItem> filter(String query) {
+        List<String> words = new ArrayList<>();
+        tokenize(query, words);
+        if (words.isEmpty()) {
+            return new ArrayList<>(mItems);
+        }
+
+        // After the word i, a news has mMatches == i + 1 only if it matched all the words so far
+        Arrays.fill(mMatches, 0);
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            int first = lowerBound(word);
+            boolean matched = false;
+            for (int t = first; t < mTokens.length && mTokens[t].startsWith(word); t++) {
+                for (int position : mPostings[t]) {
+                    if (mMatches[position] == i) {
+                        mMatches[position] = i + 1;
+                        matched = true;
+                    }
+                }
+            }
+            if (!matched) {
+                return new ArrayList<>();
+            }
+        }
+
+        List<NewsItem> result = new ArrayList<>();
+        for (int position = 0; position < mMatches.length; position++) {
+            if (mMatches[position] == words.size()) {
+                result.add(mItems.get(position));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the first token not less than the word.
+     */
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = mTokens.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mTokens[middle].compareTo(word) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Add the lowercase words of the text to the tokens, the words are separated by any non letter or digit.
+     */
+    static void tokenize(CharSequence text, List<String> tokens) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Add the lowercase words of the html to the tokens, without the words of its tags and entities.
+     */
+    static void tokenizeHtml(String html, List<String> tokens) {
+        if (html == null || (html.indexOf('<') < 0 && html.indexOf('&') < 0)) {
+            tokenize(html, tokens);
+            return;
+        }
+        StringBuilder text = new StringBuilder(html.length());
+        int length = html.length();
+        for (int i = 0; i < length; i++) {
+            char c = html.charAt(i);
+            int end = -1;
+            if (c == '<') {
+                end = html.indexOf('>', i);
+            } else if (c == '&') {
+                end = html.indexOf(';', i);
+                // An & without a short entity after it is text
+                if (end - i > 10) {
+                    end = -1;
+                }
+            }
+            if (end < 0) {
+                text.append(c);
+            } else {
+                text.append(' ');
+                i = end;
+            }
+        }
+        tokenize(text, tokens);
+    }
+
+    /**
+     * Growable list of positions, without the boxing of a List<Integer>.
+     */
+    private static class IntList {
+
+        private int[] mValues = new int[4];
+
+        private int mSize;
+
+        /**
+         * Add the position if it isn't the last one, the positions are added in ascending order.
+         */
+        private void addOnce(int value) {
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
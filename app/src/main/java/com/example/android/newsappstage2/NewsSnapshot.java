@@ -0,0 +1,277 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot of the last news displayed, in a compact binary file read at the next launch
+ * before the database and the network. The layout of the file is:
+ * <pre>
+ * int    magic, int version
+ * string URL of the query
+ * int    number of section names, then every section name
+ * int    number of news, then for every news:
+ *        string headline, trail text, byline, int index of the section name,
+ *        long publication time, string URL, image
+ * long   CRC32 of all the bytes before it
+ * </pre>
+ * A string is an int with the number of its UTF-8 bytes, -1 for null, then the bytes.
+ * The file is written in a temporary file and renamed, so a reader never sees a partial snapshot.
+ */
+public class NewsSnapshot {
+
+    private static final String LOG_TAG = NewsSnapshot.class.getSimpleName();
+
+    /**
+     * "NWSS", the first bytes of a snapshot
+     */
+    private static final int MAGIC = 0x4E575353;
+
+    /**
+     * Version of the layout, a snapshot of another version is ignored
+     */
+    static final int VERSION = 1;
+
+    private static final String FILE_NAME = "news.snapshot";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Max number of entries and of bytes of a string, so a corrupted length doesn't allocate all the memory
+     */
+    private static final int MAX_COUNT = 100000;
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The snapshot is written by the syncs of the app and of the background job
+     */
+    private static final Object sLock = new Object();
+
+    private final File mFile;
+
+    /**
+     * Constructs a new {@link NewsSnapshot}.
+     *
+     * @param file is the file of the snapshot
+     */
+    public NewsSnapshot(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Returns the snapshot of the app, in its files directory.
+     */
+    public static NewsSnapshot getDefault(Context context) {
+        return new NewsSnapshot(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Returns the news of the snapshot if it's the snapshot of the query, otherwise null,
+     * also if there isn't a snapshot or it's invalid.
+     *
+     * @param url is the URL of the query
+     */
+    public List<News> read(String url) {
+        synchronized (sLock) {
+            InputStream inputStream;
+            try {
+                inputStream = new FileInputStream(mFile);
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+            try {
+                return readFrom(new BufferedInputStream(inputStream, BUFFER_SIZE), url);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the snapshot", e);
+                return null;
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    // The snapshot is already read
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the snapshot with the news of the query. Returns false if it can't be written.
+     */
+    public boolean write(String url, List<News> news) {
+        synchronized (sLock) {
+            File tmpFile = new File(mFile.getPath() + ".tmp");
+            try {
+                FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+                try {
+                    OutputStream outputStream = new BufferedOutputStream(fileOutputStream, BUFFER_SIZE);
+                    writeTo(outputStream, url, news);
+                    outputStream.flush();
+                    // The data is on the disk before the rename
+                    fileOutputStream.getFD().sync();
+                } finally {
+                    fileOutputStream.close();
+                }
+                if (!tmpFile.renameTo(mFile)) {
+                    throw new IOException("Problem renaming the snapshot " + tmpFile);
+                }
+                return true;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem writing the snapshot", e);
+                tmpFile.delete();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Delete the snapshot.
+     */
+    public void clear() {
+        synchronized (sLock) {
+            mFile.delete();
+        }
+    }
+
+    static void writeTo(OutputStream outputStream, String url, List<News> news) throws IOException {
+        CheckedOutputStream checkedStream = new CheckedOutputStream(outputStream, new CRC32());
+        DataOutputStream output = new DataOutputStream(checkedStream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        writeString(output, url);
+
+        // Every section name is written once, the news have its index
+        Map<String, Integer> sectionIndexes = new HashMap<>();
+        List<String> sections = new ArrayList<>();
+        for (News item : news) {
+            if (!sectionIndexes.containsKey(item.getSectionName())) {
+                sectionIndexes.put(item.getSectionName(), sections.size());
+                sections.add(item.getSectionName());
+            }
+        }
+        output.writeInt(sections.size());
+        for (String section : sections) {
+            writeString(output, section);
+        }
+
+        output.writeInt(news.size());
+        for (News item : news) {
+            writeString(output, item.getHeadline());
+            writeString(output, item.getTrailText());
+            writeString(output, item.getByline());
+            output.writeInt(sectionIndexes.get(item.getSectionName()));
+            output.writeLong(item.getPublicationTime());
+            writeString(output, item.getUrl());
+            writeString(output, item.getImage());
+        }
+        output.flush();
+        // The checksum isn't part of itself
+        new DataOutputStream(outputStream).writeLong(checkedStream.getChecksum().getValue());
+        outputStream.flush();
+    }
+
+    /**
+     * Returns the news of the snapshot of the stream if it's the snapshot of the query, otherwise null.
+     *
+     * @throws IOException if the snapshot is invalid
+     */
+    static List<News> readFrom(InputStream inputStream, String url) throws IOException {
+        CheckedInputStream checkedStream = new CheckedInputStream(inputStream, new CRC32());
+        DataInputStream input = new DataInputStream(checkedStream);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            Log.w(LOG_TAG, "Snapshot version " + version + " ignored");
+            return null;
+        }
+        if (!url.equals(readString(input))) {
+            return null;
+        }
+
+        int sectionCount = readCount(input);
+        String[] sections = new String[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            // The news pool the section names, so the news of the same section share one string
+            sections[i] = readString(input);
+        }
+
+        int newsCount = readCount(input);
+        List<News> news = new ArrayList<>(newsCount);
+        for (int i = 0; i < newsCount; i++) {
+            String headline = readString(input);
+            String trailText = readString(input);
+            String byline = readString(input);
+            int section = input.readInt();
+            if (section < 0 || section >= sectionCount) {
+                throw new IOException("Invalid section index " + section);
+            }
+            long publicationTime = input.readLong();
+            String newsUrl = readString(input);
+            String image = readString(input);
+            news.add(new News(headline, trailText, byline, sections[section], publicationTime, newsUrl, image));
+        }
+
+        long checksum = checkedStream.getChecksum().getValue();
+        if (new DataInputStream(inputStream).readLong() != checksum) {
+            throw new IOException("Invalid checksum");
+        }
+        return news;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Returns a number of entries, it can't be negative.
+     */
+    private static int readCount(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+}
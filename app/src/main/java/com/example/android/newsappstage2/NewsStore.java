@@ -0,0 +1,266 @@
+package com.example.android.newsappstage2;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.newsappstage2.NewsContract.ArchiveEntry;
+import com.example.android.newsappstage2.NewsContract.NewsEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local store of the last news fetched from the API, so they can be displayed at startup and offline.
+ * The store belongs to one query: saving the news of another query replaces all the stored news.
+ * The news of all the queries are also kept in an archive, for the search offline of {@link NewsArchive}.
+ */
+public class NewsStore {
+
+    /**
+     * Max number of news kept in the store. The oldest news are deleted first.
+     */
+    static final int MAX_STORED_NEWS = 200;
+
+    /**
+     * Name of the preferences file with the query of the stored news
+     */
+    private static final String PREFS_NAME = "news_store";
+
+    private static final String PREF_QUERY = "query";
+
+    private static NewsStore sInstance;
+
+    private final NewsDbHelper mDbHelper;
+
+    private final SharedPreferences mPrefs;
+
+    private NewsStore(Context context) {
+        mDbHelper = new NewsDbHelper(context);
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the single instance of the {@link NewsStore}.
+     */
+    public static synchronized NewsStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NewsStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the stored news of the query, sorted by the given order-by value.
+     * The list is empty if the store has the news of another query.
+     */
+    public List<News> getNews(String query, String orderBy) {
+        List<News> newsList = new ArrayList<>();
+        if (!query.equals(mPrefs.getString(PREF_QUERY, null))) {
+            return newsList;
+        }
+
+        // The relevance isn't stored, so the news are sorted by date like "newest".
+        String sortOrder = NewsEntry.COLUMN_PUBLICATION_DATE
+                + ("oldest".equals(orderBy) ? " ASC" : " DESC");
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(NewsEntry.TABLE_NAME, null, null, null, null, null, sortOrder);
+        readNews(cursor, newsList);
+        return newsList;
+    }
+
+    /**
+     * Add the news of the cursor to the list and close the cursor.
+     */
+    private static void readNews(Cursor cursor, List<News> newsList) {
+        try {
+            int headlineColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_HEADLINE);
+            int trailTextColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_TRAIL_TEXT);
+            int bylineColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_BYLINE);
+            int sectionNameColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_SECTION_NAME);
+            int dateColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_PUBLICATION_DATE);
+            int urlColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_URL);
+            int imageColumnIndex = cursor.getColumnIndex(NewsEntry.COLUMN_IMAGE);
+
+            while (cursor.moveToNext()) {
+                long publicationTime = cursor.isNull(dateColumnIndex)
+                        ? TimestampCodec.INVALID : cursor.getLong(dateColumnIndex);
+                newsList.add(new News(
+                        cursor.getString(headlineColumnIndex),
+                        cursor.getString(trailTextColumnIndex),
+                        cursor.getString(bylineColumnIndex),
+                        cursor.getString(sectionNameColumnIndex),
+                        publicationTime,
+                        cursor.getString(urlColumnIndex),
+                        cursor.getString(imageColumnIndex)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the publication date in epoch milliseconds of the newest stored news of the query,
+     * or {@link TimestampCodec#INVALID} if there isn't any news of the query.
+     */
+    public long getNewestPublicationTime(String query) {
+        if (!query.equals(mPrefs.getString(PREF_QUERY, null))) {
+            return TimestampCodec.INVALID;
+        }
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT MAX(" + NewsEntry.COLUMN_PUBLICATION_DATE + ") FROM "
+                + NewsEntry.TABLE_NAME, null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return TimestampCodec.INVALID;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Insert the news of the query, or update them if their URL is already stored.
+     */
+    public synchronized void save(String query, List<News> newsList) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (!query.equals(mPrefs.getString(PREF_QUERY, null))) {
+                db.delete(NewsEntry.TABLE_NAME, null, null);
+            }
+
+            insertNews(db, NewsEntry.TABLE_NAME, newsList);
+
+            // Keep only the newest news.
+            db.execSQL("DELETE FROM " + NewsEntry.TABLE_NAME + " WHERE " + NewsEntry._ID + " NOT IN (SELECT "
+                    + NewsEntry._ID + " FROM " + NewsEntry.TABLE_NAME + " ORDER BY "
+                    + NewsEntry.COLUMN_PUBLICATION_DATE + " DESC LIMIT " + MAX_STORED_NEWS + ")");
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        mPrefs.edit().putString(PREF_QUERY, query).apply();
+    }
+
+    /**
+     * Receives the archived news in batches.
+     */
+    public interface ArchiveReader {
+        void onBatch(List<News> batch);
+    }
+
+    /**
+     * Read the archived news in the order they were archived, a batch at a time, so the archive is never
+     * all in memory. The news have only the URL and the texts: the headline, the trail text, the byline
+     * and the section.
+     *
+     * @param batchSize is the max number of news of a batch
+     */
+    public void readArchivedTexts(int batchSize, ArchiveReader reader) {
+        String[] projection = {NewsEntry.COLUMN_URL, NewsEntry.COLUMN_HEADLINE, NewsEntry.COLUMN_TRAIL_TEXT,
+                NewsEntry.COLUMN_BYLINE, NewsEntry.COLUMN_SECTION_NAME};
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(ArchiveEntry.TABLE_NAME, projection, null, null, null, null,
+                ArchiveEntry._ID + " ASC");
+        try {
+            List<News> batch = new ArrayList<>(batchSize);
+            while (cursor.moveToNext()) {
+                batch.add(new News(cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                        cursor.getString(4), TimestampCodec.INVALID, cursor.getString(0), null));
+                if (batch.size() == batchSize) {
+                    reader.onBatch(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                reader.onBatch(batch);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the archived news of the URLs, in the order of the URLs. A URL not archived anymore is skipped.
+     */
+    public List<News> getArchivedNews(List<String> urls) {
+        List<News> newsList = new ArrayList<>();
+        if (urls.isEmpty()) {
+            return newsList;
+        }
+        StringBuilder selection = new StringBuilder(NewsEntry.COLUMN_URL + " IN (");
+        for (int i = 0; i < urls.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(')');
+
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(ArchiveEntry.TABLE_NAME, null, selection.toString(),
+                urls.toArray(new String[urls.size()]), null, null, null);
+        readNews(cursor, newsList);
+
+        Map<String, News> newsByUrl = new HashMap<>();
+        for (News news : newsList) {
+            newsByUrl.put(news.getUrl(), news);
+        }
+        newsList.clear();
+        for (String url : urls) {
+            News news = newsByUrl.get(url);
+            if (news != null) {
+                newsList.add(news);
+            }
+        }
+        return newsList;
+    }
+
+    /**
+     * Add the news to the archive of all the queries, a news already archived is replaced and becomes the newest.
+     * Only the last archived news are kept.
+     *
+     * @param maxNews is the max number of news kept in the archive
+     */
+    public synchronized void archive(List<News> newsList, int maxNews) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertNews(db, ArchiveEntry.TABLE_NAME, newsList);
+            db.execSQL("DELETE FROM " + ArchiveEntry.TABLE_NAME + " WHERE " + ArchiveEntry._ID + " NOT IN (SELECT "
+                    + ArchiveEntry._ID + " FROM " + ArchiveEntry.TABLE_NAME + " ORDER BY "
+                    + ArchiveEntry._ID + " DESC LIMIT " + maxNews + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Insert the news in the table, or replace them if their URL is already in the table.
+     */
+    private static void insertNews(SQLiteDatabase db, String tableName, List<News> newsList) {
+        ContentValues values = new ContentValues();
+        for (News news : newsList) {
+            values.clear();
+            values.put(NewsEntry.COLUMN_HEADLINE, news.getHeadline());
+            values.put(NewsEntry.COLUMN_TRAIL_TEXT, news.getTrailText());
+            values.put(NewsEntry.COLUMN_BYLINE, news.getByline());
+            values.put(NewsEntry.COLUMN_SECTION_NAME, news.getSectionName());
+            if (news.hasPublicationTime()) {
+                values.put(NewsEntry.COLUMN_PUBLICATION_DATE, news.getPublicationTime());
+            } else {
+                values.putNull(NewsEntry.COLUMN_PUBLICATION_DATE);
+            }
+            values.put(NewsEntry.COLUMN_URL, news.getUrl());
+            values.put(NewsEntry.COLUMN_IMAGE, news.getImage());
+            db.insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.newsappstage2;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.TrafficStats;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sync in background the news of the query of the preferences and the thumbnails of the first news,
+ * so the next launch of the app displays them at once from the snapshot and the disk cache.
+ * The sync runs periodically with {@link NewsSyncJobService} on an unmetered network while the device
+ * is charging, and every run is recorded in {@link SyncStats}.
+ */
+public class NewsSync {
+
+    private static final String LOG_TAG = NewsSync.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+
+    /**
+     * Min time between two syncs, the system can delay a sync until its constraints are met
+     */
+    private static final long SYNC_INTERVAL_MILLIS = 3 * 60 * 60 * 1000L;
+
+    /**
+     * Number of the first news whose thumbnails are downloaded
+     */
+    private static final int SYNC_THUMBNAILS = 10;
+
+    private final Context mContext;
+
+    public NewsSync(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Schedule the periodic sync, if it isn't already scheduled.
+     * The job scheduler is available from Lollipop, before it the news are synced only when the app is open.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        scheduleJob(context.getApplicationContext());
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        // Scheduling the job again would restart its period at every launch
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, NewsSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Problem scheduling the sync");
+        }
+    }
+
+    /**
+     * Fetch the news of the query, save them in the store and download the thumbnails of the first news.
+     * It blocks, so it must be called off the main thread.
+     *
+     * @param signal stops the sync, i.e. when the constraints of the job aren't met anymore
+     * @return the stats of the sync, they are already recorded
+     */
+    public SyncStats run(CancelSignal signal) {
+        long startTime = System.currentTimeMillis();
+        long start = System.nanoTime();
+        long startBytes = TrafficStats.getUidRxBytes(Process.myUid());
+
+        QueryUtils.init(mContext);
+        NewsQuery query = new NewsQuery(mContext);
+        String url = query.buildRequestUrl();
+        String orderBy = query.getOrderBy();
+        NewsStore store = NewsStore.getInstance(mContext);
+
+        // The sync waits behind the requests of the app, if it's open
+        NewsResult result = NewsRepository.fetchNewNews(store.getNewestPublicationTime(url), query.buildQueryUrls(), orderBy,
+                RequestScheduler.Priority.BACKGROUND, signal, new LoadTimings(), null);
+
+        int thumbnails = 0;
+        if (result.isSuccess()) {
+            List<News> stored;
+            synchronized (store) {
+                if (!signal.isCanceled()) {
+                    store.save(url, result.getNews());
+                }
+                stored = store.getNews(url, orderBy);
+                if (!signal.isCanceled()) {
+                    // The next launch reads the news from the snapshot
+                    NewsSnapshot.getDefault(mContext).write(url, stored);
+                }
+            }
+            thumbnails = prefetchThumbnails(stored, signal);
+        }
+
+        long endBytes = TrafficStats.getUidRxBytes(Process.myUid());
+        long bytes = startBytes == TrafficStats.UNSUPPORTED || endBytes == TrafficStats.UNSUPPORTED
+                ? SyncStats.UNKNOWN : endBytes - startBytes;
+        SyncStats stats = new SyncStats(startTime, signal.isCanceled() ? NewsResult.Status.CANCELLED
+                : result.getStatus(), (System.nanoTime() - start) / 1000000L, bytes,
+                result.getNews().size(), thumbnails);
+        stats.record(mContext);
+        Log.i(LOG_TAG, "Sync " + stats + " (total " + SyncStats.describeTotals(mContext) + ")");
+        return stats;
+    }
+
+    /**
+     * Download the thumbnails of the first news into the disk cache of the {@link ImageLoader}
+     * and return the number of the thumbnails downloaded.
+     */
+    private int prefetchThumbnails(List<News> news, CancelSignal signal) {
+        ImageLoader imageLoader = ImageLoader.getInstance(mContext);
+        int downloaded = 0;
+        for (int i = 0; i < news.size() && i < SYNC_THUMBNAILS && !signal.isCanceled(); i++) {
+            String image = news.get(i).getImage();
+            if (image == null || image.isEmpty()) {
+                continue;
+            }
+            try {
+                if (imageLoader.prefetch(image) > 0) {
+                    downloaded++;
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem fetching the thumbnail " + image, e);
+            }
+        }
+        return downloaded;
+    }
+}
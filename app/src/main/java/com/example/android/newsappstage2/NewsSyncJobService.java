@@ -0,0 +1,54 @@
+package com.example.android.newsappstage2;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run the background {@link NewsSync} scheduled by the job scheduler on its own thread.
+ * The sync is cancelled when its constraints aren't met anymore, i.e. the device is unplugged,
+ * and the job scheduler runs it again later.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class NewsSyncJobService extends JobService {
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private CancelSignal mSignal;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancelSignal signal = new CancelSignal();
+        mSignal = signal;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                new NewsSync(NewsSyncJobService.this).run(signal);
+                if (!signal.isCanceled()) {
+                    jobFinished(params, false);
+                }
+            }
+        });
+        // The sync goes on in background
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mSignal != null) {
+            mSignal.cancel();
+        }
+        // Run the sync again when the constraints are met
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mExecutor.shutdownNow();
+    }
+}
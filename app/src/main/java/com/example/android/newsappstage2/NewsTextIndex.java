@@ -0,0 +1,647 @@
+package com.example.android.newsappstage2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of the words of the headline, trail text (without its html), byline and section of the news,
+ * updated while the news arrive. Every word keeps the positions of its occurrences, so a query can have:
+ * <ul>
+ * <li>words, i.e. <code>brexit vote</code>: all the words must match;</li>
+ * <li>prefixes, i.e. <code>foot*</code>: any word that starts with the prefix matches;</li>
+ * <li>phrases, i.e. <code>"world cup"</code>: the words must be consecutive in the same field.</li>
+ * </ul>
+ * The news are ranked with BM25, a word of the headline counts more than a word of the other fields.
+ * The index keeps only the URLs of the news and the postings, the news of a search are loaded by their URL,
+ * i.e. from the {@link NewsStore}. A news added again with the same URL replaces the previous one and
+ * becomes the newest, like in the archive of the store, so both remove the same news first.
+ * All the methods are thread safe.
+ */
+public class NewsTextIndex {
+
+    /**
+     * Fields of a news, the position of a word is its field in the high bits and its index in the low bits,
+     * so the words of a phrase are never in two fields
+     */
+    private static final int FIELD_SHIFT = 16;
+    private static final int MAX_FIELD_POSITION = (1 << FIELD_SHIFT) - 1;
+    private static final int FIELD_HEADLINE = 0;
+
+    /**
+     * Weight of the words of the headline, the words of the other fields count 1
+     */
+    private static final float HEADLINE_WEIGHT = 3f;
+
+    /**
+     * Parameters of BM25: saturation of the term frequency and normalization of the length
+     */
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    /**
+     * The postings are compacted when the removed news are more than a quarter of the news,
+     * and at least this number, so a small index isn't compacted at every removal
+     */
+    private static final int MIN_REMOVED_TO_COMPACT = 64;
+
+    /**
+     * URL of the news by id, null if the news was removed. The ids grow in the order of arrival.
+     */
+    private String[] mUrls = new String[64];
+
+    /**
+     * Number of words of every news
+     */
+    private int[] mLengths = new int[64];
+
+    /**
+     * Number of ids assigned, also of the removed news
+     */
+    private int mIdCount;
+
+    /**
+     * Number of news not removed
+     */
+    private int mSize;
+
+    private long mTotalLength;
+
+    /**
+     * Lowest id that can be of a news not removed
+     */
+    private int mOldestId;
+
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    /**
+     * Postings of every word, sorted so a prefix is a range of words
+     */
+    private final TreeMap<String, Postings> mPostings = new TreeMap<>();
+
+    /**
+     * Add the news to the index, a news with the URL of an indexed news replaces it with a new id,
+     * so it's removed after the news added before it.
+     */
+    public synchronized void add(List<News> newsList) {
+        List<String> tokens = new ArrayList<>();
+        for (News news : newsList) {
+            Integer previousId = mIds.get(news.getUrl());
+            if (previousId != null) {
+                removeId(previousId);
+            }
+            int id = mIdCount++;
+            ensureCapacity(mIdCount);
+            mUrls[id] = news.getUrl();
+            mIds.put(news.getUrl(), id);
+            mSize++;
+
+            tokens.clear();
+            NewsSearchIndex.tokenize(news.getHeadline(), tokens);
+            int headlineEnd = tokens.size();
+            NewsSearchIndex.tokenizeHtml(news.getTrailText(), tokens);
+            int trailEnd = tokens.size();
+            NewsSearchIndex.tokenize(news.getByline(), tokens);
+            int bylineEnd = tokens.size();
+            NewsSearchIndex.tokenize(news.getSectionName(), tokens);
+            int[] fieldEnds = {headlineEnd, trailEnd, bylineEnd, tokens.size()};
+
+            mLengths[id] = tokens.size();
+            mTotalLength += tokens.size();
+            indexTokens(id, tokens, fieldEnds);
+        }
+        compactIfSparse();
+    }
+
+    /**
+     * Remove the news of the URL, if it's indexed.
+     */
+    public synchronized void remove(String url) {
+        Integer id = mIds.get(url);
+        if (id != null) {
+            removeId(id);
+            compactIfSparse();
+        }
+    }
+
+    /**
+     * Remove the news added first, i.e. to keep the index within a max number of news.
+     * Returns the URL of the news removed, null if the index is empty.
+     */
+    public synchronized String removeOldest() {
+        while (mOldestId < mIdCount && mUrls[mOldestId] == null) {
+            mOldestId++;
+        }
+        if (mOldestId == mIdCount) {
+            return null;
+        }
+        String url = mUrls[mOldestId];
+        removeId(mOldestId);
+        compactIfSparse();
+        return url;
+    }
+
+    /**
+     * Returns the number of the news in the index.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of the distinct words in the index.
+     */
+    public synchronized int getWordCount() {
+        return mPostings.size();
+    }
+
+    /**
+     * Returns an estimate of the memory of the words and of their postings in bytes, without the URLs.
+     */
+    public synchronized long getSizeBytes() {
+        // An entry of the tree, the string with its array and the postings with their array
+        long bytes = 0;
+        for (Map.Entry<String, Postings> entry : mPostings.entrySet()) {
+            bytes += 40 + 40 + 2 * entry.getKey().length() + 32 + 16 + entry.getValue().mData.length;
+        }
+        return bytes + 8L * mUrls.length + 4L * mLengths.length;
+    }
+
+    /**
+     * Returns the URLs of the news that match all the words, prefixes and phrases of the query,
+     * from the highest rank. An empty query returns no news.
+     *
+     * @param limit is the max number of news returned
+     */
+    public synchronized List<String> search(String query, int limit) {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty() || mSize == 0) {
+            return new ArrayList<>();
+        }
+
+        // After the clause i, a news has matches == i + 1 only if it matched all the clauses so far
+        int[] matches = new int[mIdCount];
+        float[] scores = new float[mIdCount];
+        float averageLength = (float) mTotalLength / mSize;
+        for (int i = 0; i < clauses.size(); i++) {
+            if (!clauses.get(i).match(i, matches, scores, averageLength)) {
+                return new ArrayList<>();
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < mIdCount; id++) {
+            if (matches[id] == clauses.size() && mUrls[id] != null) {
+                ids.add(id);
+            }
+        }
+        final float[] finalScores = scores;
+        Collections.sort(ids, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int byScore = Float.compare(finalScores[second], finalScores[first]);
+                // The same rank goes to the newest arrival
+                return byScore != 0 ? byScore : second - first;
+            }
+        });
+
+        List<String> result = new ArrayList<>(Math.min(limit, ids.size()));
+        for (int i = 0; i < ids.size() && i < limit; i++) {
+            result.add(mUrls[ids.get(i)]);
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mUrls.length) {
+            int newLength = Math.max(capacity, mUrls.length * 2);
+            mUrls = Arrays.copyOf(mUrls, newLength);
+            mLengths = Arrays.copyOf(mLengths, newLength);
+        }
+    }
+
+    /**
+     * Add the postings of the words of a news, grouped by word with their positions in ascending order.
+     */
+    private void indexTokens(int id, List<String> tokens, int[] fieldEnds) {
+        Map<String, IntList> positions = new HashMap<>();
+        int field = 0;
+        int fieldStart = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            while (i >= fieldEnds[field]) {
+                fieldStart = fieldEnds[field];
+                field++;
+            }
+            IntList wordPositions = positions.get(tokens.get(i));
+            if (wordPositions == null) {
+                wordPositions = new IntList();
+                positions.put(tokens.get(i), wordPositions);
+            }
+            wordPositions.add((field << FIELD_SHIFT) | Math.min(i - fieldStart, MAX_FIELD_POSITION));
+        }
+        for (Map.Entry<String, IntList> entry : positions.entrySet()) {
+            Postings postings = mPostings.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                mPostings.put(entry.getKey(), postings);
+            }
+            IntList wordPositions = entry.getValue();
+            postings.add(id, wordPositions.mValues, wordPositions.mSize);
+        }
+    }
+
+    /**
+     * Remove the news of the id. Its postings are skipped until the index is compacted.
+     */
+    private void removeId(int id) {
+        mIds.remove(mUrls[id]);
+        mUrls[id] = null;
+        mSize--;
+        mTotalLength -= mLengths[id];
+    }
+
+    /**
+     * Build again the postings when more than a quarter of them are of removed news. The news keep their order
+     * with new consecutive ids, the texts aren't kept so the postings are copied with the new ids.
+     */
+    private void compactIfSparse() {
+        int removed = mIdCount - mSize;
+        if (removed < MIN_REMOVED_TO_COMPACT || removed <= mSize / 4) {
+            return;
+        }
+        int[] newIds = new int[mIdCount];
+        int capacity = Math.max(64, mSize);
+        String[] urls = new String[capacity];
+        int[] lengths = new int[capacity];
+        int newIdCount = 0;
+        for (int id = 0; id < mIdCount; id++) {
+            if (mUrls[id] == null) {
+                newIds[id] = -1;
+                continue;
+            }
+            newIds[id] = newIdCount;
+            urls[newIdCount] = mUrls[id];
+            lengths[newIdCount] = mLengths[id];
+            mIds.put(mUrls[id], newIdCount);
+            newIdCount++;
+        }
+
+        Iterator<Map.Entry<String, Postings>> entries = mPostings.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Postings> entry = entries.next();
+            Postings postings = new Postings();
+            Cursor cursor = new Cursor(entry.getValue());
+            while (cursor.next()) {
+                int newId = newIds[cursor.mId];
+                if (newId >= 0) {
+                    postings.add(newId, cursor.mPositions, cursor.mCount);
+                }
+            }
+            // A word only of removed news isn't indexed anymore
+            if (postings.mNewsCount == 0) {
+                entries.remove();
+            } else {
+                entry.setValue(postings);
+            }
+        }
+
+        mUrls = urls;
+        mLengths = lengths;
+        mIdCount = newIdCount;
+        mOldestId = 0;
+    }
+
+    /**
+     * Returns the clauses of the query: the words outside quotes are words or prefixes,
+     * the words inside quotes are a phrase.
+     */
+    private List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        if (query == null) {
+            return clauses;
+        }
+        List<String> phrase = null;
+        int length = query.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+            if (start >= 0) {
+                String word = query.substring(start, i).toLowerCase(Locale.ROOT);
+                start = -1;
+                if (phrase != null) {
+                    phrase.add(word);
+                } else if (c == '*') {
+                    clauses.add(new PrefixClause(word));
+                } else {
+                    clauses.add(new PhraseClause(Collections.singletonList(word)));
+                }
+            }
+            if (c == '"' || (i == length && phrase != null)) {
+                if (phrase == null) {
+                    phrase = new ArrayList<>();
+                } else {
+                    if (!phrase.isEmpty()) {
+                        clauses.add(new PhraseClause(phrase));
+                    }
+                    phrase = null;
+                }
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * Returns the BM25 score of a word in a news.
+     *
+     * @param frequency is the weighted number of occurrences of the word in the news
+     * @param newsCount is the number of the news with the word
+     */
+    private float score(float frequency, int newsCount, int id, float averageLength) {
+        float idf = (float) Math.log(1 + (mSize - newsCount + 0.5) / (newsCount + 0.5));
+        float norm = K1 * (1 - B + B * mLengths[id] / averageLength);
+        return idf * frequency * (K1 + 1) / (frequency + norm);
+    }
+
+    private static float weight(int position) {
+        return (position >>> FIELD_SHIFT) == FIELD_HEADLINE ? HEADLINE_WEIGHT : 1f;
+    }
+
+    /**
+     * A part of the query that all the matched news must have.
+     */
+    private interface Clause {
+        /**
+         * Set matches to index + 1 and add the score of the clause for every news that matches the clause
+         * and all the previous clauses. Returns false if no news matches.
+         */
+        boolean match(int index, int[] matches, float[] scores, float averageLength);
+    }
+
+    /**
+     * A prefix matches the news with any word that starts with it.
+     */
+    private class PrefixClause implements Clause {
+
+        private final String mPrefix;
+
+        PrefixClause(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public boolean match(int index, int[] matches, float[] scores, float averageLength) {
+            boolean matched = false;
+            SortedMap<String, Postings> words = mPostings.subMap(mPrefix, mPrefix + Character.MAX_VALUE);
+            for (Postings postings : words.values()) {
+                Cursor cursor = new Cursor(postings);
+                while (cursor.next()) {
+                    int id = cursor.mId;
+                    // A news can match more words of the prefix
+                    if (mUrls[id] == null || (matches[id] != index && matches[id] != index + 1)) {
+                        continue;
+                    }
+                    float frequency = 0;
+                    for (int p = 0; p < cursor.mCount; p++) {
+                        frequency += weight(cursor.position(p));
+                    }
+                    matches[id] = index + 1;
+                    scores[id] += score(frequency, postings.mNewsCount, id, averageLength);
+                    matched = true;
+                }
+            }
+            return matched;
+        }
+    }
+
+    /**
+     * A phrase matches the news with its words in consecutive positions of a field, one word is a phrase too.
+     */
+    private class PhraseClause implements Clause {
+
+        private final List<String> mWords;
+
+        PhraseClause(List<String> words) {
+            mWords = words;
+        }
+
+        @Override
+        public boolean match(int index, int[] matches, float[] scores, float averageLength) {
+            Cursor[] cursors = new Cursor[mWords.size()];
+            for (int w = 0; w < cursors.length; w++) {
+                Postings postings = mPostings.get(mWords.get(w));
+                if (postings == null) {
+                    return false;
+                }
+                cursors[w] = new Cursor(postings);
+            }
+
+            boolean matched = false;
+            while (cursors[0].next()) {
+                int id = cursors[0].mId;
+                if (mUrls[id] == null || matches[id] != index) {
+                    continue;
+                }
+                boolean allWords = true;
+                for (int w = 1; w < cursors.length && allWords; w++) {
+                    allWords = cursors[w].advance(id);
+                }
+                if (!allWords) {
+                    continue;
+                }
+                float frequency = phraseFrequency(cursors);
+                if (frequency == 0) {
+                    continue;
+                }
+                matches[id] = index + 1;
+                // The phrase scores as the sum of its words, with the number of occurrences of the phrase
+                for (Cursor cursor : cursors) {
+                    scores[id] += score(frequency, cursor.mPostings.mNewsCount, id, averageLength);
+                }
+                matched = true;
+            }
+            return matched;
+        }
+
+        /**
+         * Returns the weighted number of occurrences of the phrase in the news of the cursors.
+         */
+        private float phraseFrequency(Cursor[] cursors) {
+            float frequency = 0;
+            Cursor first = cursors[0];
+            for (int p = 0; p < first.mCount; p++) {
+                int position = first.position(p);
+                boolean found = true;
+                for (int w = 1; w < cursors.length && found; w++) {
+                    found = cursors[w].hasPosition(position + w);
+                }
+                if (found) {
+                    frequency += weight(position);
+                }
+            }
+            return frequency;
+        }
+    }
+
+    /**
+     * Postings of a word: for every news with the word, in ascending order of id, the id, the number
+     * of occurrences and their positions in ascending order. The ids and the positions are written as the
+     * difference from the previous one, in varints of 7 bits per byte, so most of them take one byte.
+     */
+    private static class Postings {
+
+        private byte[] mData = new byte[8];
+
+        private int mLength;
+
+        private int mLastId;
+
+        /**
+         * Number of the news with the word, also removed ones until the index is compacted
+         */
+        private int mNewsCount;
+
+        /**
+         * Add a news with an id greater than the ids of the postings.
+         *
+         * @param positions are the positions of the word in the news, in ascending order
+         * @param count     is the number of the positions
+         */
+        private void add(int id, int[] positions, int count) {
+            // An int takes at most 5 bytes
+            int needed = mLength + 5 * (2 + count);
+            if (needed > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(needed, mData.length * 2));
+            }
+            writeVarint(id - mLastId);
+            writeVarint(count);
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                writeVarint(positions[i] - previous);
+                previous = positions[i];
+            }
+            mLastId = id;
+            mNewsCount++;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                mData[mLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mData[mLength++] = (byte) value;
+        }
+    }
+
+    /**
+     * Reads the postings of a word one news at a time.
+     */
+    private static class Cursor {
+
+        private final Postings mPostings;
+
+        /**
+         * Offset of the next news in the postings
+         */
+        private int mNext;
+
+        private int mId;
+
+        private int mCount;
+
+        /**
+         * Positions of the current news
+         */
+        private int[] mPositions = new int[4];
+
+        Cursor(Postings postings) {
+            mPostings = postings;
+        }
+
+        /**
+         * Move to the next news, returns false at the end of the postings.
+         */
+        boolean next() {
+            if (mNext >= mPostings.mLength) {
+                mId = Integer.MAX_VALUE;
+                return false;
+            }
+            mId += readVarint();
+            mCount = readVarint();
+            if (mCount > mPositions.length) {
+                mPositions = new int[Math.max(mCount, mPositions.length * 2)];
+            }
+            int position = 0;
+            for (int i = 0; i < mCount; i++) {
+                position += readVarint();
+                mPositions[i] = position;
+            }
+            return true;
+        }
+
+        /**
+         * Move to the news of the id, if the word has it. Returns false if it hasn't.
+         * The ids must be requested in ascending order.
+         */
+        boolean advance(int id) {
+            // Before the first news mId is 0 but no news is read
+            while (mNext == 0 || mId < id) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return mId == id;
+        }
+
+        int position(int index) {
+            return mPositions[index];
+        }
+
+        boolean hasPosition(int position) {
+            return Arrays.binarySearch(mPositions, 0, mCount, position) >= 0;
+        }
+
+        private int readVarint() {
+            byte[] data = mPostings.mData;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[mNext++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Growable list of positions, without the boxing of a List<Integer>.
+     */
+    private static class IntList {
+
+        private int[] mValues = new int[2];
+
+        private int mSize;
+
+        private void add(int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+    }
+}
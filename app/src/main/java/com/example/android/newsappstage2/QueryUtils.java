@@ -1,12 +1,16 @@
 package com.example.android.newsappstage2;
 
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -14,11 +18,17 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class QueryUtils {
 
@@ -33,87 +43,304 @@ public class QueryUtils {
     public static final int READ_TIMEOUT = 10000;
     public static final int CONNECT_TIMEOUT = 15000;
 
+    /**
+     * Size of the buffer of the characters read from the response
+     */
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
 
 
-    private QueryUtils() {
-    }
 
     /**
-     * Send query to Guardian API and return a list of {@link News} objects.
+     * Max size of the cache of the API responses (2MB)
      */
-    public static List<News> fetchNewsData(String requestUrl) {
+    private static final long HTTP_CACHE_SIZE = 2 * 1024 * 1024;
 
-        Log.v("requestURL", requestUrl);
+    private static boolean sInitialized;
 
-        // Create URL object
-        URL url = createUrl(requestUrl);
+    /**
+     * Schedules the requests within the rate limit of the API
+     */
+    private static volatile RequestScheduler sScheduler = RequestScheduler.getDefault();
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
-        try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
-        }
+    /**
+     * Source of the responses, the Guardian API unless it's replaced, i.e. by a replay in the tests
+     */
+    private static volatile FeedSource sSource = new GuardianFeedSource();
+
+    /**
+     * Receives all the news fetched for the search offline, null until {@link #init(Context)}
+     */
+    private static volatile NewsArchive sArchive;
+
+    /**
+     * Time of the read and parse of a response, the body is parsed while it's read
+     */
+    private static final Metrics.Histogram sParseTime = Metrics.histogram("news.parse");
+
+    private static final Metrics.Counter sParsedNews = Metrics.counter("news.parsed");
 
-        // If there is a number error return newsList with the error number in Headline object.
-        if(isNumeric(jsonResponse)){
-            ArrayList<News> newsList = new ArrayList<>();
-            News newsObj = new News(jsonResponse, null, null, null, null, null, null );
-            // Add the new {@link News} to the list of newsList.
-            newsList.add(newsObj);
-            return newsList;
+    /**
+     * Fetches in flight by request URL, a request for the same URL waits for the same fetch
+     */
+    private static final Map<String, InFlightFetch> sInFlight = new HashMap<>();
+
+    /**
+     * Time between the checks of the cancellation while waiting for a fetch of another thread
+     */
+    private static final long JOIN_POLL_MILLIS = 100;
+
+    private QueryUtils() {
+    }
+
+    /**
+     * Set up the cache of the API responses of the shared {@link HttpClient} in the cache directory of the app,
+     * and the {@link NewsArchive} of the fetched news.
+     */
+    public static synchronized void init(Context context) {
+        if (sInitialized) {
+            return;
         }
+        File cacheDir = new File(context.getApplicationContext().getCacheDir(), "http");
+        HttpClient.getDefault().setCache(new HttpCache(cacheDir, HTTP_CACHE_SIZE));
+        sArchive = NewsArchive.getInstance(context);
+        sInitialized = true;
+    }
 
+    /**
+     * Replace the scheduler of the requests, i.e. with the limits of another API key.
+     */
+    static void setScheduler(RequestScheduler scheduler) {
+        sScheduler = scheduler;
+    }
 
-        // Ready to extract relevant fields from the JSON response API and create a list of {@link News}
-        List<News> newsList = extractNews(jsonResponse);
+    /**
+     * Replace the source of the responses, i.e. with a replay of recorded responses.
+     */
+    static void setFeedSource(FeedSource source) {
+        sSource = source;
+    }
 
-        // Return the list of news
-        return newsList;
+    /**
+     * Send query to Guardian API and return the {@link NewsResult} with the list of {@link News} objects.
+     * If the same URL is already being fetched by another thread, its result is returned instead.
+     */
+    public static NewsResult fetchNewsData(String requestUrl) {
+        return fetchNewsData(requestUrl, new CancelSignal(), new LoadTimings());
+    }
+
+    /**
+     * Send query to Guardian API with the foreground priority and return the {@link NewsResult}
+     * with the list of {@link News} objects.
+     *
+     * @param signal  cancels the fetch
+     * @param timings receives the time of the fetch and of the parse
+     */
+    public static NewsResult fetchNewsData(String requestUrl, CancelSignal signal, LoadTimings timings) {
+        return fetchNewsData(requestUrl, RequestScheduler.Priority.FOREGROUND, signal, timings);
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Send query to Guardian API when the {@link RequestScheduler} allows it and return the {@link NewsResult}
+     * with the list of {@link News} objects. A fetch rate limited by the API is sent again after a backoff.
+     * If the same URL is already being fetched by another thread, its result is returned instead.
+     * The fetch is aborted, also in the middle of the body, when all its callers are cancelled.
+     *
+     * @param priority is the priority of the request in the scheduler
+     * @param signal   cancels the fetch
+     * @param timings  receives the time of the fetch and of the parse
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    public static NewsResult fetchNewsData(final String requestUrl, RequestScheduler.Priority priority,
+                                           CancelSignal signal, LoadTimings timings) {
+        InFlightFetch fetch;
+        boolean owner = false;
+        synchronized (sInFlight) {
+            fetch = sInFlight.get(requestUrl);
+            if (fetch == null) {
+                fetch = new InFlightFetch(requestUrl, priority, timings);
+                sInFlight.put(requestUrl, fetch);
+                owner = true;
+            }
+            fetch.mWaiters++;
+        }
+
+        final InFlightFetch joined = fetch;
+        final AtomicBoolean left = new AtomicBoolean();
+        Runnable leave = new Runnable() {
+            @Override
+            public void run() {
+                if (left.compareAndSet(false, true)) {
+                    joined.leave();
+                }
+            }
+        };
+        signal.addOnCancelListener(leave);
+
+        try {
+            if (owner) {
+                try {
+                    fetch.mTask.run();
+                } finally {
+                    synchronized (sInFlight) {
+                        if (sInFlight.get(requestUrl) == fetch) {
+                            sInFlight.remove(requestUrl);
+                        }
+                    }
+                }
+            } else {
+                Log.v(LOG_TAG, "Joined the fetch in flight of " + requestUrl);
+            }
+
+            while (!signal.isCanceled()) {
+                try {
+                    // The result is immutable, so it's shared by all the callers
+                    return fetch.mTask.get(JOIN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Check again the cancellation
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem fetching the news.", e.getCause());
+                    return NewsResult.failure(NewsResult.Status.NETWORK_ERROR);
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+            return NewsResult.failure(NewsResult.Status.CANCELLED);
+        } finally {
+            signal.removeOnCancelListener(leave);
+            leave.run();
+        }
+    }
+
+    private static NewsResult fetch(String requestUrl, RequestScheduler.Priority priority,
+                                    final CancelSignal signal, final LoadTimings timings) {
+
+        Log.v("requestURL", requestUrl);
+
+        // Create URL object
+        final URL url = createUrl(requestUrl);
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return NewsResult.failure(NewsResult.Status.HTTP_ERROR);
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        // Perform HTTP request to the URL, in the rate limit of the API,
+        // and parse the JSON response while it's read
+        return sScheduler.execute(priority, new RequestScheduler.Call() {
+            @Override
+            public NewsResult execute() {
+                return makeHttpRequest(url, signal, timings);
+            }
+        }, signal);
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return the {@link NewsResult} parsed from the response.
+     * The request is aborted when the signal is cancelled, so a blocked read returns at once.
+     */
+    private static NewsResult makeHttpRequest(URL url, CancelSignal signal, LoadTimings timings) {
+        if (signal.isCanceled()) {
+            return NewsResult.failure(NewsResult.Status.CANCELLED);
+        }
+
+        HttpClient.Response response = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(READ_TIMEOUT /* milliseconds */);
-            urlConnection.setConnectTimeout(CONNECT_TIMEOUT /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            // The client of the Guardian source keeps the connection alive, so the next page reuses it
+            long start = System.nanoTime();
+            response = sSource.fetch(url, signal);
+            timings.addFetch(System.nanoTime() - start);
+
+            // If the request was successful (response code 200, from the network or the cache),
+            // then parse the input stream while it's read.
+            List<News> newsList = new ArrayList<>();
+            if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                start = System.nanoTime();
+                long parseStart = sParseTime.begin();
+                try {
+                    newsList = readNews(response.getBody());
+                } catch (MalformedJsonException | IllegalStateException e) {
+                    Log.e(LOG_TAG, "Problem parsing the news JSON results", e);
+                    return NewsResult.failure(NewsResult.Status.PARSE_ERROR);
+                } finally {
+                    sParseTime.end(parseStart);
+                    timings.addParse(System.nanoTime() - start);
+                }
+                sParsedNews.add(newsList.size());
+                NewsArchive archive = sArchive;
+                if (archive != null && !newsList.isEmpty()) {
+                    archive.add(newsList);
+                }
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
-                //Return response code with number erro
-                return String.valueOf(urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + response.getCode());
             }
+            return NewsResult.fromResponse(response.getCode(), newsList,
+                    response.getHeader("X-RateLimit-Remaining-minute"),
+                    response.getHeader("Retry-After"),
+                    System.currentTimeMillis());
         } catch (IOException e) {
+            if (signal.isCanceled()) {
+                Log.v(LOG_TAG, "Fetch cancelled: " + url);
+                return NewsResult.failure(NewsResult.Status.CANCELLED);
+            }
             Log.e(LOG_TAG, "Problem retrieving the news JSON results.", e);
+            return NewsResult.failure(NewsResult.Status.NETWORK_ERROR);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    // The result is already read
+                }
+            }
+        }
+    }
+
+    /**
+     * A fetch shared by the callers of the same URL. It's aborted only when all its callers are cancelled.
+     */
+    private static class InFlightFetch {
+
+        private final String mRequestUrl;
+
+        private final CancelSignal mSignal = new CancelSignal();
+
+        private final FutureTask<NewsResult> mTask;
+
+        /**
+         * Number of callers waiting for the fetch, guarded by sInFlight
+         */
+        private int mWaiters;
+
+        private InFlightFetch(final String requestUrl, final RequestScheduler.Priority priority,
+                              final LoadTimings timings) {
+            mRequestUrl = requestUrl;
+            mTask = new FutureTask<>(new Callable<NewsResult>() {
+                @Override
+                public NewsResult call() {
+                    return fetch(requestUrl, priority, mSignal, timings);
+                }
+            });
+        }
+
+        /**
+         * A caller doesn't wait anymore, i.e. it has been cancelled or it has the result.
+         */
+        private void leave() {
+            boolean abort;
+            synchronized (sInFlight) {
+                mWaiters--;
+                abort = mWaiters == 0 && !mTask.isDone();
+                // A new caller of the URL starts a new fetch
+                if (abort && sInFlight.get(mRequestUrl) == this) {
+                    sInFlight.remove(mRequestUrl);
+                }
             }
-            if (inputStream != null) {
-                inputStream.close();
+            if (abort) {
+                mSignal.cancel();
             }
         }
-        return jsonResponse;
     }
 
     /**
@@ -132,8 +359,9 @@ public class QueryUtils {
     /**
      * Return a list of {@link News} objects that has been built up from
      * parsing a JSON response.
+     * It keeps the whole response in memory, {@link #extractNews(InputStream)} is used to read the network.
      */
-    private static ArrayList<News> extractNews(String newsJSON) {
+    static ArrayList<News> extractNews(String newsJSON) {
 
         // Create an empty ArrayList that we can start adding news to
         ArrayList<News> newsList = new ArrayList<>();
@@ -165,16 +393,7 @@ public class QueryUtils {
                 // Extract and parse default pattern of the key value "webPublicationDate" with date and hour of publication
                 String webPublicationDate = currentResult.optString("webPublicationDate");
 
-                Date dateNews = null;
-
-                if (!webPublicationDate.equals("")) {
-                    SimpleDateFormat parser = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", java.util.Locale.getDefault());
-                    try {
-                        dateNews = parser.parse(webPublicationDate);
-                    } catch (ParseException e) {
-                        Log.e(LOG_TAG, "Problem parsing the news date", e);
-                    }
-                }
+                long dateNews = TimestampCodec.parse(webPublicationDate);
 
                 // Grab "Fields" element with other request pieces of information
                 JSONObject currentField = currentResult.getJSONObject("fields");
@@ -211,26 +430,189 @@ public class QueryUtils {
         return newsList;
     }
 
+    /**
+     * Return a list of {@link News} objects parsed while the JSON response is read from the stream.
+     * Only "response.results" is kept, every other value is skipped.
+     * The result is the same of {@link #extractNews(String)} for the same response.
+     */
+    static ArrayList<News> extractNews(InputStream inputStream) {
+
+        // Create an empty ArrayList that we can start adding news to
+        ArrayList<News> newsList = new ArrayList<>();
+
+        try {
+            readNews(inputStream, newsList);
+        } catch (IOException | IllegalStateException e) {
+            // The news read before the error are returned, like the catch in extractNews(String).
+            Log.e(LOG_TAG, "Problem parsing the news JSON results", e);
+        }
+
+        // Return the list of news
+        return newsList;
+    }
+
+    /**
+     * Return a list of {@link News} objects parsed while the JSON response is read from the stream.
+     *
+     * @throws MalformedJsonException or IllegalStateException if the response isn't the JSON expected,
+     *                                IOException if the stream fails
+     */
+    private static ArrayList<News> readNews(InputStream inputStream) throws IOException {
+        ArrayList<News> newsList = new ArrayList<>();
+        readNews(inputStream, newsList);
+        return newsList;
+    }
+
+    private static void readNews(InputStream inputStream, List<News> newsList) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("response")) {
+                readResponse(reader, newsList);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "response" object and add every news of "results" to the list.
+     */
+    private static void readResponse(JsonReader reader, List<News> newsList) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("results")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    newsList.add(readResult(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read one object of "results" into a {@link News}.
+     */
+    private static News readResult(JsonReader reader) throws IOException {
+        String sectionName = "";
+        String headline = "";
+        String webUrl = "";
+        String webPublicationDate = "";
+        String[] fields = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sectionName":
+                    sectionName = readOptString(reader);
+                    break;
+                case "webTitle":
+                    headline = readOptString(reader);
+                    break;
+                case "webUrl":
+                    webUrl = readOptString(reader);
+                    break;
+                case "webPublicationDate":
+                    webPublicationDate = readOptString(reader);
+                    break;
+                case "fields":
+                    fields = readFields(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        // Like getJSONObject("fields"), a news without fields stops the parsing.
+        if (fields == null) {
+            throw new MalformedJsonException("No value for fields");
+        }
+
+        long dateNews = TimestampCodec.parse(webPublicationDate);
+        return new News(headline, fields[0], fields[1], sectionName, dateNews, webUrl, fields[2]);
+    }
+
+    /**
+     * Read the "fields" object and return trailText, byline and thumbnail.
+     */
+    private static String[] readFields(JsonReader reader) throws IOException {
+        String trailText = "";
+        String byline = "";
+        String thumbnail = "";
+
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new MalformedJsonException("Value of fields is not an object");
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "trailText":
+                    trailText = readOptString(reader);
+                    break;
+                case "byline":
+                    // Prevent null value
+                    byline = reader.peek() == JsonToken.NULL ? readNull(reader) : readOptString(reader);
+                    break;
+                case "thumbnail":
+                    // Prevent null value
+                    thumbnail = reader.peek() == JsonToken.NULL ? readNull(reader) : readOptString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new String[]{trailText, byline, thumbnail};
+    }
+
+    /**
+     * Read a value as String with the same result of {@link JSONObject#optString(String)}.
+     */
+    private static String readOptString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return "null";
+            default:
+                reader.skipValue();
+                return "";
+        }
+    }
+
+    private static String readNull(JsonReader reader) throws IOException {
+        reader.nextNull();
+        return "";
+    }
+
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
+     * The characters are read with a fixed buffer, so the newlines of the response are kept.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
         if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+            InputStreamReader reader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            char[] buffer = new char[READ_BUFFER_SIZE];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                output.append(buffer, 0, count);
             }
         }
         return output.toString();
     }
 
-    private static boolean isNumeric(String s) {
-        return s != null && s.matches("[-+]?\\d*\\.?\\d+");
-    }
-
 }
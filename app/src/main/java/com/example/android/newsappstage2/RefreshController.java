@@ -0,0 +1,100 @@
+package com.example.android.newsappstage2;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Refresh the news when the preferences of the query change.
+ * The changes are debounced, so a burst of edits triggers only one refresh after the last change,
+ * and the refresh is skipped when the request URL hasn't changed.
+ * All the methods must be called from the main thread.
+ */
+public class RefreshController implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    /**
+     * Builds the request URL of the preferences and loads it.
+     */
+    public interface Callback {
+        String buildRequestUrl();
+
+        void onRefresh(String requestUrl);
+    }
+
+    private final SharedPreferences mPreferences;
+
+    /**
+     * Keys of the preferences used by the query
+     */
+    private final Set<String> mKeys;
+
+    private final long mDebounceMillis;
+
+    private final Callback mCallback;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * URL of the news currently loaded
+     */
+    private String mRequestUrl;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            String requestUrl = mCallback.buildRequestUrl();
+            if (!requestUrl.equals(mRequestUrl)) {
+                mRequestUrl = requestUrl;
+                mCallback.onRefresh(requestUrl);
+            }
+        }
+    };
+
+    /**
+     * Constructs a new {@link RefreshController}.
+     *
+     * @param preferences    are the preferences with the query
+     * @param debounceMillis is the time without changes before the refresh
+     * @param requestUrl     is the URL of the news currently loaded
+     * @param callback       loads the news of the new URL
+     * @param keys           are the keys of the preferences used by the query
+     */
+    public RefreshController(SharedPreferences preferences, long debounceMillis, String requestUrl,
+                             Callback callback, String... keys) {
+        mPreferences = preferences;
+        mDebounceMillis = debounceMillis;
+        mRequestUrl = requestUrl;
+        mCallback = callback;
+        mKeys = new HashSet<>(Arrays.asList(keys));
+    }
+
+    /**
+     * Start listening to the preferences. The preferences keep only a weak reference to the listener,
+     * so the controller must be referenced by its owner.
+     */
+    public void start() {
+        mPreferences.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    /**
+     * Stop listening to the preferences and drop the pending refresh.
+     */
+    public void stop() {
+        mPreferences.unregisterOnSharedPreferenceChangeListener(this);
+        mHandler.removeCallbacks(mRefresh);
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (!mKeys.contains(key)) {
+            return;
+        }
+        // Every change postpones the refresh
+        mHandler.removeCallbacks(mRefresh);
+        mHandler.postDelayed(mRefresh, mDebounceMillis);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.newsappstage2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Responses recorded in the files of a directory, so the news of a session can be loaded again offline.
+ * The response of a request is the file named by the MD5 of its URL without the API key, i.e.
+ * "3f2a...9c.json", like the files of {@link DiskCache}; a request without a recorded file gets
+ * "default.json", or 404 Not Found without it.
+ * The responses are recorded with {@link #record(URL, byte[])}.
+ */
+public class ReplayFeedSource implements FeedSource {
+
+    /**
+     * Response of the requests that weren't recorded
+     */
+    public static final String DEFAULT_FILE_NAME = "default.json";
+
+    private final File mDirectory;
+
+    /**
+     * Constructs a new {@link ReplayFeedSource}.
+     *
+     * @param directory has the recorded responses
+     */
+    public ReplayFeedSource(File directory) {
+        mDirectory = directory;
+    }
+
+    @Override
+    public HttpClient.Response fetch(URL url, CancelSignal signal) throws IOException {
+        File file = fileOf(url);
+        if (!file.isFile()) {
+            file = new File(mDirectory, DEFAULT_FILE_NAME);
+        }
+        if (!file.isFile()) {
+            return new HttpClient.Response(HttpURLConnection.HTTP_NOT_FOUND, null,
+                    Collections.<String, String>emptyMap());
+        }
+        InputStream body = new FileInputStream(file);
+        return new HttpClient.Response(HttpURLConnection.HTTP_OK, body, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Record the body of the 200 OK response of the request. The file is written in a temporary file
+     * and renamed, so a replay never reads a partial response.
+     */
+    public void record(URL url, byte[] body) throws IOException {
+        mDirectory.mkdirs();
+        File file = fileOf(url);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream outputStream = new FileOutputStream(tmpFile);
+        try {
+            outputStream.write(body);
+        } finally {
+            outputStream.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Problem renaming the response " + tmpFile);
+        }
+    }
+
+    /**
+     * Returns the file of the response of the request.
+     */
+    File fileOf(URL url) {
+        return new File(mDirectory, DiskCache.hashKey(withoutApiKey(url.toString())) + ".json");
+    }
+
+    /**
+     * Returns the URL without the "api-key" parameter, so the responses don't depend on the key.
+     */
+    static String withoutApiKey(String url) {
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return url;
+        }
+        StringBuilder result = new StringBuilder(url.substring(0, queryStart));
+        char separator = '?';
+        for (String parameter : url.substring(queryStart + 1).split("&")) {
+            if (!parameter.startsWith("api-key=")) {
+                result.append(separator).append(parameter);
+                separator = '&';
+            }
+        }
+        return result.toString();
+    }
+}
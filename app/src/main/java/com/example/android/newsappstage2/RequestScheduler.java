@@ -0,0 +1,341 @@
+package com.example.android.newsappstage2;
+
+import android.util.Log;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Schedule the requests of the API within its rate limit.
+ * Every request takes a token of a bucket sized to the quota of the API key, the tokens are refilled
+ * at a steady rate. The requests waiting for a token are served by priority, so the foreground feed
+ * goes ahead of the next pages, and in order of arrival within the same priority.
+ * A response 429 stops all the requests for the Retry-After time, or for an exponential backoff with
+ * jitter without it, then the request is sent again up to the max retries. The stop is never longer than
+ * the max backoff, and a request with a longer Retry-After isn't sent again.
+ */
+public class RequestScheduler {
+
+    private static final String LOG_TAG = RequestScheduler.class.getSimpleName();
+
+    /**
+     * Tokens of the bucket: a fan-out of all the sections is sent at once
+     */
+    private static final int BUCKET_CAPACITY = 12;
+
+    /**
+     * Time to refill a token, 60 requests in a minute like the quota of the key
+     */
+    private static final long REFILL_MILLIS = 1000;
+
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    private static final int MAX_RETRIES = 3;
+
+    /**
+     * Priority of a request, the lower ordinal goes first.
+     */
+    public enum Priority {
+        /**
+         * The news displayed to the user, i.e. the feed and the search
+         */
+        FOREGROUND,
+        /**
+         * The next pages requested before the user reaches them
+         */
+        PREFETCH,
+        /**
+         * The syncs without the user
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Sends a request to the API, it's called on the thread of {@link #execute} when it's scheduled.
+     */
+    public interface Call {
+        NewsResult execute();
+    }
+
+    private static RequestScheduler sDefault;
+
+    private final int mCapacity;
+
+    private final long mRefillNanos;
+
+    private final long mBaseBackoffMillis;
+
+    private final long mMaxBackoffMillis;
+
+    private final int mMaxRetries;
+
+    private final Random mRandom;
+
+    /**
+     * Requests waiting for a token, guarded by this
+     */
+    private final PriorityQueue<Ticket> mQueue = new PriorityQueue<>(11, new Comparator<Ticket>() {
+        @Override
+        public int compare(Ticket first, Ticket second) {
+            if (first.mPriority != second.mPriority) {
+                return first.mPriority.compareTo(second.mPriority);
+            }
+            return first.mSequence < second.mSequence ? -1 : (first.mSequence == second.mSequence ? 0 : 1);
+        }
+    });
+
+    private long mSequence;
+
+    private double mTokens;
+
+    private long mLastRefillNanos;
+
+    /**
+     * No request is sent before this time after a 429
+     */
+    private long mBlockedUntilNanos;
+
+    /**
+     * Number of the 429 in a row, it doubles the backoff
+     */
+    private int mConsecutiveThrottles;
+
+    private int mServed;
+
+    private int mThrottled;
+
+    private int mRetries;
+
+    private long mWaitNanos;
+
+    /**
+     * Constructs a new {@link RequestScheduler}.
+     *
+     * @param capacity          is the max number of tokens of the bucket, the bucket starts full
+     * @param refillMillis      is the time to refill a token
+     * @param baseBackoffMillis is the backoff after the first 429 without Retry-After, it doubles every 429 in a row
+     * @param maxBackoffMillis  is the max backoff, a request with a longer Retry-After isn't sent again
+     * @param maxRetries        is the max number of times a request is sent again after a 429
+     * @param random            draws the jitter of the backoff
+     */
+    public RequestScheduler(int capacity, long refillMillis, long baseBackoffMillis, long maxBackoffMillis,
+                            int maxRetries, Random random) {
+        mCapacity = capacity;
+        mRefillNanos = refillMillis * 1000000L;
+        mBaseBackoffMillis = baseBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mMaxRetries = maxRetries;
+        mRandom = random;
+        mTokens = capacity;
+        mLastRefillNanos = System.nanoTime();
+        mBlockedUntilNanos = mLastRefillNanos;
+    }
+
+    /**
+     * Returns the scheduler of the requests of the API of the app.
+     */
+    public static synchronized RequestScheduler getDefault() {
+        if (sDefault == null) {
+            sDefault = new RequestScheduler(BUCKET_CAPACITY, REFILL_MILLIS, BASE_BACKOFF_MILLIS,
+                    MAX_BACKOFF_MILLIS, MAX_RETRIES, new Random());
+        }
+        return sDefault;
+    }
+
+    /**
+     * Wait for the turn of the request and send it, again after a 429 up to the max retries.
+     * It returns the result of the last attempt, the 429 at once if its Retry-After is longer than
+     * the max backoff, or a {@link NewsResult.Status#CANCELLED} result if the signal is cancelled
+     * while the request waits.
+     */
+    public NewsResult execute(Priority priority, Call call, CancelSignal signal) {
+        Ticket ticket;
+        synchronized (this) {
+            ticket = new Ticket(priority, mSequence++);
+        }
+
+        // Wake up the waiting requests, so a cancelled request leaves the queue at once
+        Runnable wakeUp = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RequestScheduler.this) {
+                    RequestScheduler.this.notifyAll();
+                }
+            }
+        };
+        signal.addOnCancelListener(wakeUp);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                if (!acquire(ticket, signal)) {
+                    return NewsResult.failure(NewsResult.Status.CANCELLED);
+                }
+                NewsResult result = call.execute();
+                onResult(result);
+                if (result.getStatus() != NewsResult.Status.RATE_LIMITED || attempt >= mMaxRetries
+                        || result.getRetryAfterMillis() > mMaxBackoffMillis || signal.isCanceled()) {
+                    return result;
+                }
+                synchronized (this) {
+                    mRetries++;
+                }
+            }
+        } finally {
+            signal.removeOnCancelListener(wakeUp);
+        }
+    }
+
+    /**
+     * Wait until the request is the first of the queue, a token is available and the backoff is over,
+     * then take the token. Returns false if the signal is cancelled first.
+     */
+    private synchronized boolean acquire(Ticket ticket, CancelSignal signal) {
+        long start = System.nanoTime();
+        mQueue.add(ticket);
+        boolean acquired = false;
+        try {
+            while (!signal.isCanceled()) {
+                long now = System.nanoTime();
+                refill(now);
+                long waitNanos;
+                if (mQueue.peek() != ticket) {
+                    // Woken up when the requests ahead take their tokens or leave
+                    waitNanos = 0;
+                } else if (now < mBlockedUntilNanos) {
+                    waitNanos = mBlockedUntilNanos - now;
+                } else if (mTokens < 1) {
+                    waitNanos = (long) ((1 - mTokens) * mRefillNanos) + 1;
+                } else {
+                    mQueue.poll();
+                    mTokens -= 1;
+                    acquired = true;
+                    return true;
+                }
+                long waitMillis = waitNanos / 1000000L;
+                wait(waitNanos == 0 ? 0 : Math.max(1, waitMillis));
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (!acquired) {
+                mQueue.remove(ticket);
+            }
+            mWaitNanos += System.nanoTime() - start;
+            // The next request can be the first of the queue now
+            notifyAll();
+        }
+    }
+
+    /**
+     * Add the tokens refilled since the last refill, up to the capacity.
+     */
+    private void refill(long now) {
+        if (now <= mLastRefillNanos) {
+            // In the backoff the refill starts at its end
+            return;
+        }
+        mTokens = Math.min(mCapacity, mTokens + (double) (now - mLastRefillNanos) / mRefillNanos);
+        mLastRefillNanos = now;
+    }
+
+    /**
+     * Update the bucket and the backoff with the rate limit of the response.
+     */
+    private synchronized void onResult(NewsResult result) {
+        switch (result.getStatus()) {
+            case RATE_LIMITED:
+                mThrottled++;
+                mConsecutiveThrottles++;
+                long delayMillis = backoffMillis(result.getRetryAfterMillis());
+                Log.w(LOG_TAG, "Rate limited, no request for " + delayMillis + " ms");
+                mBlockedUntilNanos = Math.max(mBlockedUntilNanos, System.nanoTime() + delayMillis * 1000000L);
+                // The tokens are refilled only after the backoff
+                mTokens = 0;
+                mLastRefillNanos = mBlockedUntilNanos;
+                break;
+            case NETWORK_ERROR:
+            case CANCELLED:
+                // The API hasn't answered, the rate limit is unknown
+                return;
+            default:
+                mServed++;
+                mConsecutiveThrottles = 0;
+                break;
+        }
+
+        // The API knows better than the bucket the requests left in the current minute
+        int remaining = result.getRateLimitRemaining();
+        if (remaining != NewsResult.UNKNOWN && remaining < mTokens) {
+            mTokens = remaining;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the time to wait after the 429, the Retry-After of the API if it's longer,
+     * up to the max backoff. The exponential backoff is drawn between its half and its full value,
+     * so the requests throttled together aren't sent again at the same time.
+     */
+    private long backoffMillis(long retryAfterMillis) {
+        long backoff = mBaseBackoffMillis;
+        for (int i = 1; i < mConsecutiveThrottles && backoff < mMaxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, mMaxBackoffMillis);
+        long jittered = backoff / 2 + (long) (mRandom.nextDouble() * (backoff - backoff / 2));
+        return Math.min(Math.max(jittered, retryAfterMillis), mMaxBackoffMillis);
+    }
+
+    /**
+     * Returns the number of the requests answered by the API without a 429.
+     */
+    public synchronized int getServedCount() {
+        return mServed;
+    }
+
+    /**
+     * Returns the number of the responses 429.
+     */
+    public synchronized int getThrottledCount() {
+        return mThrottled;
+    }
+
+    /**
+     * Returns the number of the requests sent again after a 429.
+     */
+    public synchronized int getRetryCount() {
+        return mRetries;
+    }
+
+    /**
+     * Returns the total time the requests have waited for their turn, in milliseconds.
+     */
+    public synchronized long getWaitMillis() {
+        return mWaitNanos / 1000000L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "served " + mServed + ", throttled " + mThrottled + ", retries " + mRetries
+                + ", waited " + getWaitMillis() + " ms";
+    }
+
+    /**
+     * Place of a request in the queue, a retry keeps the place of the request.
+     */
+    private static class Ticket {
+
+        private final Priority mPriority;
+
+        private final long mSequence;
+
+        private Ticket(Priority priority, long sequence) {
+            mPriority = priority;
+            mSequence = sequence;
+        }
+    }
+}
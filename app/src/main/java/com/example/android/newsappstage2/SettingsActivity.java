@@ -3,10 +3,17 @@ package com.example.android.newsappstage2;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 
 public class SettingsActivity extends AppCompatActivity{
@@ -27,10 +34,34 @@ public class SettingsActivity extends AppCompatActivity{
 
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            // The sections are a set of values, not a string
+            Preference sections = findPreference(getString(R.string.settings_sections_key));
+            sections.setOnPreferenceChangeListener(this);
+            onPreferenceChange(sections, PreferenceManager.getDefaultSharedPreferences(sections.getContext())
+                    .getStringSet(sections.getKey(), Collections.<String>emptySet()));
         }
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
+            if (preference instanceof MultiSelectListPreference) {
+                MultiSelectListPreference multiSelectPreference = (MultiSelectListPreference) preference;
+                CharSequence[] labels = multiSelectPreference.getEntries();
+                List<CharSequence> selectedLabels = new ArrayList<>();
+                for (Object selected : (Set<?>) value) {
+                    int prefIndex = multiSelectPreference.findIndexOfValue(selected.toString());
+                    if (prefIndex >= 0) {
+                        selectedLabels.add(labels[prefIndex]);
+                    }
+                }
+                if (selectedLabels.isEmpty()) {
+                    preference.setSummary(R.string.settings_sections_all);
+                } else {
+                    preference.setSummary(TextUtils.join(", ", selectedLabels));
+                }
+                return true;
+            }
+
             String stringValue = value.toString();
             if (preference instanceof ListPreference) {
                 ListPreference listPreference = (ListPreference) preference;
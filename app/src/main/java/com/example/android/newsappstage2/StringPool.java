@@ -0,0 +1,58 @@
+package com.example.android.newsappstage2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of the strings repeated by many news, i.e. the section names and the bylines,
+ * so all the news share one instance of each value instead of the copies of the parser.
+ * Unlike {@link String#intern()} the pool is bounded: when it's full the new values aren't pooled.
+ * All the methods are thread safe.
+ */
+public class StringPool {
+
+    private final int mMaxSize;
+
+    private final Map<String, String> mValues = new HashMap<>();
+
+    /**
+     * Constructs a new {@link StringPool}.
+     *
+     * @param maxSize is the max number of distinct values kept in the pool
+     */
+    public StringPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the instance of the pool equal to the value, the value itself if it's new.
+     * The empty strings are all the same literal, null stays null.
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.isEmpty()) {
+            return "";
+        }
+        synchronized (mValues) {
+            String pooled = mValues.get(value);
+            if (pooled != null) {
+                return pooled;
+            }
+            if (mValues.size() < mMaxSize) {
+                mValues.put(value, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Returns the number of distinct values in the pool.
+     */
+    public int size() {
+        synchronized (mValues) {
+            return mValues.size();
+        }
+    }
+}
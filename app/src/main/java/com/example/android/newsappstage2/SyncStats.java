@@ -0,0 +1,150 @@
+package com.example.android.newsappstage2;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Instrumentation of a background sync: its duration, the bytes received and the news synced.
+ * The last run and the totals of all the runs are kept in the preferences, because the process
+ * of the job can be killed between the runs.
+ */
+public class SyncStats {
+
+    private static final String PREFS_NAME = "sync_stats";
+
+    private static final String PREF_LAST_TIME = "last_time";
+    private static final String PREF_LAST_STATUS = "last_status";
+    private static final String PREF_LAST_DURATION = "last_duration_ms";
+    private static final String PREF_LAST_BYTES = "last_bytes";
+    private static final String PREF_LAST_ITEMS = "last_items";
+    private static final String PREF_LAST_THUMBNAILS = "last_thumbnails";
+    private static final String PREF_RUNS = "runs";
+    private static final String PREF_TOTAL_DURATION = "total_duration_ms";
+    private static final String PREF_TOTAL_BYTES = "total_bytes";
+    private static final String PREF_TOTAL_ITEMS = "total_items";
+
+    /**
+     * Value of the bytes when the device doesn't count the traffic of the app
+     */
+    public static final long UNKNOWN = -1;
+
+    private final long mTime;
+
+    private final NewsResult.Status mStatus;
+
+    private final long mDurationMillis;
+
+    private final long mBytes;
+
+    private final int mItems;
+
+    private final int mThumbnails;
+
+    /**
+     * Constructs a new {@link SyncStats}.
+     *
+     * @param time           is the time of the start of the sync in epoch milliseconds
+     * @param status         is the status of the fetch of the news
+     * @param durationMillis is the duration of the sync
+     * @param bytes          is the number of bytes received, or {@link #UNKNOWN}
+     * @param items          is the number of the news fetched
+     * @param thumbnails     is the number of the thumbnails downloaded
+     */
+    public SyncStats(long time, NewsResult.Status status, long durationMillis, long bytes, int items,
+                     int thumbnails) {
+        mTime = time;
+        mStatus = status;
+        mDurationMillis = durationMillis;
+        mBytes = bytes;
+        mItems = items;
+        mThumbnails = thumbnails;
+    }
+
+    /**
+     * Returns the last sync recorded, or null if the news have never been synced in background.
+     */
+    public static SyncStats getLast(Context context) {
+        SharedPreferences prefs = getPreferences(context);
+        if (!prefs.contains(PREF_LAST_TIME)) {
+            return null;
+        }
+        NewsResult.Status status;
+        try {
+            status = NewsResult.Status.valueOf(prefs.getString(PREF_LAST_STATUS, ""));
+        } catch (IllegalArgumentException e) {
+            status = NewsResult.Status.NETWORK_ERROR;
+        }
+        return new SyncStats(prefs.getLong(PREF_LAST_TIME, 0), status,
+                prefs.getLong(PREF_LAST_DURATION, 0), prefs.getLong(PREF_LAST_BYTES, UNKNOWN),
+                prefs.getInt(PREF_LAST_ITEMS, 0), prefs.getInt(PREF_LAST_THUMBNAILS, 0));
+    }
+
+    /**
+     * Save the sync as the last one and add it to the totals.
+     */
+    public void record(Context context) {
+        SharedPreferences prefs = getPreferences(context);
+        SharedPreferences.Editor editor = prefs.edit()
+                .putLong(PREF_LAST_TIME, mTime)
+                .putString(PREF_LAST_STATUS, mStatus.name())
+                .putLong(PREF_LAST_DURATION, mDurationMillis)
+                .putLong(PREF_LAST_BYTES, mBytes)
+                .putInt(PREF_LAST_ITEMS, mItems)
+                .putInt(PREF_LAST_THUMBNAILS, mThumbnails)
+                .putInt(PREF_RUNS, prefs.getInt(PREF_RUNS, 0) + 1)
+                .putLong(PREF_TOTAL_DURATION, prefs.getLong(PREF_TOTAL_DURATION, 0) + mDurationMillis)
+                .putLong(PREF_TOTAL_ITEMS, prefs.getLong(PREF_TOTAL_ITEMS, 0) + mItems);
+        if (mBytes != UNKNOWN) {
+            editor.putLong(PREF_TOTAL_BYTES, prefs.getLong(PREF_TOTAL_BYTES, 0) + mBytes);
+        }
+        editor.apply();
+    }
+
+    /**
+     * Returns the totals of all the syncs recorded, for the log.
+     */
+    public static String describeTotals(Context context) {
+        SharedPreferences prefs = getPreferences(context);
+        return prefs.getInt(PREF_RUNS, 0) + " syncs, "
+                + prefs.getLong(PREF_TOTAL_DURATION, 0) + " ms, "
+                + prefs.getLong(PREF_TOTAL_BYTES, 0) + " bytes, "
+                + prefs.getLong(PREF_TOTAL_ITEMS, 0) + " news";
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public NewsResult.Status getStatus() {
+        return mStatus;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    /**
+     * Returns the bytes received by the app during the sync, or {@link #UNKNOWN}.
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public int getItems() {
+        return mItems;
+    }
+
+    public int getThumbnails() {
+        return mThumbnails;
+    }
+
+    @Override
+    public String toString() {
+        return mStatus + " in " + mDurationMillis + " ms, " + mBytes + " bytes, " + mItems + " news, "
+                + mThumbnails + " thumbnails";
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.android.newsappstage2;
+
+/**
+ * Parse and format the ISO-8601 timestamps of the Guardian API (i.e. "2018-06-10T10:30:00Z").
+ * The parsing reads the characters directly, so it doesn't allocate and it doesn't depend on
+ * the time zone of the device. All the methods are thread safe.
+ */
+public final class TimestampCodec {
+
+    /**
+     * Returned when the timestamp is missing or not valid
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Returns the epoch milliseconds of a timestamp with the pattern "yyyy-MM-ddTHH:mm:ss",
+     * followed by optional fraction of second and by "Z" or an offset like "+01:00".
+     * A timestamp without zone is in UTC. Returns {@link #INVALID} if the timestamp isn't valid.
+     */
+    public static long parse(CharSequence timestamp) {
+        if (timestamp == null || timestamp.length() < 19
+                || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-' || timestamp.charAt(10) != 'T'
+                || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':') {
+            return INVALID;
+        }
+
+        int year = digits(timestamp, 0, 4);
+        int month = digits(timestamp, 5, 2);
+        int day = digits(timestamp, 8, 2);
+        int hour = digits(timestamp, 11, 2);
+        int minute = digits(timestamp, 14, 2);
+        int second = digits(timestamp, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int index = 19;
+        int length = timestamp.length();
+
+        // Optional fraction of second, only the milliseconds are kept
+        int millis = 0;
+        if (index < length && timestamp.charAt(index) == '.') {
+            index++;
+            int start = index;
+            while (index < length && isDigit(timestamp.charAt(index))) {
+                if (index - start < 3) {
+                    millis = millis * 10 + (timestamp.charAt(index) - '0');
+                }
+                index++;
+            }
+            if (index == start) {
+                return INVALID;
+            }
+            for (int i = index - start; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        // Zone: none or "Z" for UTC, otherwise an offset "+hh:mm" or "-hh:mm"
+        long offset = 0;
+        if (index < length) {
+            char zone = timestamp.charAt(index);
+            if (zone == 'Z' && index + 1 == length) {
+                offset = 0;
+            } else if ((zone == '+' || zone == '-') && index + 6 == length && timestamp.charAt(index + 3) == ':') {
+                int offsetHours = digits(timestamp, index + 1, 2);
+                int offsetMinutes = digits(timestamp, index + 4, 2);
+                if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return INVALID;
+                }
+                offset = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+                if (zone == '-') {
+                    offset = -offset;
+                }
+            } else {
+                return INVALID;
+            }
+        }
+
+        return daysFromEpoch(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis
+                - offset;
+    }
+
+    /**
+     * Returns the UTC date "yyyy-MM-dd" of the epoch milliseconds, i.e. for the "from-date" parameter.
+     */
+    public static String formatDate(long epochMillis) {
+        // Math.floorDiv isn't available on the old API levels
+        long days = epochMillis / MILLIS_PER_DAY;
+        if (epochMillis % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+
+        // Civil date from days, see http://howardhinnant.github.io/date_algorithms.html
+        days += 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] date = new char[10];
+        date[0] = (char) ('0' + year / 1000 % 10);
+        date[1] = (char) ('0' + year / 100 % 10);
+        date[2] = (char) ('0' + year / 10 % 10);
+        date[3] = (char) ('0' + year % 10);
+        date[4] = '-';
+        date[5] = (char) ('0' + month / 10);
+        date[6] = (char) ('0' + month % 10);
+        date[7] = '-';
+        date[8] = (char) ('0' + day / 10);
+        date[9] = (char) ('0' + day % 10);
+        return new String(date);
+    }
+
+    /**
+     * Returns the days from 1970-01-01 of the civil date.
+     */
+    private static long daysFromEpoch(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Returns the number of the digits at the index, or -1 if a character isn't a digit.
+     */
+    private static int digits(CharSequence text, int index, int count) {
+        int value = 0;
+        for (int i = index; i < index + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BitmapDecoderTest {
+
+    @Test
+    public void calculateInSampleSize_keepsBothSidesLargeEnough() {
+        // A Guardian thumbnail in a 95dp view at xxhdpi (285 px)
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(500, 300, 285, 285));
+        // At mdpi (95 px)
+        assertEquals(2, BitmapDecoder.calculateInSampleSize(500, 300, 95, 95));
+        assertEquals(8, BitmapDecoder.calculateInSampleSize(2000, 1200, 200, 100));
+        // The shorter side limits the sample size, the view is center-cropped
+        assertEquals(4, BitmapDecoder.calculateInSampleSize(4000, 500, 100, 100));
+    }
+
+    @Test
+    public void calculateInSampleSize_smallOrUnknownTarget() {
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(100, 100, 500, 500));
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(1000, 1000, 0, 0));
+    }
+
+    @Test
+    public void sampledSize_roundsUp() {
+        assertEquals(250, BitmapDecoder.sampledSize(500, 2));
+        assertEquals(63, BitmapDecoder.sampledSize(501, 8));
+        assertEquals(500, BitmapDecoder.sampledSize(500, 1));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DiskCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] filled(byte value, int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += inputStream.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return bytes;
+    }
+
+    @Test
+    public void put_concurrentWritersOfTheSameKeyDontMixTheirData() throws Exception {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), 1024 * 1024);
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch secondDone = new CountDownLatch(1);
+        final byte[] first = filled((byte) 1, 64 * 1024);
+        final byte[] second = filled((byte) 2, 32 * 1024);
+
+        // The first writer is blocked in the middle of its body while the second one writes the same key
+        Thread slowWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cache.put("key", new ByteArrayInputStream(first) {
+                        @Override
+                        public synchronized int read(byte[] buffer, int offset, int length) {
+                            if (pos > 0 && firstStarted.getCount() > 0) {
+                                firstStarted.countDown();
+                                try {
+                                    secondDone.await(5, TimeUnit.SECONDS);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            return super.read(buffer, offset, Math.min(length, 1024));
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        slowWriter.start();
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        File entry = cache.put("key", new ByteArrayInputStream(second));
+        assertArrayEquals(second, read(entry));
+        secondDone.countDown();
+        slowWriter.join();
+
+        // The last complete write wins
+        assertArrayEquals(first, read(cache.get("key")));
+    }
+
+    @Test
+    public void put_trimKeepsTheFilesBeingWritten() throws Exception {
+        DiskCache cache = new DiskCache(mFolder.getRoot(), 1024);
+        File tmpFile = new File(mFolder.getRoot(), "other.123.tmp");
+        FileOutputStream outputStream = new FileOutputStream(tmpFile);
+        outputStream.write(filled((byte) 0, 4096));
+        outputStream.close();
+        tmpFile.setLastModified(0);
+
+        cache.put("key", new ByteArrayInputStream(filled((byte) 1, 512)));
+
+        assertTrue(tmpFile.exists());
+        assertNotNull(cache.get("key"));
+    }
+
+    @Test
+    public void constructor_deletesTheStaleTemporaryFiles() throws Exception {
+        File stale = new File(mFolder.getRoot(), "killed.123.tmp");
+        File recent = new File(mFolder.getRoot(), "writing.456.tmp");
+        for (File file : new File[]{stale, recent}) {
+            FileOutputStream outputStream = new FileOutputStream(file);
+            outputStream.write(filled((byte) 0, 4096));
+            outputStream.close();
+        }
+        stale.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+
+        new DiskCache(mFolder.getRoot(), 1024);
+
+        assertFalse(stale.exists());
+        // Another cache of the directory can be writing it
+        assertTrue(recent.exists());
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.newsappstage2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the parts of the feed that are plain Java, on the responses of {@link GuardianPayloads}
+ * from 10 to 500 results: the read of a response in a string and the parse of the publication dates.
+ * The parse of the JSON and the bind need the Android classes, they are measured on the device by FeedBenchmark.
+ * Run them with "./gradlew jmh", the results are written in app/build/reports/jmh/results.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedJmhBenchmark {
+
+    @Param({"10", "50", "100", "200", "500"})
+    public int results;
+
+    private byte[] mResponse;
+
+    private String[] mDates;
+
+    @Setup
+    public void setUp() {
+        mResponse = GuardianPayloads.search(results);
+        // The publication dates of the response
+        mDates = new String[results];
+        for (int i = 0; i < results; i++) {
+            mDates[i] = "2018-06-" + (10 + i % 20) + "T10:" + (10 + i % 50) + ":00Z";
+        }
+    }
+
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(mResponse));
+    }
+
+    @Benchmark
+    public void parseDates(Blackhole blackhole) {
+        for (String date : mDates) {
+            blackhole.consume(TimestampCodec.parse(date));
+        }
+    }
+
+    /**
+     * The parse of the dates before {@link TimestampCodec}, as a reference.
+     */
+    @Benchmark
+    public void parseDatesSimpleDateFormat(Blackhole blackhole) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (String date : mDates) {
+            blackhole.consume(format.parse(date));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.android.newsappstage2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load tests of the whole load pipeline of {@link QueryUtils} against a {@link ReplayServer}:
+ * concurrent fetches through the scheduler, the HTTP client and the parse, with the faults of a real
+ * network. No fetch may wait for the read timeout.
+ */
+public class FeedLoadTest {
+
+    private static final int THREADS = 8;
+
+    private static final int FETCHES_PER_THREAD = 25;
+
+    private MemoryFeedSource mSource;
+
+    private ReplayServer mServer;
+
+    @Before
+    public void startServer() throws Exception {
+        mSource = new MemoryFeedSource();
+        mSource.setDefault(200, GuardianPayloads.search(50));
+        mServer = new ReplayServer(mSource, 0);
+        QueryUtils.setFeedSource(new GuardianFeedSource(new HttpClient(null, THREADS), mServer.getSearchUrl()));
+        // Without retries, every fetch is one request of the server
+        QueryUtils.setScheduler(new RequestScheduler(1000, 1, 0, 0, 0, new Random(0)));
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop();
+        QueryUtils.setFeedSource(new GuardianFeedSource());
+        QueryUtils.setScheduler(RequestScheduler.getDefault());
+    }
+
+    @Test
+    public void fetchNewsData_underLoadWithFaults() throws Exception {
+        mServer.setLatency(5, 40);
+        mServer.setErrorRate(0.05);
+        mServer.setRateLimit(80);
+        mServer.setHugePayload(0.02, GuardianPayloads.search(2000));
+
+        Map<NewsResult.Status, Integer> statuses = run();
+
+        int total = THREADS * FETCHES_PER_THREAD;
+        assertEquals(total, mServer.requestCount());
+        assertEquals(Integer.valueOf(mServer.errorCount()), count(statuses, NewsResult.Status.HTTP_ERROR));
+        assertEquals(Integer.valueOf(mServer.rateLimitedCount()), count(statuses, NewsResult.Status.RATE_LIMITED));
+        // The huge payloads are parsed like the others, the JSON reader of the local tests may refuse them
+        assertTrue(count(statuses, NewsResult.Status.OK)
+                >= total - mServer.errorCount() - mServer.rateLimitedCount() - mServer.hugePayloadCount());
+    }
+
+    @Test
+    public void fetchNewsData_overSlowNetwork() throws Exception {
+        mServer.setLatency(50, 50);
+        mServer.setBandwidth(256 * 1024);
+
+        Map<NewsResult.Status, Integer> statuses = run();
+
+        assertEquals(Integer.valueOf(THREADS * FETCHES_PER_THREAD), count(statuses, NewsResult.Status.OK));
+    }
+
+    /**
+     * Fetch distinct URLs from all the threads at once, so no fetch is coalesced with another, and check
+     * that every fetch completes before the read timeout. Returns the number of results of every status.
+     */
+    private Map<NewsResult.Status, Integer> run() throws Exception {
+        final long[] latencies = new long[THREADS * FETCHES_PER_THREAD];
+        final NewsResult[] results = new NewsResult[latencies.length];
+        final AtomicInteger next = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < results.length) {
+                        long fetchStart = System.nanoTime();
+                        results[index] =
+                                QueryUtils.fetchNewsData(GuardianFeedSource.SEARCH_URL + "?q=load&page=" + index);
+                        latencies[index] = System.nanoTime() - fetchStart;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<NewsResult.Status, Integer> statuses = new EnumMap<>(NewsResult.Status.class);
+        for (NewsResult result : results) {
+            assertNotNull(result);
+            statuses.put(result.getStatus(), count(statuses, result.getStatus()) + 1);
+        }
+        Arrays.sort(latencies);
+        long slowestMillis = latencies[latencies.length - 1] / 1000000L;
+        assertTrue("slowest fetch " + slowestMillis + " ms", slowestMillis < QueryUtils.READ_TIMEOUT);
+        return statuses;
+    }
+
+    private static Integer count(Map<NewsResult.Status, Integer> statuses, NewsResult.Status status) {
+        Integer count = statuses.get(status);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class FeedSourceTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void memory_answersTheResponseOfTheUrlOrTheDefault() throws Exception {
+        MemoryFeedSource source = new MemoryFeedSource();
+        source.put("https://content.guardianapis.com/search?q=a", "a".getBytes("UTF-8"));
+
+        HttpClient.Response response = source.fetch(new URL("https://content.guardianapis.com/search?q=a"),
+                new CancelSignal());
+        assertEquals(200, response.getCode());
+        assertEquals("a", QueryUtils.readFromStream(response.getBody()));
+
+        response = source.fetch(new URL("https://content.guardianapis.com/search?q=b"), new CancelSignal());
+        assertEquals(404, response.getCode());
+        assertNull(response.getBody());
+        assertEquals(2, source.getRequestCount());
+    }
+
+    @Test
+    public void replay_answersTheRecordedResponseWhateverTheApiKey() throws Exception {
+        ReplayFeedSource source = new ReplayFeedSource(mFolder.getRoot());
+        source.record(new URL("https://content.guardianapis.com/search?q=a&api-key=one"), "a".getBytes("UTF-8"));
+
+        HttpClient.Response response = source.fetch(
+                new URL("https://content.guardianapis.com/search?q=a&api-key=two"), new CancelSignal());
+        assertEquals(200, response.getCode());
+        assertEquals("a", QueryUtils.readFromStream(response.getBody()));
+
+        response = source.fetch(new URL("https://content.guardianapis.com/search?q=b"), new CancelSignal());
+        assertEquals(404, response.getCode());
+    }
+
+    @Test
+    public void withoutApiKey_removesOnlyTheKey() {
+        assertEquals("https://host/search?q=a&page=2",
+                ReplayFeedSource.withoutApiKey("https://host/search?api-key=x&q=a&page=2"));
+        assertEquals("https://host/search", ReplayFeedSource.withoutApiKey("https://host/search?api-key=x"));
+        assertEquals("https://host/search", ReplayFeedSource.withoutApiKey("https://host/search"));
+    }
+}
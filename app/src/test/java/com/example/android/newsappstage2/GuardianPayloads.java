@@ -0,0 +1,39 @@
+package com.example.android.newsappstage2;
+
+import java.nio.charset.Charset;
+
+/**
+ * Responses like the ones recorded from the Guardian API search, for the local tests.
+ */
+final class GuardianPayloads {
+
+    private GuardianPayloads() {
+    }
+
+    /**
+     * Returns a response with the given number of results. The trail texts have html and newlines.
+     */
+    static byte[] search(int results) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":").append(results)
+                .append(",\"startIndex\":1,\"pageSize\":").append(results)
+                .append(",\"currentPage\":1,\"pages\":1,\"orderBy\":\"newest\",\"results\":[\n");
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                json.append(",\n");
+            }
+            json.append("{\"id\":\"world/2018/jun/").append(i).append("/news\",")
+                    .append("\"type\":\"article\",\"sectionId\":\"world\",\"sectionName\":\"World news\",")
+                    .append("\"webPublicationDate\":\"2018-06-").append(10 + i % 20).append("T10:").append(10 + i % 50).append(":00Z\",")
+                    .append("\"webTitle\":\"Headline number ").append(i).append(" about \\\"world\\\" news\",")
+                    .append("\"webUrl\":\"https://www.theguardian.com/world/2018/jun/").append(i).append("/news\",")
+                    .append("\"apiUrl\":\"https://content.guardianapis.com/world/2018/jun/").append(i).append("/news\",")
+                    .append("\"fields\":{\"trailText\":\"<strong>Trail</strong> text of the news ").append(i).append("\\nsecond line\",")
+                    .append("\"byline\":").append(i % 5 == 0 ? "null" : "\"Author " + i + "\"").append(',')
+                    .append("\"thumbnail\":\"https://media.guim.co.uk/").append(i).append("/500.jpg\"},")
+                    .append("\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+        }
+        json.append("]}}\n");
+        return json.toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.newsappstage2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of a request of {@link HttpClient} to a local server that answers with the responses
+ * of {@link GuardianPayloads} compressed with gzip, from 10 to 500 results: the time of the request
+ * and of the read of the decoded body, without cache.
+ * Run it with "./gradlew jmh", the results are written in app/build/reports/jmh/results.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpClientJmhBenchmark {
+
+    @Param({"10", "50", "200", "500"})
+    public int results;
+
+    private LocalServer mServer;
+
+    private HttpClient mClient;
+
+    private URL mUrl;
+
+    private final byte[] mBuffer = new byte[16 * 1024];
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = LocalServer.gzipServer(GuardianPayloads.search(results));
+        mClient = new HttpClient(null);
+        mUrl = mServer.url("/search");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    /**
+     * Returns the length of the decoded body.
+     */
+    @Benchmark
+    public long getGzip() throws IOException {
+        HttpClient.Response response = mClient.get(mUrl);
+        try {
+            InputStream body = response.getBody();
+            long length = 0;
+            int count;
+            while ((count = body.read(mBuffer)) != -1) {
+                length += count;
+            }
+            return length;
+        } finally {
+            response.close();
+        }
+    }
+}
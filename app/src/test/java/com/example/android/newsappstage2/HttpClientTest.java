@@ -0,0 +1,507 @@
+package com.example.android.newsappstage2;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HttpClientTest {
+
+    private static final byte[] BODY = "{\"response\":{\"status\":\"ok\",\"results\":[]}}".getBytes(Charset.forName("UTF-8"));
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private LocalServer mServer;
+
+    @After
+    public void stopServer() {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    private HttpClient cachingClient() throws IOException {
+        return new HttpClient(new HttpCache(mFolder.newFolder("http"), 1024 * 1024));
+    }
+
+    /**
+     * Returns the body of a GET request.
+     */
+    private static byte[] get(HttpClient client, URL url) throws IOException {
+        HttpClient.Response response = client.get(url);
+        try {
+            assertEquals(200, response.getCode());
+            InputStream body = response.getBody();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = body.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void eTag_notModifiedUsesCachedBody() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    server.respond(exchange, 304, null);
+                } else {
+                    server.respond(exchange, 200, BODY);
+                }
+            }
+        });
+        HttpClient client = cachingClient();
+        URL url = mServer.url("/search?q=test");
+
+        assertArrayEquals(BODY, get(client, url));
+        assertArrayEquals(BODY, get(client, url));
+        assertArrayEquals(BODY, get(client, url));
+
+        // Every request is validated, but the body is sent only once
+        assertEquals(3, mServer.requestCount());
+        assertEquals(BODY.length, mServer.bytesSent());
+    }
+
+    @Test
+    public void lastModified_notModifiedUsesCachedBody() throws IOException {
+        final String lastModified = "Sun, 10 Jun 2018 10:30:00 GMT";
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Last-Modified", lastModified);
+                if (lastModified.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                    server.respond(exchange, 304, null);
+                } else {
+                    server.respond(exchange, 200, BODY);
+                }
+            }
+        });
+        HttpClient client = cachingClient();
+        URL url = mServer.url("/search");
+
+        assertArrayEquals(BODY, get(client, url));
+        assertArrayEquals(BODY, get(client, url));
+
+        assertEquals(2, mServer.requestCount());
+        assertEquals(BODY.length, mServer.bytesSent());
+    }
+
+    @Test
+    public void notModified_trimmedBodyIsDownloadedAgain() throws IOException {
+        final File directory = mFolder.newFolder("http");
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                if (exchange.getRequestHeaders().getFirst("If-None-Match") != null) {
+                    // The body is trimmed while the server answers that it's still valid
+                    for (File file : directory.listFiles()) {
+                        if (file.length() == BODY.length) {
+                            assertTrue(file.delete());
+                        }
+                    }
+                    server.respond(exchange, 304, null);
+                } else {
+                    server.respond(exchange, 200, BODY);
+                }
+            }
+        });
+        HttpClient client = new HttpClient(new HttpCache(directory, 1024 * 1024));
+        URL url = mServer.url("/search");
+
+        assertArrayEquals(BODY, get(client, url));
+        assertArrayEquals(BODY, get(client, url));
+
+        assertEquals(3, mServer.requestCount());
+    }
+
+    @Test
+    public void bodyLargerThanTheCache_isReadButNotStored() throws IOException {
+        byte[] payload = GuardianPayloads.search(200);
+        File directory = mFolder.newFolder("http");
+        // The compressed body fits in the cache, the decompressed one doesn't
+        mServer = LocalServer.gzipServer(payload);
+        HttpClient client = new HttpClient(new HttpCache(directory, payload.length / 2));
+        assertArrayEquals(payload, get(client, mServer.url("/search")));
+
+        // Without gzip the length of the body is larger than the cache, so it isn't written at all
+        mServer.stop();
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        client = new HttpClient(new HttpCache(directory, BODY.length - 1));
+        assertArrayEquals(BODY, get(client, mServer.url("/search")));
+
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void maxAge_freshResponseSkipsNetwork() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Cache-Control", "public, max-age=60");
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        HttpClient client = cachingClient();
+        URL url = mServer.url("/search");
+
+        assertArrayEquals(BODY, get(client, url));
+        HttpClient.Response response = client.get(url);
+        assertTrue(response.isFromCache());
+        response.close();
+
+        assertEquals(1, mServer.requestCount());
+    }
+
+    @Test
+    public void slowDownload_doesNotBlockTheOtherCachedRequests() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                if (!exchange.getRequestURI().getPath().equals("/slow")) {
+                    server.respond(exchange, 200, BODY);
+                    return;
+                }
+                // Half of the body, then the rest when the test releases it
+                exchange.sendResponseHeaders(200, BODY.length);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(BODY, 0, BODY.length / 2);
+                outputStream.flush();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                outputStream.write(BODY, BODY.length / 2, BODY.length - BODY.length / 2);
+                outputStream.close();
+            }
+        });
+        final HttpClient client = cachingClient();
+        final URL slowUrl = mServer.url("/slow");
+        final byte[][] slowBody = new byte[1][];
+        Thread slowRequest = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    slowBody[0] = get(client, slowUrl);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        slowRequest.start();
+        // Wait for the slow body to be downloaded in the cache
+        while (mServer.requestCount() == 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        assertArrayEquals(BODY, get(client, mServer.url("/fast")));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+        release.countDown();
+        slowRequest.join();
+
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis < 2000);
+        assertArrayEquals(BODY, slowBody[0]);
+    }
+
+    @Test
+    public void noStore_isNotCached() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.getResponseHeaders().add("Cache-Control", "no-store");
+                assertNull(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        HttpClient client = cachingClient();
+        URL url = mServer.url("/search");
+
+        assertArrayEquals(BODY, get(client, url));
+        assertArrayEquals(BODY, get(client, url));
+
+        assertEquals(2, mServer.requestCount());
+        assertEquals(2 * BODY.length, mServer.bytesSent());
+    }
+
+    @Test
+    public void gzip_isDecompressedWhileRead() throws IOException {
+        byte[] payload = GuardianPayloads.search(200);
+        mServer = LocalServer.gzipServer(payload);
+
+        // Without cache the body is read from the network stream, with cache from the stored file
+        assertArrayEquals(payload, get(new HttpClient(null), mServer.url("/search")));
+        assertArrayEquals(payload, get(cachingClient(), mServer.url("/search")));
+
+        // The bytes on the wire of the two requests
+        long wireBytes = mServer.bytesSent() / 2;
+        assertTrue(wireBytes * 3 < payload.length);
+    }
+
+    @Test
+    public void errorResponse_isNotCached() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                server.respond(exchange, 429, BODY);
+            }
+        });
+        HttpClient client = cachingClient();
+        URL url = mServer.url("/search");
+
+        for (int i = 0; i < 2; i++) {
+            HttpClient.Response response = client.get(url);
+            assertEquals(429, response.getCode());
+            assertFalse(response.isFromCache());
+            response.close();
+        }
+        assertEquals(2, mServer.requestCount());
+    }
+
+    @Test
+    public void keepAlive_reusesConnection() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        HttpClient client = new HttpClient(null);
+        URL url = mServer.url("/search");
+
+        for (int i = 0; i < 5; i++) {
+            // The body isn't read, closing the response must drain it so the connection is reused
+            HttpClient.Response response = client.get(url);
+            assertEquals(200, response.getCode());
+            response.close();
+        }
+        assertEquals(5, mServer.requestCount());
+        assertEquals(5, client.getNetworkRequests());
+        assertEquals(1, mServer.connectionCount());
+    }
+
+    @Test
+    public void errorResponse_keepsConnection() throws IOException {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                server.respond(exchange, 429, BODY);
+            }
+        });
+        HttpClient client = new HttpClient(null);
+        URL url = mServer.url("/search");
+
+        for (int i = 0; i < 3; i++) {
+            client.get(url).close();
+        }
+        assertEquals(1, mServer.connectionCount());
+    }
+
+    @Test
+    public void concurrentRequests_limitedPerHost() throws Exception {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        final HttpClient client = new HttpClient(null, 2);
+        final URL url = mServer.url("/search");
+
+        Thread[] threads = new Thread[6];
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        assertArrayEquals(BODY, get(client, url));
+                    } catch (Throwable e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(6, mServer.requestCount());
+        assertTrue(mServer.maxInFlight() <= 2);
+        assertTrue(mServer.connectionCount() <= 2);
+    }
+
+    /**
+     * Cancel the signal from another thread after the delay.
+     */
+    private static void cancelLater(final CancelSignal signal, final long delayMillis) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                signal.cancel();
+            }
+        }).start();
+    }
+
+    @Test
+    public void brokenBody_releasesThePermitOfTheHost() throws Exception {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().equals("/broken")) {
+                    // The body isn't gzip, so the gzip header can't be read
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        // Without a cache, like the thumbnails, and with one request per host
+        final HttpClient client = new HttpClient(null, 1);
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.get(mServer.url("/broken"), false).close();
+                fail("The gzip header is broken");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+
+        // The next request gets the permit of the host
+        final byte[][] body = new byte[1][];
+        Thread request = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    body[0] = get(client, mServer.url("/ok"));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        request.setDaemon(true);
+        request.start();
+        request.join(5000);
+        assertArrayEquals(BODY, body[0]);
+    }
+
+    @Test
+    public void cancel_abortsRequestWaitingForThePermitOfTheHost() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                received.countDown();
+                try {
+                    done.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        // With one request per host, the first request keeps the permit until the server answers
+        final HttpClient client = new HttpClient(null, 1);
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.get(mServer.url("/first"), false).close();
+                } catch (IOException e) {
+                    // The server is stopped
+                }
+            }
+        });
+        first.setDaemon(true);
+        first.start();
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+
+        CancelSignal signal = new CancelSignal();
+        cancelLater(signal, 200);
+        long start = System.nanoTime();
+        try {
+            client.get(mServer.url("/second"), false, signal).close();
+            fail("The request must be cancelled while it waits");
+        } catch (InterruptedIOException e) {
+            // Expected
+        } finally {
+            done.countDown();
+        }
+        assertTrue((System.nanoTime() - start) / 1000000L < 5000);
+        assertEquals(1, mServer.requestCount());
+    }
+
+    @Test
+    public void cancel_abortsRequestWaitingForResponse() throws IOException {
+        final CountDownLatch done = new CountDownLatch(1);
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                try {
+                    done.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                server.respond(exchange, 200, BODY);
+            }
+        });
+        CancelSignal signal = new CancelSignal();
+        cancelLater(signal, 200);
+        long start = System.nanoTime();
+        try {
+            new HttpClient(null).get(mServer.url("/search"), false, signal).close();
+            fail("The request must be aborted");
+        } catch (IOException e) {
+            // Expected: the connection has been closed
+        } finally {
+            done.countDown();
+        }
+        assertTrue((System.nanoTime() - start) / 1000000L < 5000);
+    }
+}
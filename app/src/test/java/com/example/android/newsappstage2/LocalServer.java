@@ -0,0 +1,139 @@
+package com.example.android.newsappstage2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP server on the loopback interface that stands in for the Guardian API in the local tests.
+ * It counts the requests, the connections, the requests in flight and the bytes of the bodies sent.
+ */
+class LocalServer {
+
+    /**
+     * Answers the requests of the server, the body is sent with {@link #respond}.
+     */
+    interface Handler {
+        void handle(LocalServer server, HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer mServer;
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private final AtomicInteger mInFlight = new AtomicInteger();
+
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+
+    /**
+     * Remote addresses of the clients, one for each connection
+     */
+    private final Set<InetSocketAddress> mConnections =
+            Collections.synchronizedSet(new HashSet<InetSocketAddress>());
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    LocalServer(final Handler handler) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                mConnections.add(exchange.getRemoteAddress());
+                int inFlight = mInFlight.incrementAndGet();
+                int max;
+                while (inFlight > (max = mMaxInFlight.get()) && !mMaxInFlight.compareAndSet(max, inFlight)) {
+                    // Retry with the new max
+                }
+                try {
+                    handler.handle(LocalServer.this, exchange);
+                } finally {
+                    mInFlight.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    /**
+     * Returns a server that answers every request with the payload, compressed with gzip
+     * when the client accepts it.
+     */
+    static LocalServer gzipServer(final byte[] payload) throws IOException {
+        return new LocalServer(new Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                    gzip.write(payload);
+                    gzip.close();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                    server.respond(exchange, 200, compressed.toByteArray());
+                } else {
+                    server.respond(exchange, 200, payload);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send the response with the body, an empty body for a null body.
+     */
+    void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        if (body == null || code == 304) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        outputStream.write(body);
+        outputStream.close();
+        mBytesSent.addAndGet(body.length);
+    }
+
+    URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + path);
+    }
+
+    int requestCount() {
+        return mRequests.get();
+    }
+
+    int connectionCount() {
+        return mConnections.size();
+    }
+
+    int maxInFlight() {
+        return mMaxInFlight.get();
+    }
+
+    long bytesSent() {
+        return mBytesSent.get();
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+}
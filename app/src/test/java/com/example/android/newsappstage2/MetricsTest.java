@@ -0,0 +1,77 @@
+package com.example.android.newsappstage2;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @After
+    public void disable() {
+        Metrics.setEnabled(false);
+        Metrics.summary(true);
+    }
+
+    @Test
+    public void bucket_upperBoundContainsTheValue() {
+        long[] values = {0, 1, 3, 4, 5, 7, 8, 9, 15, 16, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = Metrics.Histogram.bucketIndex(value);
+            assertTrue(value <= Metrics.Histogram.bucketUpperBound(index));
+            if (index > 0) {
+                assertTrue(value > Metrics.Histogram.bucketUpperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void histogram_percentilesWithin25Percent() {
+        Metrics.setEnabled(true);
+        Metrics.Histogram histogram = Metrics.histogram("test.percentiles");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000L, histogram.getMaxNanos());
+        assertEquals(500500L, histogram.getMeanNanos());
+        long p50 = histogram.getPercentileNanos(0.5);
+        assertTrue(p50 >= 500000L && p50 <= 625000L);
+        assertEquals(1000000L, histogram.getPercentileNanos(1));
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        Metrics.Histogram histogram = Metrics.histogram("test.disabled");
+        Metrics.Counter counter = Metrics.counter("test.disabled_count");
+        histogram.end(histogram.begin());
+        histogram.record(10);
+        counter.increment();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, counter.get());
+        assertEquals("", Metrics.summary(false));
+
+        // A disabled section costs only the read of the flag, under a microsecond even without the JIT
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000000; i++) {
+            histogram.end(histogram.begin());
+        }
+        long perSection = (System.nanoTime() - start) / 1000000;
+        assertTrue("disabled section " + perSection + " ns", perSection < 1000);
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void summary_resetsTheValues() {
+        Metrics.setEnabled(true);
+        Metrics.Counter counter = Metrics.counter("test.summary_count");
+        Metrics.Histogram histogram = Metrics.histogram("test.summary_time");
+        counter.add(3);
+        histogram.record(2000000L);
+        String summary = Metrics.summary(true);
+        assertTrue(summary.contains("test.summary_count 3"));
+        assertTrue(summary.contains("test.summary_time n=1"));
+        assertEquals(0, counter.get());
+        assertEquals(0, histogram.getCount());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NewPagesSourceTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?order-by=newest&from-date=2018-06-10";
+
+    private static final int PAGE_SIZE = 10;
+
+    private final Map<String, NewsResult> mPages = new HashMap<>();
+
+    private final List<String> mRequested = new ArrayList<>();
+
+    private final NewsFanOut.Source mPageSource = new NewsFanOut.Source() {
+        @Override
+        public NewsResult fetch(String requestUrl, RequestScheduler.Priority priority, CancelSignal signal,
+                                LoadTimings timings) {
+            mRequested.add(requestUrl);
+            NewsResult result = mPages.get(requestUrl);
+            // The API answers 400 to a page after the last one
+            return result != null ? result : NewsResult.fromResponse(400, null, null, null, 0);
+        }
+    };
+
+    /**
+     * Put a page of news published from the given time, one minute apart from the newest.
+     */
+    private void putPage(int page, long newestTime, int size) {
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            long time = newestTime - i * 60000L;
+            news.add(new News("Headline " + time, "", "", "", time, "https://www.theguardian.com/" + time, ""));
+        }
+        mPages.put(page == 1 ? URL : NewPagesSource.pageUrl(URL, page), NewsResult.ok(news));
+    }
+
+    private NewsResult fetch(long newestStoredTime) {
+        return new NewPagesSource(mPageSource, newestStoredTime, NewsStore.MAX_STORED_NEWS)
+                .fetch(URL, RequestScheduler.Priority.FOREGROUND, new CancelSignal(), new LoadTimings());
+    }
+
+    @Test
+    public void fetch_pagesUntilTheNewestStoredNews() {
+        long stored = 1000L * 60000L;
+        // 25 news published after the stored one, then the stored one and older ones
+        putPage(1, stored + 25 * 60000L, PAGE_SIZE);
+        putPage(2, stored + 15 * 60000L, PAGE_SIZE);
+        putPage(3, stored + 5 * 60000L, PAGE_SIZE);
+        putPage(4, stored - 5 * 60000L, PAGE_SIZE);
+
+        NewsResult result = fetch(stored);
+
+        assertTrue(result.isSuccess());
+        assertEquals(30, result.getNews().size());
+        assertEquals(3, mRequested.size());
+        assertEquals(NewPagesSource.pageUrl(URL, 3), mRequested.get(2));
+    }
+
+    @Test
+    public void fetch_stopsWhenTheResultsRunOut() {
+        putPage(1, 100 * 60000L, PAGE_SIZE);
+        putPage(2, 90 * 60000L, PAGE_SIZE);
+
+        // The third page is after the last one
+        NewsResult result = fetch(0);
+
+        assertTrue(result.isSuccess());
+        assertEquals(20, result.getNews().size());
+        assertEquals(3, mRequested.size());
+    }
+
+    @Test
+    public void fetch_shortPageIsTheLast() {
+        putPage(1, 100 * 60000L, PAGE_SIZE);
+        putPage(2, 90 * 60000L, 3);
+
+        assertEquals(13, fetch(0).getNews().size());
+        assertEquals(2, mRequested.size());
+    }
+
+    @Test
+    public void fetch_failedPageFailsTheQuery() {
+        putPage(1, 100 * 60000L, PAGE_SIZE);
+        mPages.put(NewPagesSource.pageUrl(URL, 2), NewsResult.fromResponse(429, null, "0", "30", 0));
+
+        NewsResult result = fetch(0);
+
+        // The first page alone would leave a gap in the store
+        assertEquals(NewsResult.Status.RATE_LIMITED, result.getStatus());
+        assertTrue(result.getNews().isEmpty());
+    }
+
+    @Test
+    public void fetch_withoutStoredNewsOnlyTheFirstPage() {
+        putPage(1, 100 * 60000L, PAGE_SIZE);
+        putPage(2, 90 * 60000L, PAGE_SIZE);
+
+        assertEquals(PAGE_SIZE, fetch(TimestampCodec.INVALID).getNews().size());
+        assertEquals(1, mRequested.size());
+    }
+}
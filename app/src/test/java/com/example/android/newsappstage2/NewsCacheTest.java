@@ -0,0 +1,77 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NewsCacheTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?q=Brexit&page-size=10"
+            + "&show-fields=trailText%2Cbyline%2Cthumbnail&order-by=newest&api-key=test";
+
+    private static List<NewsItem> items(String... urls) {
+        NewsItem[] items = new NewsItem[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            News news = new News("Headline " + i, "", "", "World news", 0L, urls[i], "");
+            items[i] = new NewsItem(news, news.getSectionName(), "", "", "");
+        }
+        return Arrays.asList(items);
+    }
+
+    @Test
+    public void key_normalizesTheQuery() {
+        assertEquals("q=brexit|section=|order-by=newest|page-size=10|page=1", NewsCache.key(URL));
+        // Another API key, other fields, the parameters in another order and the search term in other case
+        assertEquals(NewsCache.key(URL), NewsCache.key("https://content.guardianapis.com/search?api-key=other"
+                + "&order-by=newest&q=%20brexit%20&page-size=10&page=1"));
+        assertNotEquals(NewsCache.key(URL), NewsCache.key(URL + "&page=2"));
+        assertNotEquals(NewsCache.key(URL), NewsCache.key(URL.replace("newest", "oldest")));
+        assertNotEquals(NewsCache.key(URL), NewsCache.key(URL + "&section=world"));
+    }
+
+    @Test
+    public void get_returnsFreshThenStaleNews() {
+        NewsCache fresh = new NewsCache(4, 60000);
+        fresh.put(URL, items("a", "b"));
+        NewsCache.Entry entry = fresh.get(URL.replace("api-key=test", "api-key=other"));
+        assertNotNull(entry);
+        assertTrue(entry.isFresh(System.currentTimeMillis()));
+        assertEquals(2, entry.getItems().size());
+
+        NewsCache stale = new NewsCache(4, 0);
+        stale.put(URL, items("a"));
+        assertFalse(stale.get(URL).isFresh(System.currentTimeMillis()));
+        assertNull(stale.get(URL + "&page=2"));
+    }
+
+    @Test
+    public void feed_hasItsOwnKeyApartFromTheFirstPage() {
+        NewsCache cache = new NewsCache(4, 60000);
+        cache.putFeed(URL, items("a", "b", "c"));
+        assertNull(cache.get(URL));
+        assertNull(cache.get(URL + "&page=1"));
+
+        cache.put(URL + "&page=1", items("a"));
+        assertEquals(3, cache.getFeed(URL).getItems().size());
+        assertEquals(1, cache.get(URL).getItems().size());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedQuery() {
+        NewsCache cache = new NewsCache(2, 60000);
+        cache.put(URL + "&page=1", items("a"));
+        cache.put(URL + "&page=2", items("b"));
+        // The first page is used again, so the second one is the least recently used
+        assertNotNull(cache.get(URL + "&page=1"));
+        cache.put(URL + "&page=3", items("c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(URL + "&page=1"));
+        assertNull(cache.get(URL + "&page=2"));
+        assertNotNull(cache.get(URL + "&page=3"));
+    }
+}
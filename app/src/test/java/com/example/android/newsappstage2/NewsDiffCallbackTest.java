@@ -0,0 +1,134 @@
+package com.example.android.newsappstage2;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Count the rows that {@link NewsAdapter} binds again when the list of news is refreshed.
+ */
+public class NewsDiffCallbackTest {
+
+    private static News news(int id, String headline) {
+        return new News(headline, "Trail " + id, "Author " + id, "World news", 1528624800000L + id,
+                "https://www.theguardian.com/news/" + id, "https://media.guim.co.uk/" + id + ".jpg");
+    }
+
+    private static NewsItem item(News news) {
+        return new NewsItem(news, news.getSectionName(), news.getByline(), "", "");
+    }
+
+    private static List<News> newsList(int count) {
+        List<News> newsList = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            newsList.add(news(i, "Headline " + i));
+        }
+        return newsList;
+    }
+
+    /**
+     * Returns the number of rows bound again after the refresh from the old to the new list.
+     */
+    private static BindCounter refresh(final List<News> oldList, final List<News> newList) {
+        final NewsDiffCallback itemCallback = new NewsDiffCallback();
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areItemsTheSame(item(oldList.get(oldItemPosition)), item(newList.get(newItemPosition)));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return itemCallback.areContentsTheSame(item(oldList.get(oldItemPosition)), item(newList.get(newItemPosition)));
+            }
+        });
+        BindCounter counter = new BindCounter();
+        result.dispatchUpdatesTo(counter);
+        return counter;
+    }
+
+    @Test
+    public void sameNews_noBinds() {
+        BindCounter counter = refresh(newsList(20), newsList(20));
+        assertEquals(0, counter.binds());
+        assertEquals(0, counter.mRemoved);
+    }
+
+    @Test
+    public void onlyChangedRowsAreBound() {
+        List<News> oldList = newsList(20);
+        List<News> newList = newsList(20);
+        // One news added at the top, one removed at the end and one with a new headline.
+        newList.add(0, news(100, "Breaking news"));
+        newList.remove(newList.size() - 1);
+        newList.set(5, news(4, "Updated headline"));
+
+        BindCounter counter = refresh(oldList, newList);
+        assertEquals(1, counter.mInserted);
+        assertEquals(1, counter.mRemoved);
+        assertEquals(1, counter.mChanged);
+        assertEquals(2, counter.binds());
+    }
+
+    @Test
+    public void appendedPage_bindsOnlyNewRows() {
+        List<News> oldList = newsList(10);
+        List<News> newList = newsList(20);
+
+        BindCounter counter = refresh(oldList, newList);
+        assertEquals(10, counter.binds());
+        assertEquals(0, counter.mChanged);
+    }
+
+    /**
+     * Count the updates that the RecyclerView would receive from the diff.
+     */
+    private static class BindCounter implements ListUpdateCallback {
+
+        private int mInserted;
+        private int mRemoved;
+        private int mChanged;
+
+        @Override
+        public void onInserted(int position, int count) {
+            mInserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mRemoved += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mChanged += count;
+        }
+
+        /**
+         * Inserted and changed rows are bound, removed rows aren't.
+         */
+        private int binds() {
+            return mInserted + mChanged;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.android.newsappstage2;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NewsFanOutTest {
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private static News news(String url, long time) {
+        return new News("Headline " + url, "", "", "", time, url, "");
+    }
+
+    private static List<String> urls(List<News> newsList) {
+        List<String> urls = new ArrayList<>();
+        for (News news : newsList) {
+            urls.add(news.getUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * Source that answers every URL with its news after its delay.
+     */
+    private static NewsFanOut.Source source(final Map<String, List<News>> responses, final Map<String, Long> delays) {
+        return new NewsFanOut.Source() {
+            @Override
+            public NewsResult fetch(String requestUrl, RequestScheduler.Priority priority, CancelSignal signal,
+                                    LoadTimings timings) {
+                Long delay = delays.get(requestUrl);
+                if (delay != null) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        return NewsResult.failure(NewsResult.Status.CANCELLED);
+                    }
+                }
+                if (responses.get(requestUrl) == null) {
+                    return NewsResult.fromResponse(429, null, "0", "60", System.currentTimeMillis());
+                }
+                return NewsResult.ok(responses.get(requestUrl));
+            }
+        };
+    }
+
+    private static NewsResult fetch(NewsFanOut fanOut, List<String> requestUrls) {
+        return fanOut.fetch(requestUrls, "newest", new CancelSignal(), new LoadTimings(), null);
+    }
+
+    @Test
+    public void fetch_cancelReturnsAtOnce() throws InterruptedException {
+        Map<String, List<News>> responses = new HashMap<>();
+        Map<String, Long> delays = new HashMap<>();
+        responses.put("slow", Collections.singletonList(news("slow", 1)));
+        delays.put("slow", 5000L);
+        NewsFanOut fanOut = new NewsFanOut(mExecutor, source(responses, delays), 10000);
+
+        final CancelSignal signal = new CancelSignal();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                signal.cancel();
+            }
+        }).start();
+        long start = System.nanoTime();
+        // The source doesn't listen to the signal, the fan-out stops waiting and interrupts it
+        NewsResult result = fanOut.fetch(Collections.singletonList("slow"), "newest", signal, new LoadTimings(), null);
+        assertEquals(NewsResult.Status.CANCELLED, result.getStatus());
+        assertTrue((System.nanoTime() - start) / 1000000L < 2000);
+    }
+
+    @Test
+    public void merge_newestDeduplicatedByUrl() {
+        List<List<News>> results = new ArrayList<>();
+        results.add(Arrays.asList(news("a", 50), news("b", 30), news("shared", 10)));
+        results.add(Arrays.asList(news("c", 40), news("shared", 10), news("d", 5)));
+        results.add(null);
+        assertEquals(Arrays.asList("a", "c", "b", "shared", "d"), urls(NewsFanOut.merge(results, "newest")));
+        assertEquals(Arrays.asList("d", "shared", "b", "c", "a"), urls(NewsFanOut.merge(results, "oldest")));
+    }
+
+    @Test
+    public void merge_relevanceInterleavesRanks() {
+        List<List<News>> results = new ArrayList<>();
+        results.add(Arrays.asList(news("a1", 1), news("a2", 2), news("a3", 3)));
+        results.add(Arrays.asList(news("b1", 9), news("a2", 2)));
+        assertEquals(Arrays.asList("a1", "b1", "a2", "a3"), urls(NewsFanOut.merge(results, "relevance")));
+    }
+
+    @Test
+    public void fetch_queriesRunConcurrentlyAndDeliverProgressively() {
+        Map<String, List<News>> responses = new HashMap<>();
+        Map<String, Long> delays = new HashMap<>();
+        for (int i = 0; i < 4; i++) {
+            responses.put("q" + i, Collections.singletonList(news("n" + i, i)));
+            delays.put("q" + i, 500L + i * 50L);
+        }
+        NewsFanOut fanOut = new NewsFanOut(mExecutor, source(responses, delays), 5000);
+
+        final List<Integer> partialSizes = new ArrayList<>();
+        long start = System.nanoTime();
+        NewsResult result = fanOut.fetch(Arrays.asList("q0", "q1", "q2", "q3"), "newest",
+                new CancelSignal(), new LoadTimings(), new NewsFanOut.Listener() {
+                    @Override
+                    public void onQueryCompleted(List<News> merged, int completed, int total) {
+                        assertEquals(4, total);
+                        partialSizes.add(merged.size());
+                    }
+                });
+        long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+
+        assertTrue(result.isSuccess());
+        assertEquals(Arrays.asList("n3", "n2", "n1", "n0"), urls(result.getNews()));
+        assertEquals(Arrays.asList(1, 2, 3, 4), partialSizes);
+        // Together the queries take 650 ms, one after another they would take 2300 ms
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis < 1600);
+    }
+
+    @Test
+    public void fetch_slowQueryIsDroppedAfterTimeout() {
+        Map<String, List<News>> responses = new HashMap<>();
+        Map<String, Long> delays = new HashMap<>();
+        responses.put("fast", Collections.singletonList(news("fast", 1)));
+        responses.put("slow", Collections.singletonList(news("slow", 2)));
+        delays.put("slow", 5000L);
+        NewsFanOut fanOut = new NewsFanOut(mExecutor, source(responses, delays), 200);
+
+        long start = System.nanoTime();
+        NewsResult result = fetch(fanOut, Arrays.asList("slow", "fast"));
+        assertEquals(Collections.singletonList("fast"), urls(result.getNews()));
+        assertTrue((System.nanoTime() - start) / 1000000L < 2000);
+    }
+
+    @Test
+    public void fetch_everyQueryHasItsOwnDeadline() {
+        Map<String, List<News>> responses = new HashMap<>();
+        Map<String, Long> delays = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            responses.put("q" + i, Collections.singletonList(news("n" + i, i)));
+        }
+        delays.put("q0", 150L);
+        delays.put("q1", 3000L);
+        delays.put("q2", 6000L);
+        NewsFanOut fanOut = new NewsFanOut(mExecutor, source(responses, delays), 250);
+
+        // Only the first query completes within the timeout of its start, the others are dropped at 250 ms
+        long start = System.nanoTime();
+        NewsResult result = fetch(fanOut, Arrays.asList("q0", "q1", "q2"));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+
+        assertEquals(Collections.singletonList("n0"), urls(result.getNews()));
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis < 2000);
+    }
+
+    @Test
+    public void fetch_lateQueryHasItsSignalCancelled() throws InterruptedException {
+        final CountDownLatch aborted = new CountDownLatch(1);
+        NewsFanOut.Source source = new NewsFanOut.Source() {
+            @Override
+            public NewsResult fetch(String requestUrl, RequestScheduler.Priority priority, CancelSignal signal,
+                                    LoadTimings timings) {
+                // A body read ignores the interrupt, only the signal aborts it
+                final CountDownLatch canceled = new CountDownLatch(1);
+                signal.addOnCancelListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        canceled.countDown();
+                    }
+                });
+                boolean done = false;
+                while (!done) {
+                    try {
+                        done = canceled.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // Ignored like a blocked read
+                    }
+                }
+                aborted.countDown();
+                return NewsResult.failure(NewsResult.Status.CANCELLED);
+            }
+        };
+        NewsFanOut fanOut = new NewsFanOut(mExecutor, source, 200);
+
+        NewsResult result = fetch(fanOut, Collections.singletonList("stuck"));
+
+        assertFalse(result.isSuccess());
+        assertTrue(aborted.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fetch_deadlineStartsWhenTheQueryRuns() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Map<String, List<News>> responses = new HashMap<>();
+            Map<String, Long> delays = new HashMap<>();
+            for (int i = 0; i < 2; i++) {
+                responses.put("q" + i, Collections.singletonList(news("n" + i, i)));
+                delays.put("q" + i, 150L);
+            }
+            NewsFanOut fanOut = new NewsFanOut(executor, source(responses, delays), 250);
+
+            // The second query waits for the thread, then it runs within its timeout
+            NewsResult result = fetch(fanOut, Arrays.asList("q0", "q1"));
+
+            assertEquals(Arrays.asList("n1", "n0"), urls(result.getNews()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fetch_errorOnlyWhenEveryQueryFails() {
+        Map<String, List<News>> responses = new HashMap<>();
+        responses.put("ok", Collections.singletonList(news("ok", 1)));
+        NewsFanOut fanOut = new NewsFanOut(mExecutor, source(responses, new HashMap<String, Long>()), 5000);
+
+        // The URLs without news answer 429
+        NewsResult result = fetch(fanOut, Arrays.asList("error", "ok"));
+        assertTrue(result.isSuccess());
+        assertEquals(Collections.singletonList("ok"), urls(result.getNews()));
+        NewsResult error = fetch(fanOut, Collections.singletonList("error"));
+        assertEquals(NewsResult.Status.RATE_LIMITED, error.getStatus());
+        assertEquals(0, error.getRateLimitRemaining());
+        assertEquals(60000L, error.getRetryAfterMillis());
+        assertTrue(error.getNews().isEmpty());
+    }
+}
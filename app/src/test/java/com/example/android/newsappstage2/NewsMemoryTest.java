@@ -0,0 +1,131 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the sharing of the repeated values of {@link News} and the heap retained by a large feed.
+ * The heap measures are approximate because they depend on the garbage collector, so the bounds have a margin.
+ */
+public class NewsMemoryTest {
+
+    private static final int NEWS_COUNT = 10000;
+
+    private static final int MEASURES = 5;
+
+    /**
+     * Max heap retained by a news of the feed, a news of the test takes about 350 bytes on a 64-bit JVM
+     */
+    private static final long MAX_BYTES_PER_NEWS = 500;
+
+    /**
+     * Returns a new copy of the string, like the values of the parser.
+     */
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static News news(int i) {
+        return new News(copy("Headline number " + i), copy("Trail text of the news number " + i),
+                copy("Author " + i % 500), copy("Section " + i % 40), 1528624800000L + i,
+                copy("https://www.theguardian.com/news/" + i),
+                copy("https://media.guim.co.uk/" + i + "/master/500.jpg"));
+    }
+
+    @Test
+    public void stringPool_returnsOneInstancePerValue() {
+        StringPool pool = new StringPool(2);
+        String first = pool.intern(copy("Football"));
+        assertSame(first, pool.intern(copy("Football")));
+        assertNull(pool.intern(null));
+        assertSame("", pool.intern(copy("")));
+
+        // When the pool is full the new values aren't pooled
+        pool.intern(copy("Politics"));
+        String culture = copy("Culture");
+        assertSame(culture, pool.intern(culture));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void news_sharesTheRepeatedValues() {
+        News first = news(0);
+        News second = news(40);
+        assertSame(first.getSectionName(), second.getSectionName());
+        assertEquals("https://media.guim.co.uk/0/master/500.jpg", first.getImage());
+
+        News withoutHost = new News("h", "t", "b", "s", 0L, "u", "image.jpg");
+        assertEquals("image.jpg", withoutHost.getImage());
+        assertNull(new News("h", "t", "b", "s", 0L, "u", null).getImage());
+
+        assertTrue(first.hasSameImage(news(0)));
+        assertFalse(first.hasSameImage(second));
+        assertFalse(first.hasSameImage(withoutHost));
+    }
+
+    @Test
+    public void newsItem_parsesTheTrailTextWithoutHtmlAtOnce() {
+        String trailText = copy("Plain text");
+        assertSame(trailText, NewsItem.parseHtml(trailText));
+        assertEquals("", NewsItem.parseHtml(null));
+    }
+
+    @Test
+    public void retainedHeapOfALargeFeed() {
+        // The threads left by other tests can allocate during a measure, the median of a few measures is kept
+        long[] retained = new long[MEASURES];
+        long[] unsharedRetained = new long[MEASURES];
+        for (int i = 0; i < MEASURES; i++) {
+            unsharedRetained[i] = retainedHeap(false);
+            retained[i] = retainedHeap(true);
+        }
+        Arrays.sort(retained);
+        Arrays.sort(unsharedRetained);
+        long medianRetained = retained[MEASURES / 2];
+        long medianUnsharedRetained = unsharedRetained[MEASURES / 2];
+
+        assertTrue("retained " + medianRetained / NEWS_COUNT + " bytes per news",
+                medianRetained / NEWS_COUNT < MAX_BYTES_PER_NEWS);
+        // The shared sections, bylines and image hosts save about a quarter of the heap
+        assertTrue("retained " + medianRetained + " bytes, without sharing " + medianUnsharedRetained,
+                medianRetained < medianUnsharedRetained * 9 / 10);
+    }
+
+    /**
+     * Returns the heap retained by a feed of news, or by the same values without sharing.
+     */
+    private static long retainedHeap(boolean shared) {
+        long base = usedMemory();
+        List<Object> feed = new ArrayList<>(NEWS_COUNT);
+        for (int i = 0; i < NEWS_COUNT; i++) {
+            feed.add(shared ? news(i) : unsharedNews(i));
+        }
+        long retained = usedMemory() - base;
+        // The feed is reachable until it's measured
+        assertEquals(NEWS_COUNT, feed.size());
+        return retained;
+    }
+
+    /**
+     * Returns the values of the news of {@link #news} without sharing, as parsed.
+     */
+    private static String[] unsharedNews(int i) {
+        return new String[]{copy("Headline number " + i), copy("Trail text of the news number " + i),
+                copy("Author " + i % 500), copy("Section " + i % 40),
+                copy("https://www.theguardian.com/news/" + i),
+                copy("https://media.guim.co.uk/" + i + "/master/500.jpg")};
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
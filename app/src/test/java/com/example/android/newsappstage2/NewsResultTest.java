@@ -0,0 +1,30 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class NewsResultTest {
+
+    @Test
+    public void fromResponse_classifiesCodes() {
+        assertEquals(NewsResult.Status.OK, NewsResult.fromResponse(200, Collections.<News>emptyList(), null, null, 0).getStatus());
+        assertEquals(NewsResult.Status.RATE_LIMITED, NewsResult.fromResponse(429, null, "0", null, 0).getStatus());
+        NewsResult error = NewsResult.fromResponse(503, null, null, null, 0);
+        assertEquals(NewsResult.Status.HTTP_ERROR, error.getStatus());
+        assertEquals(503, error.getHttpCode());
+        assertTrue(error.getNews().isEmpty());
+        assertEquals(NewsResult.UNKNOWN, error.getRateLimitRemaining());
+    }
+
+    @Test
+    public void parseRetryAfter_secondsOrDate() {
+        long now = 784111777000L - 2000L;
+        assertEquals(120000L, NewsResult.parseRetryAfter(" 120 ", now));
+        assertEquals(2000L, NewsResult.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", now));
+        assertEquals(NewsResult.UNKNOWN, NewsResult.parseRetryAfter("soon", now));
+        assertEquals(NewsResult.UNKNOWN, NewsResult.parseRetryAfter(null, now));
+    }
+}
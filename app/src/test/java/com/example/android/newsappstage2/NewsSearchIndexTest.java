@@ -0,0 +1,99 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NewsSearchIndexTest {
+
+    private static NewsItem item(String headline, String trailText, String byline, String sectionName) {
+        News news = new News(headline, trailText, byline, sectionName, 0L, "https://www.theguardian.com/" + headline, "");
+        return new NewsItem(news, sectionName, byline, "", "");
+    }
+
+    private static List<NewsItem> sample() {
+        List<NewsItem> items = new ArrayList<>();
+        items.add(item("World Cup final tonight", "France meet Croatia in Moscow", "Barney Ronay", "Football"));
+        items.add(item("Brexit talks stall", "The prime minister returns to Brussels", "Jessica Elgot", "Politics"));
+        items.add(item("Heatwave across Europe", "Temperatures reach 40C in Spain", "", "World news"));
+        items.add(item("Football's coming home?", "England fans hope", "Barney Ronay", "Sport"));
+        return items;
+    }
+
+    @Test
+    public void filter_matchesAllFieldsIgnoringCase() {
+        NewsSearchIndex index = new NewsSearchIndex(sample());
+        assertEquals(1, index.filter("CROATIA").size());
+        assertEquals(2, index.filter("ronay").size());
+        assertEquals(1, index.filter("politics").size());
+        assertEquals("Heatwave across Europe", index.filter("40c").get(0).getNews().getHeadline());
+    }
+
+    @Test
+    public void filter_wordsArePrefixesAndAllMustMatch() {
+        NewsSearchIndex index = new NewsSearchIndex(sample());
+        // "foot" matches the section "Football" and the headline "Football's"
+        List<NewsItem> result = index.filter("foot");
+        assertEquals(2, result.size());
+        // The order of the indexed list is kept
+        assertEquals("World Cup final tonight", result.get(0).getNews().getHeadline());
+        assertEquals(1, index.filter("foot england").size());
+        assertEquals(0, index.filter("foot brexit").size());
+        assertEquals(0, index.filter("cricket").size());
+    }
+
+    @Test
+    public void filter_skipsTheTagsAndEntitiesOfTheTrailText() {
+        List<NewsItem> items = new ArrayList<>();
+        items.add(item("Election night", "<strong>Live</strong> results &amp; analysis", "", "Politics"));
+        NewsSearchIndex index = new NewsSearchIndex(items);
+        assertEquals(1, index.filter("live analysis").size());
+        assertEquals(0, index.filter("strong").size());
+        assertEquals(0, index.filter("amp").size());
+    }
+
+    @Test
+    public void filter_emptyQueryReturnsAll() {
+        NewsSearchIndex index = new NewsSearchIndex(sample());
+        assertEquals(4, index.filter("").size());
+        assertEquals(4, index.filter("  - ").size());
+    }
+
+    @Test
+    public void filter_thousandsOfNewsUnderOneFrame() {
+        String[] words = {"election", "football", "climate", "market", "health", "europe", "music", "film",
+                "science", "technology", "budget", "police", "school", "energy", "travel", "weather"};
+        Random random = new Random(3);
+        List<NewsItem> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder trail = new StringBuilder();
+            for (int w = 0; w < 25; w++) {
+                trail.append(words[random.nextInt(words.length)]).append(random.nextInt(500)).append(' ');
+            }
+            items.add(item("Headline " + i + " " + words[i % words.length], trail.toString(),
+                    "Author " + (i % 300), words[random.nextInt(words.length)]));
+        }
+        NewsSearchIndex index = new NewsSearchIndex(items);
+
+        String[] queries = {"e", "el", "ele", "elec", "election", "election foot", "climate 4", "s", "author 12"};
+        // Warm up
+        for (int i = 0; i < 20; i++) {
+            for (String query : queries) {
+                index.filter(query);
+            }
+        }
+        int iterations = 50;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            for (String query : queries) {
+                index.filter(query);
+            }
+        }
+        long perFilter = (System.nanoTime() - start) / (iterations * queries.length);
+        assertTrue("filter " + perFilter / 1000 + " us", perFilter < 16000000L);
+    }
+}
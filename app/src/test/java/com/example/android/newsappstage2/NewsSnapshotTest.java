@@ -0,0 +1,92 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NewsSnapshotTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?order-by=newest";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static List<News> newsList() {
+        List<News> newsList = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            newsList.add(new News("Headline ü " + i, "Trail " + i, i % 4 == 0 ? "" : "Author " + i,
+                    i % 2 == 0 ? "World news" : "Sport", 1528624800000L + i, "https://www.theguardian.com/" + i,
+                    i % 3 == 0 ? "" : "https://media.guim.co.uk/" + i + ".jpg"));
+        }
+        return newsList;
+    }
+
+    @Test
+    public void writeAndRead_roundTrip() throws Exception {
+        NewsSnapshot snapshot = new NewsSnapshot(mFolder.newFile("news.snapshot"));
+        List<News> written = newsList();
+        assertTrue(snapshot.write(URL, written));
+
+        List<News> read = snapshot.read(URL);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            News expected = written.get(i);
+            News actual = read.get(i);
+            assertEquals(expected.getHeadline(), actual.getHeadline());
+            assertEquals(expected.getTrailText(), actual.getTrailText());
+            assertEquals(expected.getByline(), actual.getByline());
+            assertEquals(expected.getSectionName(), actual.getSectionName());
+            assertEquals(expected.getPublicationTime(), actual.getPublicationTime());
+            assertEquals(expected.getUrl(), actual.getUrl());
+            assertEquals(expected.getImage(), actual.getImage());
+        }
+        // The section names come from the dictionary
+        assertSame(read.get(0).getSectionName(), read.get(2).getSectionName());
+    }
+
+    @Test
+    public void read_otherQueryOrMissing() throws Exception {
+        File file = new File(mFolder.getRoot(), "news.snapshot");
+        NewsSnapshot snapshot = new NewsSnapshot(file);
+        assertNull(snapshot.read(URL));
+
+        snapshot.write(URL, newsList());
+        assertNull(snapshot.read(URL + "&q=other"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void read_corruptedSnapshot() throws Exception {
+        File file = new File(mFolder.getRoot(), "news.snapshot");
+        NewsSnapshot snapshot = new NewsSnapshot(file);
+        snapshot.write(URL, newsList());
+
+        // Change a byte of a headline, the checksum doesn't match
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(file.length() / 2);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(file.length() / 2);
+            randomAccessFile.write(value ^ 0xFF);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertNull(snapshot.read(URL));
+
+        // A truncated snapshot
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(file.length() / 3);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertNull(snapshot.read(URL));
+    }
+}
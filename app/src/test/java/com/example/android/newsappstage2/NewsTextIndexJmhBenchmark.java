@@ -0,0 +1,123 @@
+package com.example.android.newsappstage2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the {@link NewsTextIndex} of an archive of 50000 news: the build of the index from
+ * pages of 50 news and the search of words, prefixes and phrases with a Zipf-like distribution of the words.
+ * A search should take well under a frame on a desktop JVM, a device is about 10 times slower.
+ * Run them with "./gradlew jmh", the results are written in app/build/reports/jmh/results.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NewsTextIndexJmhBenchmark {
+
+    private static final int NEWS_COUNT = 50000;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final int QUERY_COUNT = 300;
+
+    private List<News> mNews;
+
+    private NewsTextIndex mIndex;
+
+    private String[] mQueries;
+
+    @Setup
+    public void setUp() {
+        // Vocabulary with a Zipf-like distribution, like the words of the news
+        Random random = new Random(21);
+        String[] vocabulary = new String[8000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 3 + random.nextInt(8);
+            for (int c = 0; c < length; c++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        mNews = new ArrayList<>();
+        for (int i = 0; i < NEWS_COUNT; i++) {
+            mNews.add(new News(words(random, vocabulary, 8), "<p>" + words(random, vocabulary, 30) + "</p>",
+                    "Author " + i % 500, "Section " + i % 40, 1528624800000L + i,
+                    "https://www.theguardian.com/news/" + i, null));
+        }
+        mIndex = buildIndex();
+
+        mQueries = new String[QUERY_COUNT];
+        for (int i = 0; i < mQueries.length; i++) {
+            String first = vocabulary[zipf(random, vocabulary.length)];
+            String second = vocabulary[zipf(random, vocabulary.length)];
+            switch (i % 3) {
+                case 0:
+                    mQueries[i] = first + " " + second;
+                    break;
+                case 1:
+                    mQueries[i] = first.substring(0, 3) + "*";
+                    break;
+                default:
+                    mQueries[i] = "\"" + first + " " + second + "\"";
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NewsTextIndex buildIndex() {
+        NewsTextIndex index = new NewsTextIndex();
+        for (int i = 0; i < mNews.size(); i += PAGE_SIZE) {
+            // The news arrive in pages
+            index.add(mNews.subList(i, i + PAGE_SIZE));
+        }
+        return index;
+    }
+
+    /**
+     * The time of one query, the queries of a word, of a prefix and of a phrase in turn.
+     */
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void search(Blackhole blackhole) {
+        for (String query : mQueries) {
+            blackhole.consume(mIndex.search(query, 50));
+        }
+    }
+
+    private static String words(Random random, String[] vocabulary, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(vocabulary[zipf(random, vocabulary.length)]).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns an index with a probability about inversely proportional to its rank.
+     */
+    private static int zipf(Random random, int size) {
+        return (int) Math.min(size - 1, Math.exp(random.nextDouble() * Math.log(size)) - 1);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.android.newsappstage2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NewsTextIndexTest {
+
+    /**
+     * Returns a news with the headline as URL, so the results of a search are the headlines.
+     */
+    private static News news(String headline, String trailText, String byline, String sectionName) {
+        return new News(headline, trailText, byline, sectionName, 0L, headline, null);
+    }
+
+    private static NewsTextIndex sample() {
+        NewsTextIndex index = new NewsTextIndex();
+        index.add(Arrays.asList(
+                news("World Cup final tonight", "France meet Croatia in Moscow", "Barney Ronay", "Football"),
+                news("Brexit talks stall", "The <strong>prime minister</strong> returns to Brussels",
+                        "Jessica Elgot", "Politics"),
+                news("Heatwave across Europe", "The cup of tea in the world heat", "", "World news"),
+                news("Footballers' wages", "Clubs spend more on wages &amp; transfers", "David Conn", "Football")));
+        return index;
+    }
+
+    @Test
+    public void search_wordsMustAllMatch() {
+        NewsTextIndex index = sample();
+        assertEquals(Collections.singletonList("Brexit talks stall"), index.search("PRIME brussels", 10));
+        assertTrue(index.search("prime moscow", 10).isEmpty());
+        // The html of the trail text isn't indexed
+        assertTrue(index.search("strong", 10).isEmpty());
+        assertTrue(index.search("amp", 10).isEmpty());
+        assertTrue(index.search("", 10).isEmpty());
+    }
+
+    @Test
+    public void search_prefixMatchesAnyWordStartingWithIt() {
+        NewsTextIndex index = sample();
+        assertEquals(2, index.search("foot*", 10).size());
+        assertTrue(index.search("foot", 10).isEmpty());
+    }
+
+    @Test
+    public void search_phraseNeedsConsecutiveWords() {
+        NewsTextIndex index = sample();
+        // "world" and "cup" are in both news, consecutive only in the first one
+        assertEquals(2, index.search("world cup", 10).size());
+        assertEquals(Collections.singletonList("World Cup final tonight"),
+                index.search("\"world cup\"", 10));
+        // The words of a phrase aren't joined across two fields
+        assertTrue(index.search("\"tonight france\"", 10).isEmpty());
+    }
+
+    @Test
+    public void search_headlineRanksHigher() {
+        NewsTextIndex index = new NewsTextIndex();
+        index.add(Arrays.asList(
+                news("Markets rally", "Shares rise after the election", "", "Business"),
+                news("Election results", "Counting continues overnight", "", "Politics")));
+        List<String> result = index.search("election", 10);
+        assertEquals("Election results", result.get(0));
+        assertEquals(1, index.search("election", 1).size());
+    }
+
+    @Test
+    public void add_sameUrlReplacesTheNews() {
+        NewsTextIndex index = new NewsTextIndex();
+        index.add(Collections.singletonList(new News("Old headline", "", "", "", 0L, "url", null)));
+        index.add(Collections.singletonList(new News("New headline", "", "", "", 0L, "url", null)));
+        assertEquals(1, index.size());
+        assertTrue(index.search("old", 10).isEmpty());
+        assertEquals(Collections.singletonList("url"), index.search("new", 10));
+        // The same news added again is replaced too
+        index.add(Collections.singletonList(new News("New headline", "", "", "", 1L, "url", "image.jpg")));
+        assertEquals(1, index.size());
+
+        assertEquals("url", index.removeOldest());
+        assertEquals(0, index.size());
+        assertNull(index.removeOldest());
+    }
+
+    @Test
+    public void add_sameUrlBecomesTheNewest() {
+        NewsTextIndex index = new NewsTextIndex();
+        index.add(Arrays.asList(new News("First", "", "", "", 0L, "first", null),
+                new News("Second", "", "", "", 0L, "second", null)));
+        // Like the archive of the store, the news fetched again is removed last
+        index.add(Collections.singletonList(new News("First", "", "", "", 0L, "first", null)));
+
+        assertEquals("second", index.removeOldest());
+        assertEquals("first", index.removeOldest());
+        assertNull(index.removeOldest());
+    }
+
+    @Test
+    public void removeOldest_keepsTheIndexConsistentAfterCompaction() {
+        NewsTextIndex index = new NewsTextIndex();
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            news.add(new News("Headline " + i, "word" + i % 10, "", "", 0L, "url" + i, null));
+        }
+        index.add(news);
+        for (int i = 0; i < 2500; i++) {
+            index.removeOldest();
+        }
+        assertEquals(500, index.size());
+        assertEquals(50, index.search("word3", 1000).size());
+        assertEquals("url2999", index.search("\"headline 2999\"", 10).get(0));
+        assertTrue(index.search("\"headline 0\"", 10).isEmpty());
+        // The ids of the news added after the compaction follow the ids of the compacted ones
+        index.add(Collections.singletonList(new News("Headline 3000", "word3", "", "", 0L, "url3000", null)));
+        assertEquals(51, index.search("word3", 1000).size());
+        assertEquals("url3000", index.search("word3", 1000).get(0));
+        assertEquals("url2500", index.removeOldest());
+    }
+}
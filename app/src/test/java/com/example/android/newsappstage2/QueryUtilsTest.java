@@ -0,0 +1,171 @@
+package com.example.android.newsappstage2;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class QueryUtilsTest {
+
+    private LocalServer mServer;
+
+    @Before
+    public void resetScheduler() {
+        // A 429 is returned at once, and its backoff doesn't delay the next tests
+        QueryUtils.setScheduler(new RequestScheduler(100, 1, 0, 0, 0, new Random(0)));
+    }
+
+    @After
+    public void stopServer() {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test
+    public void fetchNewsData_coalescesSameUrlInFlight() throws Exception {
+        final CountDownLatch requested = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                requested.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // The error response is answered without parsing, so the test doesn't need the JSON reader
+                exchange.getResponseHeaders().add("Retry-After", "30");
+                server.respond(exchange, 429, null);
+            }
+        });
+        final String url = mServer.url("/search?q=coalesce").toString();
+
+        final NewsResult[] results = new NewsResult[4];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results[index] = QueryUtils.fetchNewsData(url);
+                }
+            });
+        }
+        threads[0].start();
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < threads.length; i++) {
+            threads[i].start();
+        }
+        // Give the other threads the time to join the fetch in flight
+        Thread.sleep(200);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, mServer.requestCount());
+        for (NewsResult result : results) {
+            assertEquals(NewsResult.Status.RATE_LIMITED, result.getStatus());
+            assertEquals(429, result.getHttpCode());
+            assertEquals(30000L, result.getRetryAfterMillis());
+            assertTrue(result.getNews().isEmpty());
+        }
+    }
+
+    @Test
+    public void fetchNewsData_sameUrlAfterCompletionFetchesAgain() throws Exception {
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                server.respond(exchange, 429, null);
+            }
+        });
+        String url = mServer.url("/search?q=again").toString();
+
+        QueryUtils.fetchNewsData(url);
+        QueryUtils.fetchNewsData(url);
+        assertEquals(2, mServer.requestCount());
+    }
+
+    @Test
+    public void fetchNewsData_cancelledCallerDoesNotAbortOtherCallers() throws Exception {
+        final CountDownLatch requested = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                requested.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                server.respond(exchange, 429, null);
+            }
+        });
+        final String url = mServer.url("/search?q=cancel").toString();
+
+        final NewsResult[] result = new NewsResult[1];
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = QueryUtils.fetchNewsData(url);
+            }
+        });
+        owner.start();
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+
+        // The joined caller is cancelled, the fetch goes on for the owner
+        CancelSignal signal = new CancelSignal();
+        signal.cancel();
+        assertEquals(NewsResult.Status.CANCELLED, QueryUtils.fetchNewsData(url, signal, new LoadTimings()).getStatus());
+        release.countDown();
+        owner.join();
+        assertEquals(NewsResult.Status.RATE_LIMITED, result[0].getStatus());
+        assertEquals(1, mServer.requestCount());
+    }
+
+    @Test
+    public void fetchNewsData_cancelAbortsRequest() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        mServer = new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                server.respond(exchange, 429, null);
+            }
+        });
+        String url = mServer.url("/search?q=abort").toString();
+
+        final CancelSignal signal = new CancelSignal();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                signal.cancel();
+            }
+        }).start();
+        long start = System.nanoTime();
+        assertEquals(NewsResult.Status.CANCELLED, QueryUtils.fetchNewsData(url, signal, new LoadTimings()).getStatus());
+        release.countDown();
+        assertTrue((System.nanoTime() - start) / 1000000L < 5000);
+    }
+}
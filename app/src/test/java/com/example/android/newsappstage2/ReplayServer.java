@@ -0,0 +1,225 @@
+package com.example.android.newsappstage2;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP server on the loopback interface that replays the responses of a {@link FeedSource} like the
+ * Guardian API search, so the whole load pipeline runs without a network with a
+ * {@link GuardianFeedSource} of {@link #getSearchUrl()}. The faults of a real network can be injected:
+ * a latency before every response, a bandwidth of the bodies, a rate limit answered with
+ * 429 Too Many Requests, a rate of server errors and a rate of huge payloads.
+ * The faults can be changed while the server runs.
+ */
+class ReplayServer implements LocalServer.Handler {
+
+    private static final String SEARCH_PATH = "/search";
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private final FeedSource mSource;
+
+    private final LocalServer mServer;
+
+    private final Random mRandom;
+
+    private volatile long mMinLatencyMillis;
+
+    private volatile long mMaxLatencyMillis;
+
+    private volatile long mBytesPerSecond;
+
+    private volatile int mRequestsPerSecond;
+
+    private volatile double mErrorRate;
+
+    private volatile double mHugePayloadRate;
+
+    private volatile byte[] mHugePayload;
+
+    private long mWindowStart;
+
+    private int mWindowRequests;
+
+    private final AtomicInteger mRateLimited = new AtomicInteger();
+
+    private final AtomicInteger mErrors = new AtomicInteger();
+
+    private final AtomicInteger mHugePayloads = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link ReplayServer} and starts it.
+     *
+     * @param source answers the requests, with their URLs of {@link GuardianFeedSource#SEARCH_URL}
+     * @param seed   of the random faults, so a run can be repeated
+     */
+    ReplayServer(FeedSource source, long seed) throws IOException {
+        mSource = source;
+        mRandom = new Random(seed);
+        mServer = new LocalServer(this);
+    }
+
+    /**
+     * Returns the URL of the search of the server, to replace {@link GuardianFeedSource#SEARCH_URL}.
+     */
+    String getSearchUrl() throws IOException {
+        return mServer.url(SEARCH_PATH).toString();
+    }
+
+    /**
+     * Delay every response by a random time between the min and the max.
+     */
+    void setLatency(long minMillis, long maxMillis) {
+        mMinLatencyMillis = minMillis;
+        mMaxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Send the bodies at most at the given speed, 0 for no limit.
+     */
+    void setBandwidth(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Answer 429 Too Many Requests, with Retry-After, to the requests beyond the given number
+     * in every second, 0 for no limit.
+     */
+    void setRateLimit(int requestsPerSecond) {
+        mRequestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * Answer 500 Internal Server Error to the given rate of the requests, i.e. 0.05 for 5%.
+     */
+    void setErrorRate(double rate) {
+        mErrorRate = rate;
+    }
+
+    /**
+     * Answer the payload instead of the response of the source to the given rate of the requests.
+     */
+    void setHugePayload(double rate, byte[] payload) {
+        mHugePayload = payload;
+        mHugePayloadRate = rate;
+    }
+
+    int requestCount() {
+        return mServer.requestCount();
+    }
+
+    int rateLimitedCount() {
+        return mRateLimited.get();
+    }
+
+    int errorCount() {
+        return mErrors.get();
+    }
+
+    int hugePayloadCount() {
+        return mHugePayloads.get();
+    }
+
+    void stop() {
+        mServer.stop();
+    }
+
+    @Override
+    public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().equals(SEARCH_PATH)) {
+            server.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, null);
+            return;
+        }
+        sleep(latencyMillis());
+
+        if (!admit()) {
+            mRateLimited.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining-minute", "0");
+            server.respond(exchange, HTTP_TOO_MANY_REQUESTS, null);
+            return;
+        }
+        if (mRandom.nextDouble() < mErrorRate) {
+            mErrors.incrementAndGet();
+            server.respond(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, null);
+            return;
+        }
+        byte[] hugePayload = mHugePayload;
+        if (hugePayload != null && mRandom.nextDouble() < mHugePayloadRate) {
+            mHugePayloads.incrementAndGet();
+            send(server, exchange, HttpURLConnection.HTTP_OK, hugePayload);
+            return;
+        }
+
+        // The request of the app, as it was before the search URL was replaced
+        String query = exchange.getRequestURI().getRawQuery();
+        URL url = new URL(GuardianFeedSource.SEARCH_URL + (query == null ? "" : "?" + query));
+        HttpClient.Response response = mSource.fetch(url, new CancelSignal());
+        byte[] body = null;
+        if (response.getBody() != null) {
+            body = QueryUtils.readFromStream(response.getBody()).getBytes("UTF-8");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(server, exchange, response.getCode(), body);
+    }
+
+    /**
+     * Send the response, throttled to the bandwidth.
+     */
+    private void send(LocalServer server, HttpExchange exchange, int code, byte[] body) throws IOException {
+        long bytesPerSecond = mBytesPerSecond;
+        if (body == null || bytesPerSecond <= 0) {
+            server.respond(exchange, code, body);
+            return;
+        }
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream outputStream = exchange.getResponseBody();
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            outputStream.write(body, offset, length);
+            outputStream.flush();
+            sleep(length * 1000L / bytesPerSecond);
+        }
+        outputStream.close();
+    }
+
+    private long latencyMillis() {
+        long min = mMinLatencyMillis;
+        long spread = mMaxLatencyMillis - min;
+        return spread <= 0 ? min : min + (long) (mRandom.nextDouble() * (spread + 1));
+    }
+
+    /**
+     * Returns true if the request is within the rate limit of the current second.
+     */
+    private synchronized boolean admit() {
+        if (mRequestsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime() / 1000000L;
+        if (now - mWindowStart >= 1000) {
+            mWindowStart = now;
+            mWindowRequests = 0;
+        }
+        return ++mWindowRequests <= mRequestsPerSecond;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
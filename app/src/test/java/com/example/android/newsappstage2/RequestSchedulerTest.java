@@ -0,0 +1,230 @@
+package com.example.android.newsappstage2;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+
+    private LocalServer mServer;
+
+    @After
+    public void stopServer() {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    /**
+     * Server that answers 429 to the first requests, with the Retry-After header if it isn't null.
+     */
+    private LocalServer scriptedServer(final int throttledRequests, final String retryAfter) throws IOException {
+        final AtomicInteger requests = new AtomicInteger();
+        return new LocalServer(new LocalServer.Handler() {
+            @Override
+            public void handle(LocalServer server, HttpExchange exchange) throws IOException {
+                if (requests.incrementAndGet() <= throttledRequests) {
+                    if (retryAfter != null) {
+                        exchange.getResponseHeaders().add("Retry-After", retryAfter);
+                    }
+                    server.respond(exchange, 429, null);
+                } else {
+                    server.respond(exchange, 200, new byte[0]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Call that sends the request and returns the result of the response code, without news.
+     */
+    private static RequestScheduler.Call call(final HttpClient client, final URL url) {
+        return new RequestScheduler.Call() {
+            @Override
+            public NewsResult execute() {
+                try {
+                    HttpClient.Response response = client.get(url, false);
+                    try {
+                        return NewsResult.fromResponse(response.getCode(), Collections.<News>emptyList(),
+                                response.getHeader("X-RateLimit-Remaining-minute"),
+                                response.getHeader("Retry-After"), System.currentTimeMillis());
+                    } finally {
+                        response.close();
+                    }
+                } catch (IOException e) {
+                    return NewsResult.failure(NewsResult.Status.NETWORK_ERROR);
+                }
+            }
+        };
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+    @Test
+    public void execute_retriesAfterRetryAfter() throws Exception {
+        mServer = scriptedServer(1, "1");
+        RequestScheduler scheduler = new RequestScheduler(10, 10, 50, 1000, 3, new Random(0));
+
+        long start = System.nanoTime();
+        NewsResult result = scheduler.execute(RequestScheduler.Priority.FOREGROUND,
+                call(new HttpClient(null), mServer.url("/search")), new CancelSignal());
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, mServer.requestCount());
+        // The Retry-After of a second is longer than the backoff
+        assertTrue("elapsed " + elapsedMillis(start), elapsedMillis(start) >= 1000);
+        assertEquals(1, scheduler.getThrottledCount());
+        assertEquals(1, scheduler.getServedCount());
+        assertEquals(1, scheduler.getRetryCount());
+    }
+
+    @Test
+    public void execute_backoffDoublesUntilMaxRetries() throws Exception {
+        mServer = scriptedServer(Integer.MAX_VALUE, null);
+        RequestScheduler scheduler = new RequestScheduler(10, 10, 100, 1000, 3, new Random(0));
+
+        long start = System.nanoTime();
+        NewsResult result = scheduler.execute(RequestScheduler.Priority.FOREGROUND,
+                call(new HttpClient(null), mServer.url("/search")), new CancelSignal());
+        long elapsed = elapsedMillis(start);
+
+        assertEquals(NewsResult.Status.RATE_LIMITED, result.getStatus());
+        assertEquals(4, mServer.requestCount());
+        assertEquals(4, scheduler.getThrottledCount());
+        assertEquals(3, scheduler.getRetryCount());
+        // At least half of 100 + 200 + 400 ms, at most all of them
+        assertTrue("elapsed " + elapsed, elapsed >= 350 && elapsed < 1500);
+    }
+
+    @Test
+    public void execute_retryAfterLongerThanMaxBackoffIsNotRetried() throws Exception {
+        mServer = scriptedServer(1, "3600");
+        RequestScheduler scheduler = new RequestScheduler(10, 10, 50, 200, 3, new Random(0));
+        HttpClient client = new HttpClient(null);
+
+        long start = System.nanoTime();
+        NewsResult result = scheduler.execute(RequestScheduler.Priority.FOREGROUND,
+                call(client, mServer.url("/first")), new CancelSignal());
+
+        assertEquals(NewsResult.Status.RATE_LIMITED, result.getStatus());
+        assertEquals(1, mServer.requestCount());
+        assertEquals(0, scheduler.getRetryCount());
+        // The hour of the Retry-After blocks the other requests only for the max backoff
+        assertTrue(scheduler.execute(RequestScheduler.Priority.FOREGROUND,
+                call(client, mServer.url("/second")), new CancelSignal()).isSuccess());
+        assertTrue("elapsed " + elapsedMillis(start), elapsedMillis(start) < 3000);
+    }
+
+    @Test
+    public void execute_throttledRequestsBlockTheOthers() throws Exception {
+        mServer = scriptedServer(1, "1");
+        final RequestScheduler scheduler = new RequestScheduler(10, 10, 50, 1000, 0, new Random(0));
+        final HttpClient client = new HttpClient(null);
+
+        assertEquals(NewsResult.Status.RATE_LIMITED, scheduler.execute(RequestScheduler.Priority.FOREGROUND,
+                call(client, mServer.url("/first")), new CancelSignal()).getStatus());
+        long start = System.nanoTime();
+        assertTrue(scheduler.execute(RequestScheduler.Priority.FOREGROUND,
+                call(client, mServer.url("/second")), new CancelSignal()).isSuccess());
+        assertTrue("elapsed " + elapsedMillis(start), elapsedMillis(start) >= 900);
+    }
+
+    @Test
+    public void execute_tokenBucketLimitsTheRate() {
+        RequestScheduler scheduler = new RequestScheduler(2, 100, 50, 1000, 0, new Random(0));
+        RequestScheduler.Call ok = new RequestScheduler.Call() {
+            @Override
+            public NewsResult execute() {
+                return NewsResult.ok(Collections.<News>emptyList());
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            scheduler.execute(RequestScheduler.Priority.FOREGROUND, ok, new CancelSignal());
+        }
+        long elapsed = elapsedMillis(start);
+        // Two requests with the full bucket, then one every 100 ms
+        assertTrue("elapsed " + elapsed, elapsed >= 390 && elapsed < 1000);
+        assertEquals(6, scheduler.getServedCount());
+    }
+
+    @Test
+    public void execute_foregroundGoesAheadOfPrefetch() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1, 300, 50, 1000, 0, new Random(0));
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        // Empty the bucket, the next token comes after 300 ms
+        scheduler.execute(RequestScheduler.Priority.FOREGROUND, named("first", order), new CancelSignal());
+
+        Thread prefetch = start(scheduler, RequestScheduler.Priority.PREFETCH, named("prefetch", order));
+        Thread.sleep(50);
+        Thread foreground = start(scheduler, RequestScheduler.Priority.FOREGROUND, named("foreground", order));
+        prefetch.join();
+        foreground.join();
+
+        assertEquals(Arrays.asList("first", "foreground", "prefetch"), order);
+    }
+
+    @Test
+    public void execute_cancelLeavesTheQueue() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1, 10000, 50, 1000, 0, new Random(0));
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.execute(RequestScheduler.Priority.FOREGROUND, named("first", order), new CancelSignal());
+
+        final CancelSignal signal = new CancelSignal();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                signal.cancel();
+            }
+        }).start();
+        long start = System.nanoTime();
+        NewsResult result = scheduler.execute(RequestScheduler.Priority.FOREGROUND, named("second", order), signal);
+
+        assertEquals(NewsResult.Status.CANCELLED, result.getStatus());
+        assertTrue(elapsedMillis(start) < 2000);
+        assertEquals(Collections.singletonList("first"), order);
+    }
+
+    private static RequestScheduler.Call named(final String name, final List<String> order) {
+        return new RequestScheduler.Call() {
+            @Override
+            public NewsResult execute() {
+                order.add(name);
+                return NewsResult.ok(Collections.<News>emptyList());
+            }
+        };
+    }
+
+    private static Thread start(final RequestScheduler scheduler, final RequestScheduler.Priority priority,
+                                final RequestScheduler.Call call) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.execute(priority, call, new CancelSignal());
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.newsappstage2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class TimestampCodecTest {
+
+    private TimeZone mDefaultTimeZone;
+
+    @Before
+    public void saveTimeZone() {
+        mDefaultTimeZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void restoreTimeZone() {
+        TimeZone.setDefault(mDefaultTimeZone);
+    }
+
+    private static SimpleDateFormat utcFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    @Test
+    public void parse_guardianTimestamp() {
+        // 2018-06-10T10:30:00Z
+        assertEquals(1528626600000L, TimestampCodec.parse("2018-06-10T10:30:00Z"));
+        assertEquals(0L, TimestampCodec.parse("1970-01-01T00:00:00Z"));
+    }
+
+    @Test
+    public void parse_sameAsUtcSimpleDateFormat() {
+        SimpleDateFormat format = utcFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // Seconds between 1970 and 2100
+            long time = (long) (random.nextDouble() * 4102444800L) * 1000L;
+            String timestamp = format.format(new Date(time));
+            assertEquals(timestamp, time, TimestampCodec.parse(timestamp));
+        }
+    }
+
+    @Test
+    public void parse_doesNotDependOnDeviceTimeZone() {
+        long expected = TimestampCodec.parse("2018-03-25T01:30:00Z");
+        for (String zone : new String[]{"Europe/Rome", "America/Los_Angeles", "Asia/Kolkata", "Pacific/Chatham"}) {
+            TimeZone.setDefault(TimeZone.getTimeZone(zone));
+            assertEquals(zone, expected, TimestampCodec.parse("2018-03-25T01:30:00Z"));
+        }
+    }
+
+    @Test
+    public void parse_offsetsAndFractions() {
+        long utc = TimestampCodec.parse("2018-06-10T08:30:00Z");
+        assertEquals(utc, TimestampCodec.parse("2018-06-10T10:30:00+02:00"));
+        assertEquals(utc, TimestampCodec.parse("2018-06-10T03:30:00-05:00"));
+        assertEquals(utc, TimestampCodec.parse("2018-06-10T08:30:00"));
+        assertEquals(utc + 500, TimestampCodec.parse("2018-06-10T08:30:00.5Z"));
+        assertEquals(utc + 123, TimestampCodec.parse("2018-06-10T08:30:00.123456Z"));
+    }
+
+    @Test
+    public void parse_leapYears() {
+        assertEquals(utcTime("2016-02-29"), TimestampCodec.parse("2016-02-29T00:00:00Z"));
+        assertEquals(utcTime("2000-02-29"), TimestampCodec.parse("2000-02-29T00:00:00Z"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-02-29T00:00:00Z"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("1900-02-29T00:00:00Z"));
+    }
+
+    @Test
+    public void parse_invalid() {
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse(null));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse(""));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-06-10"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-06-10 10:30:00Z"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-13-10T10:30:00Z"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-06-10T24:30:00Z"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-06-10T10:30:00ZZ"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-06-10T10:30:00+0200"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-06-10T10:30:00.Z"));
+        assertEquals(TimestampCodec.INVALID, TimestampCodec.parse("2018-O6-10T10:30:00Z"));
+    }
+
+    @Test
+    public void formatDate_isUtc() {
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Auckland"));
+        assertEquals("2018-06-10", TimestampCodec.formatDate(TimestampCodec.parse("2018-06-10T23:59:59Z")));
+        assertEquals("1970-01-01", TimestampCodec.formatDate(0L));
+        assertEquals("1969-12-31", TimestampCodec.formatDate(-1L));
+        assertEquals("2000-02-29", TimestampCodec.formatDate(TimestampCodec.parse("2000-02-29T12:00:00Z")));
+    }
+
+    @Test
+    public void formatDate_sameAsUtcSimpleDateFormat() {
+        SimpleDateFormat format = utcFormat("yyyy-MM-dd");
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            long time = (long) (random.nextDouble() * 4102444800000L);
+            assertEquals(format.format(new Date(time)), TimestampCodec.formatDate(time));
+        }
+    }
+
+    private static long utcTime(String date) {
+        try {
+            return utcFormat("yyyy-MM-dd").parse(date).getTime();
+        } catch (java.text.ParseException e) {
+            throw new AssertionError(e);
+        }
+    }
+}